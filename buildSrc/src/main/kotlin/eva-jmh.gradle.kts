@@ -0,0 +1,80 @@
+import org.gradle.api.tasks.JavaExec
+
+plugins {
+    java
+}
+
+val libs = the<org.gradle.accessors.dm.LibrariesForLibs>()
+
+val jmhGenerator: Configuration by configurations.creating
+
+dependencies {
+    "implementation"(libs.jmh.core)
+    jmhGenerator(libs.jmh.generator.bytecode)
+}
+
+val jmhGeneratedSources = layout.buildDirectory.dir("generated/jmh/sources")
+val jmhGeneratedResources = layout.buildDirectory.dir("generated/jmh/resources")
+
+// benchmarks are plain kotlin in the main source set; jmh harness classes are generated
+// from their bytecode and compiled into a separate source set next to them
+val jmhGenerate = tasks.register<JavaExec>("jmhGenerate") {
+    description = "Generate JMH harness sources from compiled benchmarks."
+    group = "benchmark"
+
+    val classesDirs = sourceSets.main.get().output.classesDirs
+    inputs.files(classesDirs)
+    outputs.dir(jmhGeneratedSources)
+    outputs.dir(jmhGeneratedResources)
+
+    classpath = jmhGenerator + sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.generators.bytecode.JmhBytecodeGenerator")
+    argumentProviders += CommandLineArgumentProvider {
+        listOf(
+            classesDirs.files.first { it.path.contains("kotlin") }.path,
+            jmhGeneratedSources.get().asFile.path,
+            jmhGeneratedResources.get().asFile.path,
+            "reflection",
+        )
+    }
+    doFirst {
+        jmhGeneratedSources.get().asFile.deleteRecursively()
+        jmhGeneratedResources.get().asFile.deleteRecursively()
+    }
+}
+
+sourceSets {
+    create("jmh") {
+        java.srcDir(files(jmhGeneratedSources).builtBy(jmhGenerate))
+        resources.srcDir(files(jmhGeneratedResources).builtBy(jmhGenerate))
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+    }
+}
+
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.release.set(21)
+}
+
+/**
+ * Runs the benchmarks, arguments are passed through to the JMH runner, e.g.
+ * `./gradlew :eva-benchmarks:jmh -Pjmh="UnitOfWorkExecutorBenchmark.execute -p models=10"`.
+ * Allocation rate is reported by the gc profiler enabled by default.
+ */
+tasks.register<JavaExec>("jmh") {
+    description = "Run JMH benchmarks."
+    group = "benchmark"
+
+    classpath = sourceSets["jmh"].runtimeClasspath + sourceSets["jmh"].output
+    mainClass.set("org.openjdk.jmh.Main")
+    args(
+        (project.findProperty("jmh") as String?)
+            ?.split(' ')
+            ?.filter(String::isNotBlank)
+            ?: emptyList<String>(),
+    )
+    args("-prof", "gc", "-rf", "json", "-rff", layout.buildDirectory.file("reports/jmh/results.json").get().asFile)
+    doFirst {
+        layout.buildDirectory.dir("reports/jmh").get().asFile.mkdirs()
+    }
+}
@@ -19,12 +19,14 @@ private fun moduleName(thisRef: eva): String {
 fun DependencyHandler.project(module: eva) = this.project(moduleName(module))
 
 interface eva {
+    object eva_benchmarks : eva
     object eva_domain : eva
     object eva_eventbus : eva
     object eva_events : eva
     object eva_events_db_schema : eva
     object eva_jooq : eva
     object eva_migrations : eva
+    object eva_outbox : eva
     object eva_paging : eva
     object eva_persistence : eva
     object eva_idempotency_key : eva
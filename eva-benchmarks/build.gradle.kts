@@ -0,0 +1,32 @@
+import org.jetbrains.kotlin.gradle.tasks.KotlinCompile
+
+plugins {
+    id("eva-kotlin")
+    id("eva-jmh")
+}
+
+tasks.withType<KotlinCompile>().configureEach {
+    friendPaths.from(
+        rootProject.project("eva-uow").layout.buildDirectory.dir("classes/kotlin/main"),
+        rootProject.project("eva-persistence-vertx").layout.buildDirectory.dir("classes/kotlin/main"),
+        rootProject.project("eva-repository").layout.buildDirectory.dir("classes/kotlin/main"),
+    )
+}
+
+dependencies {
+    implementation(libs.kotlin.coroutines)
+    implementation(libs.jooq)
+    implementation(libs.jooq.postgres)
+
+    implementation(project(eva.eva_uow))
+    implementation(project(eva.eva_uow_params_kotlinx))
+    implementation(project(eva.eva_repository))
+    implementation(project(eva.eva_events))
+    implementation(project(eva.eva_eventbus))
+    implementation(project(eva.eva_persistence))
+    implementation(project(eva.eva_persistence_jdbc))
+    implementation(project(eva.eva_persistence_vertx))
+    implementation(project(eva.eva_serialization))
+    implementation(testFixtures(project(eva.eva_domain)))
+    implementation(testFixtures(project(eva.eva_repository)))
+}
@@ -0,0 +1,96 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.serialization.cbor.CborFormat
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.add
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import kotlinx.serialization.json.putJsonArray
+import kotlinx.serialization.json.putJsonObject
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Encoding of model event payloads in the formats the event repository stores them in,
+ * payloads/s alongside the bytes a payload takes in `model_events`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class EventPayloadBenchmark {
+
+    @Param("JSON", "CBOR")
+    lateinit var format: String
+
+    private lateinit var payload: JsonObject
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        payload = buildJsonObject {
+            put("principalId", UUID.randomUUID().toString())
+            put("principalName", "SERVICE_PRINCIPAL")
+            putJsonObject("principalContext") {
+                put("AGENT", "Mozilla/5.0 (X11; Linux x86_64)")
+            }
+            put("departmentId", UUID.randomUUID().toString())
+            put("name", "Research and development")
+            put("headcount", 1_337)
+            put("budget", 125_000.5)
+            put("active", true)
+            putJsonArray("employees") {
+                repeat(EMPLOYEES) { add(UUID.randomUUID().toString()) }
+            }
+        }
+    }
+
+    @Benchmark
+    fun encode(counters: PayloadCounters): Any {
+        val size = when (format) {
+            "JSON" -> payload.toString().encodeToByteArray().size
+            else -> CborFormat.encode(payload).size
+        }
+        counters.encoded(size)
+        return size
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class PayloadCounters {
+
+        private var bytes = 0L
+        private var payloads = 0L
+
+        @Setup(Level.Iteration)
+        fun reset() {
+            bytes = 0
+            payloads = 0
+        }
+
+        fun encoded(size: Int) {
+            bytes += size
+            payloads++
+        }
+
+        fun bytesPerPayload(): Double = if (payloads == 0L) 0.0 else bytes.toDouble() / payloads
+    }
+
+    private companion object {
+        const val EMPLOYEES = 8
+    }
+}
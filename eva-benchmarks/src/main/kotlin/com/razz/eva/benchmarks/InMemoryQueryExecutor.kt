@@ -0,0 +1,185 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.domain.ModelId
+import com.razz.eva.persistence.ConnectionMode.REQUIRE_EXISTING
+import com.razz.eva.persistence.PersistenceException
+import com.razz.eva.persistence.TransactionManager
+import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.persistence.executor.QueryExecutor.Constraint
+import org.jooq.Condition
+import org.jooq.DMLQuery
+import org.jooq.DSLContext
+import org.jooq.Field
+import org.jooq.Param
+import org.jooq.Query
+import org.jooq.Record
+import org.jooq.Row
+import org.jooq.Select
+import org.jooq.StoreQuery
+import org.jooq.Table
+import org.jooq.TableField
+import org.jooq.impl.QOM
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * [QueryExecutor] keeping rows in memory, keyed by table name and primary key.
+ *
+ * Every statement is rendered and has its bind values extracted exactly as the jdbc executor does,
+ * so the measured cost includes sql generation. Results are then echoed back from the jOOQ query
+ * object model instead of a database:
+ * - inserts store and return the inserted rows,
+ * - single row updates compare the version condition and return no rows when it does not match,
+ * - `UPDATE ... FROM (VALUES ...)` batches check every row's version the same way,
+ * - selects resolve a primary key equality, anything else returns no rows,
+ * - other statements are counted as applied.
+ */
+class InMemoryQueryExecutor(
+    private val transactionManager: TransactionManager<InMemoryConnection>,
+) : QueryExecutor {
+
+    private val tables = ConcurrentHashMap<String, ConcurrentHashMap<Any, Record>>()
+
+    fun store(table: Table<*>, record: Record) {
+        rowsOf(table)[checkNotNull(record.get(primaryKey(table)))] = record.detached(unaliased(table))
+    }
+
+    fun clear() = tables.clear()
+
+    override suspend fun <R : Record> executeSelect(
+        dslContext: DSLContext,
+        jooqQuery: Select<R>,
+        table: Table<R>,
+    ): List<R> = transactionManager.withConnection { _ ->
+        render(dslContext, jooqQuery)
+        val from = jooqQuery.`$from`().singleOrNull() as? Table<*> ?: return@withConnection listOf()
+        val id = equalities(jooqQuery.`$where`())[primaryKey(from).name] ?: return@withConnection listOf()
+        listOfNotNull(rowsOf(from)[id]?.detached(table))
+    }
+
+    override suspend fun <RIN : Record, ROUT : Record> executeStore(
+        dslContext: DSLContext,
+        jooqQuery: StoreQuery<RIN>,
+        table: Table<ROUT>,
+    ): List<ROUT> = transactionManager.inTransaction(REQUIRE_EXISTING) { _ ->
+        jooqQuery.setReturning()
+        render(dslContext, jooqQuery)
+        val stored = when (jooqQuery) {
+            is QOM.Insert<*> -> insert(jooqQuery)
+            is QOM.Update<*> -> if (jooqQuery.`$from`().isEmpty()) update(jooqQuery) else batchUpdate(jooqQuery)
+            else -> listOf()
+        }
+        stored.map { it.detached(table) }
+    }
+
+    override suspend fun <R : Record> executeQuery(
+        dslContext: DSLContext,
+        jooqQuery: DMLQuery<R>,
+    ): Int = transactionManager.inTransaction(REQUIRE_EXISTING) { _ ->
+        render(dslContext, jooqQuery)
+        when (jooqQuery) {
+            is QOM.Insert<*> -> jooqQuery.`$values`().size
+            else -> 1
+        }
+    }
+
+    private fun insert(query: QOM.Insert<*>): List<Record> {
+        val table = query.`$into`()
+        val columns = query.`$columns`()
+        return query.`$values`().map { row ->
+            val record = table.newRecord()
+            columns.forEachIndexed { i, column -> record.setValue(table, column.name, row.field(i)?.let(::valueOf)) }
+            store(table, record)
+            record
+        }
+    }
+
+    private fun update(query: QOM.Update<*>): List<Record> {
+        val table = query.`$table`()
+        val conditions = equalities(query.`$where`())
+        val id = conditions[primaryKey(table).name]
+        val existing = id?.let(rowsOf(table)::get)
+        val version = table.recordVersion
+        val stale = version != null && conditions[version.name] != existing?.get(version.name)
+        if (id == null || existing == null || stale) return listOf()
+        val updated = existing.detached(table)
+        query.`$set`().forEach { (field, value) ->
+            updated.setValue(table, (field as Field<*>).name, valueOf(value as Field<*>))
+        }
+        rowsOf(table)[id] = updated
+        return listOf(updated)
+    }
+
+    private fun batchUpdate(query: QOM.Update<*>): List<Record> {
+        val table = unaliased(query.`$table`())
+        val values = query.`$from`().single() as QOM.TableAlias<*>
+        val names = values.fields().map(Field<*>::getName)
+        val pk = primaryKey(table).name
+        val version = table.recordVersion
+        return (values.`$table`() as QOM.Values<*>).`$arg1`().mapNotNull { row ->
+            val updatedValues = names.zip(row.values()).toMap()
+            val id = updatedValues[pk] ?: return@mapNotNull null
+            val existing = rowsOf(table)[id] ?: return@mapNotNull null
+            if (version != null && updatedValues[version.name] != (existing.get(version.name) as Long) + 1) {
+                return@mapNotNull null
+            }
+            existing.detached(table).also { updated ->
+                updatedValues.forEach { (name, value) -> updated.setValue(table, name, value) }
+                rowsOf(table)[id] = updated
+            }
+        }
+    }
+
+    private fun render(dslContext: DSLContext, query: Query) {
+        dslContext.render(query)
+        dslContext.extractParams(query).values.filterNot(Param<*>::isInline)
+    }
+
+    private fun equalities(condition: Condition?): Map<String, Any?> = when (condition) {
+        is QOM.And -> equalities(condition.`$arg1`()) + equalities(condition.`$arg2`())
+        is QOM.Eq<*> -> {
+            val field = condition.`$arg1`()
+            if (field is TableField<*, *>) mapOf(field.name to valueOf(condition.`$arg2`())) else mapOf()
+        }
+        else -> mapOf()
+    }
+
+    private fun Row.values(): List<Any?> = fields().map(::valueOf)
+
+    private fun valueOf(field: Field<*>): Any? = when (field) {
+        is Param<*> -> field.value
+        is QOM.Cast<*> -> valueOf(field.`$field`())
+        else -> null
+    }
+
+    private fun Record.setValue(table: Table<*>, name: String, value: Any?) {
+        @Suppress("UNCHECKED_CAST")
+        val field = table.field(name) as Field<Any?>? ?: return
+        set(field, value)
+    }
+
+    // copies the record the way a fetched one looks: unattached, with originals equal to the values
+    // and no changed flags, so that AbstractJooqRepository proto diffing behaves as against a database
+    private fun <R : Record> Record.detached(table: Table<R>): R =
+        into(table).apply { touched(false) }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <R : Record> unaliased(table: Table<R>): Table<R> =
+        (table as? QOM.TableAlias<R>)?.`$table`() ?: table
+
+    private fun primaryKey(table: Table<*>): TableField<*, *> =
+        checkNotNull(unaliased(table).primaryKey) { "In memory tables require a primary key" }.fields.single()
+
+    private fun rowsOf(table: Table<*>) = tables.computeIfAbsent(unaliased(table).name) { ConcurrentHashMap() }
+
+    override fun extractConstraintName(ex: Exception): Constraint? = null
+
+    override fun extractUniqueConstraintName(ex: Exception, table: Table<*>): Constraint? = null
+
+    override fun extractModelException(
+        ex: Exception,
+        table: Table<*>,
+        modelId: ModelId<*>,
+    ): PersistenceException? = null
+
+    override fun extractConnectionException(ex: Exception): PersistenceException.ConnectionException? = null
+}
@@ -0,0 +1,63 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.persistence.ConnectionProvider
+import com.razz.eva.persistence.ConnectionWrapper
+import com.razz.eva.persistence.TransactionManager
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Connection stand-in: transactions only flip a flag, so benchmarks measure the framework
+ * overhead around the database and not the database itself.
+ */
+class InMemoryConnection {
+
+    @Volatile
+    var inTransaction: Boolean = false
+        internal set
+}
+
+private object InMemoryConnectionProvider : ConnectionProvider<InMemoryConnection> {
+
+    override suspend fun acquire() = InMemoryConnection()
+
+    override suspend fun release(connection: InMemoryConnection) = Unit
+}
+
+/**
+ * Goes through the regular [TransactionManager] connection and transaction bookkeeping, including
+ * the coroutine context element, with a connection which never leaves the jvm.
+ */
+class InMemoryTransactionManager(
+    private val pipelining: Boolean,
+) : TransactionManager<InMemoryConnection>(InMemoryConnectionProvider, InMemoryConnectionProvider) {
+
+    override fun supportsPipelining() = pipelining
+
+    override fun wrapConnection(newConn: InMemoryConnection): ConnectionWrapper<InMemoryConnection> =
+        InMemoryConnectionElement(newConn)
+
+    override suspend fun ctxConnection(): InMemoryConnection? =
+        coroutineContext[InMemoryConnectionElement]?.connection
+
+    private class InMemoryConnectionElement(
+        val connection: InMemoryConnection,
+    ) : ConnectionWrapper<InMemoryConnection> {
+
+        override suspend fun begin() {
+            connection.inTransaction = true
+        }
+
+        override suspend fun commit() {
+            connection.inTransaction = false
+        }
+
+        override suspend fun rollback() {
+            connection.inTransaction = false
+        }
+
+        companion object Key : CoroutineContext.Key<InMemoryConnectionElement>
+        override val key: CoroutineContext.Key<InMemoryConnectionElement>
+            get() = InMemoryConnectionElement
+    }
+}
@@ -0,0 +1,130 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.persistence.jdbc.DataSourceConnectionProvider
+import com.razz.eva.persistence.jdbc.JdbcTransactionManager
+import com.razz.eva.persistence.jdbc.VirtualThreadJdbcContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import javax.sql.DataSource
+
+/**
+ * Blocking jdbc dispatch of [JdbcTransactionManager] on [Dispatchers.IO] against [VirtualThreadJdbcContext],
+ * with as many concurrent callers as pooled connections and every call blocked for a simulated query.
+ *
+ * Throughput gives the rounds of calls per second, `calls` the calls per second and `dispatchWaitMicros`
+ * the mean wait between calling the transaction manager and running on the blocking context,
+ * the wait `jdbc.dispatch.wait` reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class JdbcDispatchBenchmark {
+
+    /** Blocking jdbc context, [Dispatchers.IO] or [VirtualThreadJdbcContext]. */
+    @Param("io", "virtual")
+    @JvmField
+    var dispatcher: String = ""
+
+    /** Pooled connections, and concurrent callers of the transaction manager. */
+    @Param("10", "50", "100", "200")
+    @JvmField
+    var poolSize: Int = 0
+
+    private var virtualThreads: VirtualThreadJdbcContext? = null
+    private lateinit var transactionManager: JdbcTransactionManager
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        val blockingJdbcContext = when (dispatcher) {
+            "virtual" -> VirtualThreadJdbcContext(pinnedThreshold = null).also { virtualThreads = it }.dispatcher
+            else -> Dispatchers.IO
+        }
+        val provider = DataSourceConnectionProvider(
+            pool = StubDataSource,
+            blockingJdbcContext = blockingJdbcContext,
+            poolMaxSize = poolSize,
+        )
+        transactionManager = JdbcTransactionManager(provider, provider, blockingJdbcContext)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        virtualThreads?.close()
+    }
+
+    @Benchmark
+    fun withConnection(counters: DispatchCounters) = runBlocking {
+        coroutineScope {
+            repeat(poolSize) {
+                launch {
+                    val calledAt = System.nanoTime()
+                    transactionManager.withConnection {
+                        counters.dispatched(System.nanoTime() - calledAt)
+                        Thread.sleep(QUERY_MILLIS)
+                    }
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class DispatchCounters {
+
+        private val waitNanos = AtomicLong()
+        private val waits = AtomicLong()
+
+        @Setup(Level.Iteration)
+        fun reset() {
+            waitNanos.set(0)
+            waits.set(0)
+        }
+
+        fun dispatched(nanos: Long) {
+            waitNanos.addAndGet(nanos)
+            waits.incrementAndGet()
+        }
+
+        fun calls(): Long = waits.get()
+
+        fun dispatchWaitMicros(): Double = if (waits.get() == 0L) 0.0 else waitNanos.get() / waits.get() / 1_000.0
+    }
+
+    // hands out connections which do nothing, so the benchmark measures the dispatch and not a database
+    private object StubDataSource : DataSource by proxy() {
+        private val connection = proxy<Connection>()
+        override fun getConnection(): Connection = connection
+    }
+
+    private companion object {
+        const val QUERY_MILLIS = 1L
+
+        inline fun <reified T> proxy(): T = Proxy.newProxyInstance(
+            T::class.java.classLoader,
+            arrayOf(T::class.java),
+        ) { _, method, _ -> if (method.returnType == Boolean::class.javaPrimitiveType) false else null } as T
+    }
+}
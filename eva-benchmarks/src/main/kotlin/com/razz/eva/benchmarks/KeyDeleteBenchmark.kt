@@ -0,0 +1,88 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.domain.Tag
+import com.razz.eva.persistence.ConnectionMode.REQUIRE_NEW
+import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.repository.JooqKeyDeletableEntityRepository
+import com.razz.eva.repository.KeyDeletable
+import com.razz.eva.repository.TagRepository
+import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
+import com.razz.eva.test.schema.tables.records.TagRecord
+import kotlinx.coroutines.runBlocking
+import org.jooq.Condition
+import org.jooq.DSLContext
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.impl.DSL
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.time.Instant
+import java.util.UUID.randomUUID
+import java.util.concurrent.TimeUnit
+import com.razz.eva.test.schema.tables.Tag as TagTable
+
+/**
+ * Deleting entities by composite keys, deletes/s of keys joined with `OR` into one condition
+ * against keys sent as `DELETE ... USING (VALUES ...)` chunks, sql rendering and bind extraction included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class KeyDeleteBenchmark {
+
+    @Param("10", "1000", "50000")
+    var keys: Int = 0
+
+    @Param("OR", "VALUES")
+    lateinit var strategy: String
+
+    private val transactionManager = InMemoryTransactionManager(pipelining = false)
+    private val context = transactionalContext(Instant.EPOCH)
+    private lateinit var repo: KeyDeletable<Tag, Tag.Key>
+    private lateinit var tagKeys: List<Tag.Key>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        val queryExecutor = InMemoryQueryExecutor(transactionManager)
+        val dslContext = DSL.using(POSTGRES)
+        repo = when (strategy) {
+            "OR" -> OrChainedTagRepository(queryExecutor, dslContext)
+            else -> TagRepository(queryExecutor, dslContext)
+        }
+        tagKeys = List(keys) { i -> Tag.Key(randomUUID(), "tag-$i") }
+    }
+
+    @Benchmark
+    fun delete() = runBlocking {
+        transactionManager.inTransaction(REQUIRE_NEW) { repo.delete(context, tagKeys) }
+    }
+
+    // deletes keys the way key deletable repositories did before keys were sent as values
+    private class OrChainedTagRepository(
+        queryExecutor: QueryExecutor,
+        dslContext: DSLContext,
+    ) : JooqKeyDeletableEntityRepository<Tag, Tag.Key, TagRecord>(queryExecutor, dslContext, TagTable.TAG) {
+
+        override fun toRecord(entity: Tag) = TagRecord(entity.subjectId, entity.name, entity.value)
+
+        override fun fromRecord(record: TagRecord) = Tag(record.subjectId, record.name, record.value)
+
+        override fun entityCondition(entity: Tag): Condition =
+            keyCondition(Tag.Key(entity.subjectId, entity.name))
+
+        override fun keyCondition(key: Tag.Key): Condition =
+            TagTable.TAG.SUBJECT_ID.eq(key.subjectId).and(TagTable.TAG.NAME.eq(key.name))
+    }
+}
@@ -0,0 +1,57 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.domain.DepartmentId
+import com.razz.eva.domain.Employee
+import com.razz.eva.domain.Employee.Companion.newEmployee
+import com.razz.eva.domain.Name
+import com.razz.eva.domain.TestPrincipal
+import com.razz.eva.repository.DepartmentRepository
+import com.razz.eva.uow.BaseUnitOfWork.Configuration
+import com.razz.eva.uow.ExecutionContext
+import com.razz.eva.uow.UnitOfWork
+import com.razz.eva.uow.params.kotlinx.UowParams
+import kotlinx.serialization.Serializable
+
+/**
+ * Adds [Params.models] employees to a department and renames it [Params.extraEvents] times,
+ * so one unit of work persists `models + 1` models and raises `2 * models + extraEvents` events.
+ */
+class OnboardingUow(
+    executionContext: ExecutionContext,
+    private val departmentRepo: DepartmentRepository,
+    outOfOrder: Boolean,
+) : UnitOfWork<TestPrincipal, OnboardingUow.Params, List<Employee>>(
+    executionContext,
+    Configuration(supportsOutOfOrderPersisting = outOfOrder),
+) {
+
+    @Serializable
+    data class Params(
+        val departmentId: DepartmentId,
+        val models: Int,
+        val extraEvents: Int,
+    ) : UowParams<Params> {
+        override fun serialization() = serializer()
+    }
+
+    override suspend fun tryPerform(principal: TestPrincipal, params: Params) = changes {
+        var department = checkNotNull(departmentRepo.find(params.departmentId))
+        val employees = List(params.models) { i ->
+            val employee = newEmployee(
+                name = Name("First$i", "Last$i"),
+                departmentId = params.departmentId,
+                email = "employee$i@${department.name}.razz.team",
+                ration = department.ration,
+            )
+            department = department.addEmployee(employee)
+            add(employee)
+        }
+        val baseName = department.name.substringBefore('#')
+        val version = department.version().version
+        repeat(params.extraEvents) { i ->
+            department = department.rename("$baseName#$version.$i")
+        }
+        update(department)
+        employees
+    }
+}
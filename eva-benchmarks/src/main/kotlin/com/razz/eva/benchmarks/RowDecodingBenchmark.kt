@@ -0,0 +1,137 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.persistence.vertx.executor.RecordDecoder
+import com.razz.eva.test.schema.Tables.DEPARTMENTS
+import com.razz.eva.test.schema.enums.DepartmentsState
+import com.razz.eva.test.schema.tables.records.DepartmentsRecord
+import io.vertx.core.json.Json
+import io.vertx.sqlclient.Row
+import io.vertx.sqlclient.Tuple
+import org.jooq.Converter
+import org.jooq.DSLContext
+import org.jooq.JSON
+import org.jooq.JSONB
+import org.jooq.Record
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.Table
+import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import org.jooq.postgres.extensions.types.Inet
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import java.time.LocalDateTime
+import java.time.ZoneOffset.UTC
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Decoding of vertx rows into jooq records by the vertx query executor, rows/s of the per-row type
+ * dispatch with a copy of the record it used to do against the precompiled [RecordDecoder].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class RowDecodingBenchmark {
+
+    private lateinit var dslContext: DSLContext
+    private lateinit var decoder: RecordDecoder<DepartmentsRecord>
+    private lateinit var rows: List<Row>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        dslContext = DSL.using(POSTGRES)
+        decoder = RecordDecoder(DEPARTMENTS)
+        val columns = DEPARTMENTS.fields().map { it.name }
+        val now = LocalDateTime.now(UTC)
+        rows = List(ROWS) { i ->
+            BenchmarkRow(
+                columns,
+                listOf(
+                    UUID.randomUUID(),
+                    "Department $i",
+                    UUID.randomUUID(),
+                    i,
+                    "ration",
+                    DepartmentsState.OWNED,
+                    now,
+                    now,
+                    i.toLong(),
+                ),
+            )
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun dispatchPerRow(blackhole: Blackhole) {
+        for (row in rows) blackhole.consume(convertRowToRecord(dslContext, row, DEPARTMENTS))
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    fun precompiledDecoder(blackhole: Blackhole) {
+        for (row in rows) blackhole.consume(decoder.decode(dslContext, row))
+    }
+
+    /**
+     * Row conversion the vertx query executor did before [RecordDecoder].
+     */
+    private fun <R : Record> convertRowToRecord(dslContext: DSLContext, row: Row, table: Table<R>): R {
+        val fields = table.fields()
+        val values = arrayOfNulls<Any>(fields.size)
+        for (i in fields.indices) {
+            val field = fields[i]
+            values[i] = when {
+                field.dataType.sqlDataType == SQLDataType.JSON -> row.getJson(i)?.let {
+                    if (it == Tuple.JSON_NULL) JSON.json("null") else JSON.json(Json.encode(it))
+                }
+                field.dataType.sqlDataType == SQLDataType.JSONB -> row.getJson(i)?.let {
+                    if (it == Tuple.JSON_NULL) JSONB.jsonb("null") else JSONB.jsonb(Json.encode(it))
+                }
+                field.dataType.sqlDataType == SQLDataType.TIMESTAMP -> row.getLocalDateTime(i)?.toInstant(UTC)
+                field.dataType.sqlDataType == SQLDataType.DATE -> row.getLocalDate(i)
+                field.dataType.sqlDataType == SQLDataType.NUMERIC -> row.getBigDecimal(i)
+                field.type == Inet::class.java -> (row.getValue(i) as? io.vertx.pgclient.data.Inet)?.let {
+                    Inet.inet(it.address, it.netmask)
+                }
+                else -> {
+                    @Suppress("UNCHECKED_CAST")
+                    val converter = field.converter as Converter<Any, Any>
+                    converter.from(row.get(converter.fromType(), i))
+                }
+            }
+        }
+        val record = dslContext.newRecord(table)
+        record.fromArray(*values)
+        record.touched(false)
+        return record.into(table)
+    }
+
+    private class BenchmarkRow(
+        private val columns: List<String>,
+        values: List<Any?>,
+    ) : Row, Tuple by Tuple.from(values) {
+
+        override fun getColumnName(pos: Int): String? = columns.getOrNull(pos)
+
+        override fun getColumnIndex(column: String): Int = columns.indexOf(column)
+    }
+
+    private companion object {
+        const val ROWS = 1_000
+    }
+}
@@ -0,0 +1,104 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.domain.TestPrincipal
+import com.razz.eva.events.UowEvent
+import com.razz.eva.uow.Changes
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit of work hot path without a database: the whole [com.razz.eva.uow.UnitOfWorkExecutor.execute]
+ * and each of its perform, persist and publish phases in isolation.
+ *
+ * Throughput gives ops/s, sample time gives the latency percentiles (p0.99 among them)
+ * and the gc profiler enabled by the `jmh` task reports the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput, Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class UnitOfWorkExecutorBenchmark {
+
+    /** Employees added per unit of work, the department is updated on top of them. */
+    @Param("1", "10", "100")
+    @JvmField
+    var models: Int = 0
+
+    /** Department renames per unit of work, raised on top of two events per added employee. */
+    @Param("0", "10")
+    @JvmField
+    var extraEvents: Int = 0
+
+    /** Flushes with [com.razz.eva.uow.PersistingMode.PARALLEL_OUT_OF_ORDER] when set. */
+    @Param("false", "true")
+    @JvmField
+    var outOfOrder: Boolean = false
+
+    lateinit var env: UowEnvironment
+    lateinit var params: OnboardingUow.Params
+    lateinit var uowEvent: UowEvent
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        env = UowEnvironment(pipelining = true, outOfOrder = outOfOrder)
+        params = OnboardingUow.Params(env.departmentId, models, extraEvents)
+        uowEvent = runBlocking {
+            env.persist(env.perform(params), params).first
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        env.close()
+    }
+
+    @Benchmark
+    fun execute() = runBlocking {
+        env.executor.execute(OnboardingUow::class, TestPrincipal) { params }
+    }
+
+    @Benchmark
+    fun perform() = runBlocking {
+        env.perform(params)
+    }
+
+    @Benchmark
+    fun persist(changes: PerformedChanges) = runBlocking {
+        env.persist(changes.changes, params)
+    }
+
+    @Benchmark
+    fun publish() = runBlocking {
+        env.persisting.publish(uowEvent)
+    }
+
+    /**
+     * Persisting the same changes twice is a stale update of the department, so every invocation
+     * persists changes performed against its current version. Perform stays outside the measurement.
+     */
+    @State(Scope.Thread)
+    open class PerformedChanges {
+
+        lateinit var changes: Changes<*>
+
+        @Setup(Level.Invocation)
+        fun perform(benchmark: UnitOfWorkExecutorBenchmark) {
+            changes = runBlocking { benchmark.env.perform(benchmark.params) }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.razz.eva.benchmarks
+
+import com.razz.eva.domain.Department
+import com.razz.eva.domain.DepartmentId
+import com.razz.eva.domain.Employee
+import com.razz.eva.domain.Model
+import com.razz.eva.domain.Ration
+import com.razz.eva.domain.TestPrincipal
+import com.razz.eva.events.EventConsumer
+import com.razz.eva.events.IntegrationModelEvent
+import com.razz.eva.events.IntegrationModelEvent.EventName
+import com.razz.eva.events.IntegrationModelEvent.ModelName
+import com.razz.eva.events.UowEvent
+import com.razz.eva.eventbus.InMemoryEventBus
+import com.razz.eva.persistence.ConnectionMode.REQUIRE_NEW
+import com.razz.eva.repository.DepartmentRepository
+import com.razz.eva.repository.EmployeeRepository
+import com.razz.eva.repository.EntityRepos
+import com.razz.eva.repository.JooqEventRepository
+import com.razz.eva.repository.ModelRepos
+import com.razz.eva.repository.hasRepo
+import com.razz.eva.test.schema.Tables.DEPARTMENTS
+import com.razz.eva.test.schema.enums.DepartmentsState.OWNED
+import com.razz.eva.test.schema.tables.records.DepartmentsRecord
+import com.razz.eva.uow.Changes
+import com.razz.eva.uow.Clocks
+import com.razz.eva.uow.ExecutionContext
+import com.razz.eva.uow.Persisting
+import com.razz.eva.uow.UnitOfWorkExecutor
+import com.razz.eva.uow.params.kotlinx.KotlinxParamsSerializer
+import com.razz.eva.uow.withFactory
+import io.opentelemetry.api.OpenTelemetry
+import kotlinx.coroutines.channels.BufferOverflow
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.impl.DSL
+import java.time.Instant
+import java.util.UUID.randomUUID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Wires a [UnitOfWorkExecutor] over the in-memory transaction manager and query executor with the
+ * real jOOQ repositories, event repository and event bus, seeded with a single department.
+ */
+class UowEnvironment(
+    pipelining: Boolean,
+    private val outOfOrder: Boolean,
+) : AutoCloseable {
+
+    private val openTelemetry = OpenTelemetry.noop()
+    private val clock = Clocks.appTicking()
+    private val transactionManager = InMemoryTransactionManager(pipelining)
+    val queryExecutor = InMemoryQueryExecutor(transactionManager)
+    private val dslContext = DSL.using(POSTGRES)
+
+    val departmentRepo = DepartmentRepository(queryExecutor, dslContext)
+    private val employeeRepo = EmployeeRepository(queryExecutor, dslContext)
+
+    val consumed = AtomicLong()
+    val eventBus = InMemoryEventBus(
+        consumers = listOf(
+            CountingConsumer(Department::class.simpleName!!, consumed),
+            CountingConsumer(Employee::class.simpleName!!, consumed),
+        ),
+        onBufferOverflow = BufferOverflow.DROP_OLDEST,
+    ).apply { start() }
+
+    val persisting = Persisting(
+        transactionManager = transactionManager,
+        modelRepos = ModelRepos(
+            Department::class hasRepo departmentRepo,
+            Employee::class hasRepo employeeRepo,
+        ),
+        entityRepos = EntityRepos(),
+        eventRepository = JooqEventRepository(queryExecutor, dslContext, openTelemetry),
+        eventPublisher = eventBus,
+        paramsSerializer = KotlinxParamsSerializer(),
+    )
+
+    val executor = UnitOfWorkExecutor(
+        factories = listOf(
+            OnboardingUow::class withFactory { ctx -> OnboardingUow(ctx, departmentRepo, outOfOrder) },
+        ),
+        persisting = persisting,
+        clock = clock,
+        openTelemetry = openTelemetry,
+    )
+
+    val departmentId = DepartmentId(randomUUID())
+
+    init {
+        queryExecutor.store(
+            DEPARTMENTS,
+            DepartmentsRecord()
+                .setId(departmentId.id)
+                .setName("benchmarks")
+                .setBoss(randomUUID())
+                .setHeadcount(1)
+                .setRation(Ration.SHAKSHOUKA.name)
+                .setState(OWNED)
+                .setRecordCreatedAt(Instant.EPOCH)
+                .setRecordUpdatedAt(Instant.EPOCH)
+                .setVersion(1),
+        )
+    }
+
+    suspend fun perform(params: OnboardingUow.Params): Changes<*> =
+        OnboardingUow(ExecutionContext(clock, openTelemetry), departmentRepo, outOfOrder)
+            .tryPerform(TestPrincipal, params)
+
+    suspend fun persist(changes: Changes<*>, params: OnboardingUow.Params): Pair<UowEvent, List<Model<*, *>>> =
+        persisting.persist(
+            uowName = OnboardingUow::class.java.simpleName,
+            params = params,
+            principal = TestPrincipal,
+            modelChanges = changes.modelChangesToPersist,
+            entityChanges = changes.entityChangesToPersist,
+            now = clock.instant(),
+            uowSupportsOutOfOrderPersisting = outOfOrder,
+            connectionMode = REQUIRE_NEW,
+        )
+
+    override fun close() {
+        eventBus.close()
+    }
+
+    private class CountingConsumer(
+        modelName: String,
+        private val consumed: AtomicLong,
+    ) : EventConsumer {
+
+        override val modelName = ModelName(modelName)
+
+        override val eventNames = EVENT_NAMES.map(::EventName).toSet()
+
+        override suspend fun consume(event: IntegrationModelEvent) {
+            consumed.incrementAndGet()
+        }
+    }
+
+    private companion object {
+        val EVENT_NAMES = listOf("EmployeeCreated", "EmployeeAdded", "NameChanged")
+    }
+}
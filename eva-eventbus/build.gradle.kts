@@ -8,8 +8,11 @@ dependencies {
     api(libs.kotlin.coroutines)
     api(project(eva.eva_domain))
     api(project(eva.eva_events))
+    api(project(eva.eva_tracing))
     implementation(libs.kotlin.logging)
     implementation(libs.kotlin.coroutines.slf4j)
     implementation(libs.logback)
     implementation(project(eva.eva_serialization))
+
+    testImplementation(libs.opentelemetry.sdk.testing)
 }
@@ -7,11 +7,17 @@ import com.razz.eva.events.EventConsumer
 import com.razz.eva.events.EventPublisher
 import com.razz.eva.events.IntegrationModelEvent
 import com.razz.eva.events.UowEvent
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.consumeEach
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
@@ -22,14 +28,38 @@ import kotlinx.serialization.json.put
 import mu.KotlinLogging
 import java.io.Closeable
 import java.util.concurrent.Executors.newSingleThreadExecutor
+import java.util.concurrent.atomic.AtomicInteger
 
 class InMemoryEventBus(
     consumers: List<EventConsumer>,
     extraBufferCapacity: Int = 100,
     onBufferOverflow: BufferOverflow = BufferOverflow.SUSPEND,
     private val context: CoroutineDispatcher = newSingleThreadExecutor().asCoroutineDispatcher(),
+    private val partitioning: Partitioning? = null,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : EventPublisher, Closeable {
 
+    /**
+     * Dispatches events to every consumer through [lanes] buffers of its own, each of [bufferCapacity] events
+     * consumed sequentially. Events of a model always go through the same lane chosen by its id,
+     * so a consumer receives them in order, while different models, lanes and consumers are consumed
+     * concurrently and a slow consumer does not hold back the others.
+     * Lanes run in parallel only on a multithreaded [context].
+     *
+     * @param onBufferOverflow what a publisher does when a lane is full, dropped events are counted
+     * as `eventbus.events.dropped`
+     */
+    data class Partitioning(
+        val lanes: Int,
+        val bufferCapacity: Int = 100,
+        val onBufferOverflow: BufferOverflow = BufferOverflow.SUSPEND,
+    ) {
+        init {
+            require(lanes > 0) { "Event bus must have at least one lane" }
+            require(bufferCapacity > 0) { "Event bus lane buffer capacity must be positive" }
+        }
+    }
+
     private val logger = KotlinLogging.logger {}
     private var consumingJob: Job? = null
     private val flow = MutableSharedFlow<IntegrationModelEvent>(0, extraBufferCapacity, onBufferOverflow)
@@ -37,22 +67,95 @@ class InMemoryEventBus(
         .flatMap { consumer -> consumer.eventNames.map { name -> EventKey(name, consumer.modelName) to consumer } }
         .groupByTo(mutableMapOf(), { (name, _) -> name }, { (_, consumer) -> consumer })
 
+    private val droppedMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("eventbus.events.dropped")
+        .setDescription("Events dropped by full event bus lanes")
+        .setUnit("{event}")
+        .build()
+
+    // otel default boundaries are millisecond-oriented, advise boundaries covering 10us .. 10s
+    private val lagMetric = openTelemetry.getEvaMeter()
+        .histogramBuilder("eventbus.consumer.lag")
+        .setDescription("Time between publishing an event and a consumer starting to consume it")
+        .setUnit("ns")
+        .ofLongs()
+        .setExplicitBucketBoundariesAdvice(LAG_BUCKET_BOUNDARIES_NANOS)
+        .build()
+
+    private val consumerLanes: Map<EventConsumer, List<Lane>> = partitioning
+        ?.let { partitioning ->
+            consumers.distinct().associateWith { consumer -> List(partitioning.lanes) { Lane(consumer, it) } }
+        }
+        ?: mapOf()
+
+    private val depthGauge = partitioning?.let {
+        openTelemetry.getEvaMeter()
+            .gaugeBuilder("eventbus.lane.depth")
+            .setDescription("Events waiting in an event bus lane")
+            .setUnit("{event}")
+            .ofLongs()
+            .buildWithCallback { measurement ->
+                consumerLanes.values.flatten().forEach { lane ->
+                    measurement.record(lane.depth.get().toLong(), lane.attributes)
+                }
+            }
+    }
+
+    private class Published(val event: IntegrationModelEvent, val publishedAt: Long)
+
+    private inner class Lane(val consumer: EventConsumer, index: Int) {
+        val depth = AtomicInteger()
+        val attributes: Attributes =
+            Attributes.of(CONSUMER, consumer::class.simpleName.toString(), LANE, index.toLong())
+        val channel = Channel<Published>(
+            capacity = checkNotNull(partitioning).bufferCapacity,
+            onBufferOverflow = checkNotNull(partitioning).onBufferOverflow,
+        ) { dropped ->
+            depth.decrementAndGet()
+            droppedMetric.add(1, attributes)
+            logger.warn { "Event [${dropped.event.eventName}]:[${dropped.event.id}] was dropped by a full lane" }
+        }
+
+        suspend fun send(event: IntegrationModelEvent) {
+            depth.incrementAndGet()
+            channel.send(Published(event, System.nanoTime()))
+        }
+    }
+
     fun start() {
-        consumingJob = CoroutineScope(context).launch {
-            flow.collect { event ->
-                if (isActive) {
-                    consumerMap[EventKey(event.eventName, event.modelName)]?.forEach { consumer ->
-                        try {
-                            consumer.consume(event)
-                        } catch (ex: Exception) {
-                            logger.error(ex) {
-                                "Unable to consume event [${event.eventName}]:[${event.id}] " +
-                                    "by consumer [${consumer::class.simpleName}]"
-                            }
+        consumingJob = if (partitioning == null) {
+            CoroutineScope(context).launch {
+                flow.collect { event ->
+                    if (isActive) {
+                        consumerMap[EventKey(event.eventName, event.modelName)]?.forEach { consumer ->
+                            consume(consumer, event)
                         }
                     }
                 }
             }
+        } else {
+            CoroutineScope(context).launch {
+                consumerLanes.values.flatten().forEach { lane ->
+                    launch {
+                        lane.channel.consumeEach { published ->
+                            lane.depth.decrementAndGet()
+                            lagMetric.record(System.nanoTime() - published.publishedAt, lane.attributes)
+                            consume(lane.consumer, published.event)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private suspend fun consume(consumer: EventConsumer, event: IntegrationModelEvent) {
+        try {
+            consumer.consume(event)
+        } catch (ex: Exception) {
+            logger.error(ex) {
+                "Unable to consume event [${event.eventName}]:[${event.id}] " +
+                    "by consumer [${consumer::class.simpleName}]"
+            }
         }
     }
 
@@ -70,7 +173,14 @@ class InMemoryEventBus(
                 occurredAt = uowEvent.occurredAt,
                 payload = event.payload(uowEvent.principal),
             )
-            flow.emit(integrationEvent)
+            if (partitioning == null) {
+                flow.emit(integrationEvent)
+            } else {
+                val lane = integrationEvent.modelId.hashCode().mod(partitioning.lanes)
+                consumerMap[EventKey(integrationEvent.eventName, integrationEvent.modelName)]?.forEach { consumer ->
+                    consumerLanes.getValue(consumer)[lane].send(integrationEvent)
+                }
+            }
         }
     }
 
@@ -81,6 +191,7 @@ class InMemoryEventBus(
 
     override fun close() {
         consumingJob?.cancel()
+        depthGauge?.close()
     }
 
     private fun ModelEvent<*>.payload(principal: Principal<*>): JsonObject {
@@ -98,4 +209,13 @@ class InMemoryEventBus(
             }
         }
     }
+
+    private companion object {
+        val CONSUMER: AttributeKey<String> = AttributeKey.stringKey("consumer")
+        val LANE: AttributeKey<Long> = AttributeKey.longKey("lane")
+        val LAG_BUCKET_BOUNDARIES_NANOS: List<Long> = listOf(
+            10_000L, 100_000L, 1_000_000L, 5_000_000L, 10_000_000L, 50_000_000L,
+            100_000_000L, 500_000_000L, 1_000_000_000L, 10_000_000_000L,
+        )
+    }
 }
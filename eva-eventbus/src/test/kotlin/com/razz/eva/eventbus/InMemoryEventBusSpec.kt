@@ -11,9 +11,15 @@ import com.razz.eva.events.UowEvent
 import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.shouldBe
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
 import kotlin.time.DurationUnit
 import kotlin.time.toDuration
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.withTimeout
 import kotlinx.serialization.json.JsonObject
@@ -22,6 +28,7 @@ import kotlinx.serialization.json.buildJsonObject
 import kotlinx.serialization.json.put
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.Executor
 
 class InMemoryEventBusSpec : FunSpec({
@@ -112,6 +119,75 @@ class InMemoryEventBusSpec : FunSpec({
         validateResult(chan1)
         validateResult(chan2)
     }
+
+    test("Partitioned event bus delivers events of every model in order") {
+        val consumed = ConcurrentLinkedQueue<Pair<String, Int>>()
+        val allConsumed = CompletableDeferred<Unit>()
+        val consumer = numberedConsumer { event ->
+            consumed += event.modelId.stringValue() to event.payload.getValue("number").toString().toInt()
+            if (consumed.size == 50) allConsumed.complete(Unit)
+        }
+        val bus = InMemoryEventBus(
+            consumers = listOf(consumer),
+            context = Dispatchers.Default,
+            partitioning = InMemoryEventBus.Partitioning(lanes = 4),
+        ).apply {
+            start()
+        }
+        for (number in 0 until 50) bus.publish(uowEvent(Numbered(NumberedId("model-${number % 5}"), number)))
+        withTimeout(5.toDuration(DurationUnit.SECONDS)) { allConsumed.await() }
+        bus.close()
+
+        consumed.groupBy({ it.first }, { it.second }).values.forEach { numbers -> numbers shouldBe numbers.sorted() }
+    }
+
+    test("Slow consumer of partitioned event bus does not hold back other consumers") {
+        val gate = CompletableDeferred<Unit>()
+        val slow = numberedConsumer { gate.await() }
+        val fastConsumed = Channel<IntegrationModelEvent>(capacity = 10)
+        val fast = numberedConsumer { event -> fastConsumed.send(event) }
+        val bus = InMemoryEventBus(
+            consumers = listOf(slow, fast),
+            context = Dispatchers.Default,
+            partitioning = InMemoryEventBus.Partitioning(lanes = 2),
+        ).apply {
+            start()
+        }
+        for (number in 0 until 10) bus.publish(uowEvent(Numbered(NumberedId("model-$number"), number)))
+        val received = withTimeout(5.toDuration(DurationUnit.SECONDS)) { List(10) { fastConsumed.receive() } }
+        gate.complete(Unit)
+        bus.close()
+
+        received.size shouldBe 10
+    }
+
+    test("Full lane of partitioned event bus drops events and reports its depth") {
+        val metricReader = InMemoryMetricReader.create()
+        val openTelemetry = OpenTelemetrySdk.builder()
+            .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+            .build()
+        val gate = CompletableDeferred<Unit>()
+        val bus = InMemoryEventBus(
+            consumers = listOf(numberedConsumer { gate.await() }),
+            context = Executor(Runnable::run).asCoroutineDispatcher(),
+            partitioning = InMemoryEventBus.Partitioning(
+                lanes = 1,
+                bufferCapacity = 1,
+                onBufferOverflow = BufferOverflow.DROP_LATEST,
+            ),
+            openTelemetry = openTelemetry,
+        ).apply {
+            start()
+        }
+        for (number in 0 until 3) bus.publish(uowEvent(Numbered(NumberedId("model"), number)))
+
+        val metrics = metricReader.collectAllMetrics().associateBy { it.name }
+        metrics.getValue("eventbus.events.dropped").longSumData.points.single().value shouldBe 1
+        metrics.getValue("eventbus.lane.depth").longGaugeData.points.single().value shouldBe 1
+        metrics.getValue("eventbus.consumer.lag").histogramData.points.single().count shouldBe 1
+        gate.complete(Unit)
+        bus.close()
+    }
 })
 
 private fun matchConsumed(
@@ -204,3 +280,16 @@ private fun consumer(
 }
 
 private fun consumer() = consumer(TestModelEvent0) { }.second
+
+private data class NumberedId(override val id: String) : ModelId<String>
+
+private data class Numbered(override val modelId: NumberedId, val number: Int) : ModelEvent<NumberedId> {
+    override val modelName = "Numbered"
+    override fun integrationEvent() = buildJsonObject { put("number", number) }
+}
+
+private fun numberedConsumer(consume: suspend (IntegrationModelEvent) -> Unit) = object : EventConsumer {
+    override val modelName = IntegrationModelEvent.ModelName("Numbered")
+    override val eventNames = setOf(IntegrationModelEvent.EventName("Numbered"))
+    override suspend fun consume(event: IntegrationModelEvent) = consume(event)
+}
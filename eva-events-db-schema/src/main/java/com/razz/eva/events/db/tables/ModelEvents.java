@@ -89,7 +89,7 @@ public class ModelEvents extends TableImpl<ModelEventsRecord> {
     /**
      * The column <code>events.model_events.payload</code>.
      */
-    public final TableField<ModelEventsRecord, String> PAYLOAD = createField(DSL.name("payload"), SQLDataType.CLOB.nullable(false), this, "");
+    public final TableField<ModelEventsRecord, String> PAYLOAD = createField(DSL.name("payload"), SQLDataType.CLOB, this, "");
 
     /**
      * The column <code>events.model_events.tracing_context</code>.
@@ -101,6 +101,11 @@ public class ModelEvents extends TableImpl<ModelEventsRecord> {
      */
     public final TableField<ModelEventsRecord, Long> INCREMENTAL_QUERY_ID = createField(DSL.name("incremental_query_id"), SQLDataType.BIGINT.nullable(false).identity(true), this, "");
 
+    /**
+     * The column <code>events.model_events.payload_bin</code>.
+     */
+    public final TableField<ModelEventsRecord, byte[]> PAYLOAD_BIN = createField(DSL.name("payload_bin"), SQLDataType.BLOB, this, "");
+
     private ModelEvents(Name alias, Table<ModelEventsRecord> aliased) {
         this(alias, aliased, null);
     }
@@ -189,18 +194,18 @@ public class ModelEvents extends TableImpl<ModelEventsRecord> {
     }
 
     // -------------------------------------------------------------------------
-    // Row10 type methods
+    // Row11 type methods
     // -------------------------------------------------------------------------
 
     @Override
-    public Row10<UUID, UUID, String, String, String, Instant, Instant, String, String, Long> fieldsRow() {
-        return (Row10) super.fieldsRow();
+    public Row11<UUID, UUID, String, String, String, Instant, Instant, String, String, Long, byte[]> fieldsRow() {
+        return (Row11) super.fieldsRow();
     }
 
     /**
      * Convenience mapping calling {@link SelectField#convertFrom(Function)}.
      */
-    public <U> SelectField<U> mapping(Function10<? super UUID, ? super UUID, ? super String, ? super String, ? super String, ? super Instant, ? super Instant, ? super String, ? super String, ? super Long, ? extends U> from) {
+    public <U> SelectField<U> mapping(Function11<? super UUID, ? super UUID, ? super String, ? super String, ? super String, ? super Instant, ? super Instant, ? super String, ? super String, ? super Long, ? super byte[], ? extends U> from) {
         return convertFrom(Records.mapping(from));
     }
 
@@ -208,7 +213,7 @@ public class ModelEvents extends TableImpl<ModelEventsRecord> {
      * Convenience mapping calling {@link SelectField#convertFrom(Class,
      * Function)}.
      */
-    public <U> SelectField<U> mapping(Class<U> toType, Function10<? super UUID, ? super UUID, ? super String, ? super String, ? super String, ? super Instant, ? super Instant, ? super String, ? super String, ? super Long, ? extends U> from) {
+    public <U> SelectField<U> mapping(Class<U> toType, Function11<? super UUID, ? super UUID, ? super String, ? super String, ? super String, ? super Instant, ? super Instant, ? super String, ? super String, ? super Long, ? super byte[], ? extends U> from) {
         return convertFrom(toType, Records.mapping(from));
     }
 }
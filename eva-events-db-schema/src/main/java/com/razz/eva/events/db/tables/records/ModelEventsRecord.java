@@ -6,8 +6,8 @@ package com.razz.eva.events.db.tables.records;
 
 import com.razz.eva.events.db.tables.ModelEvents;
 import org.jooq.Field;
-import org.jooq.Record10;
-import org.jooq.Row10;
+import org.jooq.Record11;
+import org.jooq.Row11;
 import org.jooq.impl.TableRecordImpl;
 
 import javax.annotation.processing.Generated;
@@ -27,7 +27,7 @@ import java.util.UUID;
     comments = "This class is generated by jOOQ"
 )
 @SuppressWarnings({ "all", "unchecked", "rawtypes" })
-public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implements Record10<UUID, UUID, String, String, String, Instant, Instant, String, String, Long> {
+public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implements Record11<UUID, UUID, String, String, String, Instant, Instant, String, String, Long, byte[]> {
 
     private static final long serialVersionUID = 1L;
 
@@ -181,18 +181,33 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         return (Long) get(9);
     }
 
+    /**
+     * Setter for <code>events.model_events.payload_bin</code>.
+     */
+    public ModelEventsRecord setPayloadBin(byte[] value) {
+        set(10, value);
+        return this;
+    }
+
+    /**
+     * Getter for <code>events.model_events.payload_bin</code>.
+     */
+    public byte[] getPayloadBin() {
+        return (byte[]) get(10);
+    }
+
     // -------------------------------------------------------------------------
-    // Record10 type implementation
+    // Record11 type implementation
     // -------------------------------------------------------------------------
 
     @Override
-    public Row10<UUID, UUID, String, String, String, Instant, Instant, String, String, Long> fieldsRow() {
-        return (Row10) super.fieldsRow();
+    public Row11<UUID, UUID, String, String, String, Instant, Instant, String, String, Long, byte[]> fieldsRow() {
+        return (Row11) super.fieldsRow();
     }
 
     @Override
-    public Row10<UUID, UUID, String, String, String, Instant, Instant, String, String, Long> valuesRow() {
-        return (Row10) super.valuesRow();
+    public Row11<UUID, UUID, String, String, String, Instant, Instant, String, String, Long, byte[]> valuesRow() {
+        return (Row11) super.valuesRow();
     }
 
     @Override
@@ -245,6 +260,11 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         return ModelEvents.MODEL_EVENTS.INCREMENTAL_QUERY_ID;
     }
 
+    @Override
+    public Field<byte[]> field11() {
+        return ModelEvents.MODEL_EVENTS.PAYLOAD_BIN;
+    }
+
     @Override
     public UUID component1() {
         return getId();
@@ -295,6 +315,11 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         return getIncrementalQueryId();
     }
 
+    @Override
+    public byte[] component11() {
+        return getPayloadBin();
+    }
+
     @Override
     public UUID value1() {
         return getId();
@@ -345,6 +370,11 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         return getIncrementalQueryId();
     }
 
+    @Override
+    public byte[] value11() {
+        return getPayloadBin();
+    }
+
     @Override
     public ModelEventsRecord value1(UUID value) {
         setId(value);
@@ -406,7 +436,13 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
     }
 
     @Override
-    public ModelEventsRecord values(UUID value1, UUID value2, String value3, String value4, String value5, Instant value6, Instant value7, String value8, String value9, Long value10) {
+    public ModelEventsRecord value11(byte[] value) {
+        setPayloadBin(value);
+        return this;
+    }
+
+    @Override
+    public ModelEventsRecord values(UUID value1, UUID value2, String value3, String value4, String value5, Instant value6, Instant value7, String value8, String value9, Long value10, byte[] value11) {
         value1(value1);
         value2(value2);
         value3(value3);
@@ -417,6 +453,7 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         value8(value8);
         value9(value9);
         value10(value10);
+        value11(value11);
         return this;
     }
 
@@ -434,7 +471,7 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
     /**
      * Create a detached, initialised ModelEventsRecord
      */
-    public ModelEventsRecord(UUID id, UUID uowId, String modelId, String name, String modelName, Instant occurredAt, Instant insertedAt, String payload, String tracingContext, Long incrementalQueryId) {
+    public ModelEventsRecord(UUID id, UUID uowId, String modelId, String name, String modelName, Instant occurredAt, Instant insertedAt, String payload, String tracingContext, Long incrementalQueryId, byte[] payloadBin) {
         super(ModelEvents.MODEL_EVENTS);
 
         setId(id);
@@ -447,5 +484,6 @@ public class ModelEventsRecord extends TableRecordImpl<ModelEventsRecord> implem
         setPayload(payload);
         setTracingContext(tracingContext);
         setIncrementalQueryId(incrementalQueryId);
+        setPayloadBin(payloadBin);
     }
 }
@@ -0,0 +1,7 @@
+CREATE INDEX model_events_incremental_query_id_idx ON model_events (incremental_query_id);
+
+CREATE TABLE outbox_checkpoints (
+  relay                 TEXT                NOT NULL PRIMARY KEY,
+  position              BIGINT              NOT NULL,
+  updated_at            TIMESTAMP           NOT NULL DEFAULT clock_timestamp()
+);
@@ -0,0 +1,4 @@
+-- Binary payloads of repositories writing CBOR are stored in payload_bin, the JSON payload is left null then.
+-- Both changes only touch the catalog, existing partitions are not rewritten.
+ALTER TABLE model_events ADD COLUMN payload_bin BYTEA;
+ALTER TABLE model_events ALTER COLUMN payload DROP NOT NULL;
@@ -0,0 +1,18 @@
+plugins {
+    id("eva-kotlin")
+    id("eva-publish")
+}
+
+dependencies {
+    api(libs.jooq)
+    api(project(eva.eva_events))
+    api(project(eva.eva_persistence))
+    api(project(eva.eva_tracing))
+
+    implementation(libs.kotlin.coroutines)
+    implementation(libs.kotlin.logging)
+    implementation(project(eva.eva_events_db_schema))
+    implementation(project(eva.eva_serialization))
+
+    testImplementation(libs.opentelemetry.sdk.testing)
+}
@@ -0,0 +1,66 @@
+package com.razz.eva.outbox
+
+import com.razz.eva.persistence.executor.QueryExecutor
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps the position of every [OutboxRelay]: the `incremental_query_id` of the last model event it relayed,
+ * every event up to which was either relayed or given up as a gap.
+ */
+interface OutboxCheckpoints {
+
+    suspend fun load(relay: String): Long?
+
+    suspend fun save(relay: String, position: Long)
+}
+
+/**
+ * Checkpoints lost on restart, relays start over from the first model event.
+ */
+class InMemoryOutboxCheckpoints : OutboxCheckpoints {
+
+    private val positions = ConcurrentHashMap<String, Long>()
+
+    override suspend fun load(relay: String): Long? = positions[relay]
+
+    override suspend fun save(relay: String, position: Long) {
+        positions[relay] = position
+    }
+}
+
+/**
+ * Checkpoints kept in the `outbox_checkpoints` table of the events schema.
+ */
+class JooqOutboxCheckpoints(
+    private val queryExecutor: QueryExecutor,
+    private val dslContext: DSLContext,
+) : OutboxCheckpoints {
+
+    override suspend fun load(relay: String): Long? {
+        val select = dslContext.selectFrom(OUTBOX_CHECKPOINTS).where(RELAY.eq(relay))
+        return queryExecutor.executeSelect(dslContext, select, OUTBOX_CHECKPOINTS)
+            .firstOrNull()
+            ?.get(POSITION)
+    }
+
+    override suspend fun save(relay: String, position: Long) {
+        val upsert = dslContext.insertInto(OUTBOX_CHECKPOINTS)
+            .set(RELAY, relay)
+            .set(POSITION, position)
+            .onConflict(RELAY)
+            .doUpdate()
+            .set(POSITION, position)
+            .set(UPDATED_AT, DSL.currentLocalDateTime())
+        queryExecutor.executeQuery(dslContext, upsert)
+    }
+
+    private companion object {
+        val OUTBOX_CHECKPOINTS = DSL.table(DSL.name("events", "outbox_checkpoints"))
+        val RELAY = DSL.field(DSL.name("relay"), SQLDataType.CLOB)
+        val POSITION = DSL.field(DSL.name("position"), SQLDataType.BIGINT)
+        val UPDATED_AT = DSL.field(DSL.name("updated_at"), SQLDataType.LOCALDATETIME)
+    }
+}
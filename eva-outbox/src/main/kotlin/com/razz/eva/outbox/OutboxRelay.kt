@@ -0,0 +1,205 @@
+package com.razz.eva.outbox
+
+import com.razz.eva.events.EventConsumer
+import com.razz.eva.events.IntegrationModelEvent
+import com.razz.eva.events.db.tables.ModelEvents.MODEL_EVENTS
+import com.razz.eva.events.db.tables.records.ModelEventsRecord
+import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.serialization.cbor.CborFormat
+import com.razz.eva.serialization.json.JsonFormat.json
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.OpenTelemetry.noop
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.serialization.json.jsonObject
+import mu.KotlinLogging
+import org.jooq.DSLContext
+import java.io.Closeable
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.Executors.newSingleThreadExecutor
+
+/**
+ * Relays model events committed to the `model_events` table to [consumers], tailing the table
+ * by `incremental_query_id` in batches of [Config.batchSize] and keeping its position in [checkpoints].
+ * Unlike publishing right after the commit, no event is lost when the process stops in between,
+ * so a relay delivers every model event at least once, to any number of processes.
+ *
+ * A sequence value is taken on insert but becomes visible on commit, so an event can show up after events
+ * of higher ids. The relay does not pass such a gap until it is filled or [Config.gapTimeout] elapses
+ * since a poll first saw it, after which the missing ids are taken for rolled back inserts and skipped,
+ * so the timeout has to outlast the longest write transaction.
+ *
+ * An event a consumer fails to consume is relayed again on the next poll together with the events after it,
+ * to all of its consumers. Run a single relay of the same name at a time.
+ *
+ * Relayed events are counted as `outbox.events.relayed`, skipped gaps as `outbox.gaps.skipped`.
+ */
+class OutboxRelay(
+    private val name: String,
+    private val queryExecutor: QueryExecutor,
+    private val dslContext: DSLContext,
+    consumers: List<EventConsumer>,
+    private val checkpoints: OutboxCheckpoints = InMemoryOutboxCheckpoints(),
+    private val config: Config = Config(),
+    openTelemetry: OpenTelemetry = noop(),
+    private val clock: Clock = Clock.systemUTC(),
+    private val context: CoroutineDispatcher = newSingleThreadExecutor().asCoroutineDispatcher(),
+) : Closeable {
+
+    /**
+     * @param batchSize how many model events are read at a time
+     * @param pollInterval how long the relay waits for new model events once it caught up
+     * @param gapTimeout how long the relay waits for a missing model event before skipping it
+     */
+    data class Config(
+        val batchSize: Int = 500,
+        val pollInterval: Duration = Duration.ofMillis(200),
+        val gapTimeout: Duration = Duration.ofSeconds(10),
+    ) {
+        init {
+            require(batchSize > 0) { "Outbox relay batch size must be positive" }
+            require(!pollInterval.isNegative) { "Outbox relay poll interval must not be negative" }
+            require(!gapTimeout.isNegative) { "Outbox relay gap timeout must not be negative" }
+        }
+    }
+
+    private val logger = KotlinLogging.logger {}
+    private var relayingJob: Job? = null
+    private var position: Long? = null
+    private val gaps = mutableMapOf<Long, Instant>()
+    private val consumerMap: Map<EventKey, List<EventConsumer>> = consumers
+        .flatMap { consumer -> consumer.eventNames.map { name -> EventKey(name, consumer.modelName) to consumer } }
+        .groupByTo(mutableMapOf(), { (name, _) -> name }, { (_, consumer) -> consumer })
+
+    private val attributes = Attributes.of(RELAY, name)
+
+    private val relayedMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("outbox.events.relayed")
+        .setDescription("Model events relayed from the outbox to consumers")
+        .setUnit("{event}")
+        .build()
+
+    private val skippedGapMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("outbox.gaps.skipped")
+        .setDescription("Gaps in model event ids the outbox relay stopped waiting for")
+        .setUnit("{gap}")
+        .build()
+
+    fun start() {
+        relayingJob = CoroutineScope(context).launch {
+            while (isActive) {
+                val relayed = try {
+                    relayBatch()
+                } catch (ex: CancellationException) {
+                    throw ex
+                } catch (ex: Exception) {
+                    logger.error(ex) { "Outbox relay [$name] is unable to relay model events" }
+                    0
+                }
+                if (relayed < config.batchSize) delay(config.pollInterval.toMillis())
+            }
+        }
+    }
+
+    /**
+     * Relays the next batch of model events and returns how many of them were relayed.
+     */
+    suspend fun relayBatch(): Int {
+        val from = position ?: checkpoints.load(name) ?: 0L
+        val select = dslContext.selectFrom(MODEL_EVENTS)
+            .where(MODEL_EVENTS.INCREMENTAL_QUERY_ID.gt(from))
+            .orderBy(MODEL_EVENTS.INCREMENTAL_QUERY_ID)
+            .limit(config.batchSize)
+        val records = queryExecutor.executeSelect(dslContext, select, MODEL_EVENTS)
+        noteGaps(from, records)
+        var relayedUpTo = from
+        var relayed = 0
+        for (record in records) {
+            val id = record.incrementalQueryId
+            val blocked = id > relayedUpTo + 1 && !gapExpired(relayedUpTo + 1, id)
+            if (blocked || !relay(record)) break
+            relayedUpTo = id
+            relayed++
+        }
+        if (relayedUpTo > from) {
+            checkpoints.save(name, relayedUpTo)
+            gaps.keys.removeIf { it <= relayedUpTo }
+            relayedMetric.add(relayed.toLong(), attributes)
+        }
+        position = relayedUpTo
+        return relayed
+    }
+
+    // every gap of the batch is timed from the poll it was first seen in, not from the poll the relay reached it,
+    // so gaps of one batch expire together instead of one gap timeout after another
+    private fun noteGaps(from: Long, records: List<ModelEventsRecord>) {
+        val now = clock.instant()
+        var previous = from
+        for (record in records) {
+            if (record.incrementalQueryId > previous + 1) gaps.putIfAbsent(previous + 1, now)
+            previous = record.incrementalQueryId
+        }
+    }
+
+    private fun gapExpired(missingFrom: Long, missingUntil: Long): Boolean {
+        val now = clock.instant()
+        val seenAt = gaps.getOrPut(missingFrom) { now }
+        if (Duration.between(seenAt, now) < config.gapTimeout) return false
+        logger.warn {
+            "Outbox relay [$name] skips model events [$missingFrom..${missingUntil - 1}] " +
+                "not committed within ${config.gapTimeout}"
+        }
+        skippedGapMetric.add(1, attributes)
+        return true
+    }
+
+    private suspend fun relay(record: ModelEventsRecord): Boolean {
+        val event = IntegrationModelEvent(
+            id = IntegrationModelEvent.EventId(record.id),
+            eventName = IntegrationModelEvent.EventName(record.name),
+            uowId = IntegrationModelEvent.UowId(record.uowId),
+            modelId = IntegrationModelEvent.ModelId(record.modelId),
+            modelName = IntegrationModelEvent.ModelName(record.modelName),
+            occurredAt = record.occurredAt,
+            payload = (
+                record.payloadBin?.let(CborFormat::decode) ?: json.parseToJsonElement(record.payload)
+                ).jsonObject,
+        )
+        consumerMap[EventKey(event.eventName, event.modelName)]?.forEach { consumer ->
+            try {
+                consumer.consume(event)
+            } catch (ex: Exception) {
+                logger.error(ex) {
+                    "Unable to consume event [${event.eventName}]:[${event.id}] " +
+                        "by consumer [${consumer::class.simpleName}], it will be relayed again"
+                }
+                return false
+            }
+        }
+        return true
+    }
+
+    private data class EventKey(
+        val eventName: IntegrationModelEvent.EventName,
+        val modelName: IntegrationModelEvent.ModelName,
+    )
+
+    override fun close() {
+        relayingJob?.cancel()
+    }
+
+    private companion object {
+        val RELAY: AttributeKey<String> = AttributeKey.stringKey("relay")
+    }
+}
@@ -0,0 +1,227 @@
+package com.razz.eva.outbox
+
+import com.razz.eva.events.EventConsumer
+import com.razz.eva.events.IntegrationModelEvent
+import com.razz.eva.events.IntegrationModelEvent.EventName
+import com.razz.eva.events.IntegrationModelEvent.ModelName
+import com.razz.eva.events.db.tables.records.ModelEventsRecord
+import com.razz.eva.persistence.executor.QueryExecutor
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.mockk.coEvery
+import io.mockk.mockk
+import io.mockk.slot
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.Select
+import org.jooq.conf.ParamType.INLINED
+import org.jooq.impl.DSL
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset.UTC
+import java.util.UUID.randomUUID
+
+class OutboxRelaySpec : BehaviorSpec({
+
+    isolationMode = InstancePerLeaf
+
+    class MutableClock(var now: Instant) : Clock() {
+        override fun instant(): Instant = now
+        override fun getZone(): ZoneId = UTC
+        override fun withZone(zone: ZoneId?): Clock = this
+    }
+
+    class RecordingConsumer(
+        override val modelName: ModelName,
+        override val eventNames: Set<EventName>,
+        private val failOn: Set<Long> = setOf(),
+    ) : EventConsumer {
+        val consumed = mutableListOf<IntegrationModelEvent>()
+
+        override suspend fun consume(event: IntegrationModelEvent) {
+            val sequence = event.payload["sequence"].toString().toLong()
+            check(sequence !in failOn) { "Failed to consume $sequence" }
+            consumed += event
+        }
+    }
+
+    fun modelEvent(sequence: Long, name: String = "DepartmentCreated") = ModelEventsRecord().apply {
+        id = randomUUID()
+        uowId = randomUUID()
+        modelId = randomUUID().toString()
+        this.name = name
+        modelName = "Department"
+        occurredAt = Instant.now()
+        payload = buildJsonObject { put("sequence", sequence) }.toString()
+        incrementalQueryId = sequence
+    }
+
+    val metricReader = InMemoryMetricReader.create()
+    val openTelemetry = OpenTelemetrySdk.builder()
+        .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+        .build()
+
+    fun counted(metric: String): Long = metricReader.collectAllMetrics()
+        .filter { it.name == metric }
+        .flatMap { it.longSumData.points }
+        .sumOf { it.value }
+
+    val dslContext = DSL.using(POSTGRES)
+    val queryExecutor = mockk<QueryExecutor>()
+    val selects = mutableListOf<String>()
+    val committed = mutableListOf<ModelEventsRecord>()
+    val select = slot<Select<ModelEventsRecord>>()
+    coEvery { queryExecutor.executeSelect(dslContext, capture(select), any()) } answers {
+        val from = select.captured.getSQL(INLINED)
+            .substringAfter("\"incremental_query_id\" > ")
+            .substringBefore(' ')
+            .toLong()
+        val limit = select.captured.getSQL(INLINED)
+            .substringAfter("fetch next ")
+            .substringBefore(' ')
+            .toInt()
+        selects += select.captured.getSQL(INLINED)
+        committed.filter { it.incrementalQueryId > from }.sortedBy { it.incrementalQueryId }.take(limit)
+    }
+
+    val clock = MutableClock(Instant.now())
+    val checkpoints = InMemoryOutboxCheckpoints()
+    val created = RecordingConsumer(ModelName("Department"), setOf(EventName("DepartmentCreated")), failOn = setOf(4))
+    val renamed = RecordingConsumer(ModelName("Department"), setOf(EventName("DepartmentRenamed")))
+    val relay = OutboxRelay(
+        name = "departments",
+        queryExecutor = queryExecutor,
+        dslContext = dslContext,
+        consumers = listOf(created, renamed),
+        checkpoints = checkpoints,
+        config = OutboxRelay.Config(batchSize = 2, gapTimeout = Duration.ofSeconds(10)),
+        openTelemetry = openTelemetry,
+        clock = clock,
+    )
+
+    Given("Model events without gaps") {
+        committed += listOf(modelEvent(1), modelEvent(2, "DepartmentRenamed"), modelEvent(3))
+
+        When("Relay relays batches until it caught up") {
+            val relayed = listOf(relay.relayBatch(), relay.relayBatch(), relay.relayBatch())
+
+            Then("Every event is relayed to consumers of its name in order") {
+                relayed shouldBe listOf(2, 1, 0)
+                created.consumed.map { it.payload["sequence"] } shouldBe listOf(JsonPrimitive(1), JsonPrimitive(3))
+                renamed.consumed.map { it.payload["sequence"] } shouldBe listOf(JsonPrimitive(2))
+                counted("outbox.events.relayed") shouldBe 3
+            }
+
+            Then("Relay reads events after its checkpoint") {
+                checkpoints.load("departments") shouldBe 3
+                selects.first() shouldBe """
+                    select "events"."model_events"."id",
+                           "events"."model_events"."uow_id",
+                           "events"."model_events"."model_id",
+                           "events"."model_events"."name",
+                           "events"."model_events"."model_name",
+                           "events"."model_events"."occurred_at",
+                           "events"."model_events"."inserted_at",
+                           "events"."model_events"."payload",
+                           "events"."model_events"."tracing_context",
+                           "events"."model_events"."incremental_query_id",
+                           "events"."model_events"."payload_bin"
+                    from "events"."model_events"
+                    where "events"."model_events"."incremental_query_id" > 0
+                    order by "events"."model_events"."incremental_query_id"
+                    fetch next 2 rows only
+                """.trim().replace(Regex("\\s+"), " ")
+            }
+        }
+    }
+
+    Given("Model events with a gap of a transaction in flight") {
+        committed += listOf(modelEvent(1), modelEvent(3))
+
+        When("Relay relays events") {
+            relay.relayBatch()
+            relay.relayBatch()
+
+            Then("Events after the gap are not relayed") {
+                created.consumed.size shouldBe 1
+                checkpoints.load("departments") shouldBe 1
+            }
+        }
+
+        When("Missing event is committed") {
+            relay.relayBatch()
+            committed += modelEvent(2)
+            relay.relayBatch()
+
+            Then("Events are relayed in order") {
+                created.consumed.map { it.payload["sequence"] } shouldBe
+                    listOf(JsonPrimitive(1), JsonPrimitive(2), JsonPrimitive(3))
+                checkpoints.load("departments") shouldBe 3
+                counted("outbox.gaps.skipped") shouldBe 0
+            }
+        }
+
+        When("Missing event is not committed within the gap timeout") {
+            relay.relayBatch()
+            clock.now = clock.now.plus(Duration.ofSeconds(11))
+            relay.relayBatch()
+
+            Then("Gap is skipped") {
+                created.consumed.map { it.payload["sequence"] } shouldBe listOf(JsonPrimitive(1), JsonPrimitive(3))
+                checkpoints.load("departments") shouldBe 3
+                counted("outbox.gaps.skipped") shouldBe 1
+            }
+        }
+    }
+
+    Given("Model events with two gaps in one batch") {
+        committed += listOf(modelEvent(1), modelEvent(3), modelEvent(5))
+        val batchRelay = OutboxRelay(
+            name = "departments",
+            queryExecutor = queryExecutor,
+            dslContext = dslContext,
+            consumers = listOf(created, renamed),
+            checkpoints = checkpoints,
+            config = OutboxRelay.Config(batchSize = 3, gapTimeout = Duration.ofSeconds(10)),
+            openTelemetry = openTelemetry,
+            clock = clock,
+        )
+
+        When("Missing events are not committed within the gap timeout") {
+            batchRelay.relayBatch()
+            clock.now = clock.now.plus(Duration.ofSeconds(11))
+            batchRelay.relayBatch()
+
+            Then("Both gaps are skipped after a single gap timeout") {
+                created.consumed.map { it.payload["sequence"] } shouldBe
+                    listOf(JsonPrimitive(1), JsonPrimitive(3), JsonPrimitive(5))
+                checkpoints.load("departments") shouldBe 5
+                counted("outbox.gaps.skipped") shouldBe 2
+            }
+        }
+    }
+
+    Given("Model event consumer fails to consume") {
+        committed += listOf(modelEvent(3), modelEvent(4), modelEvent(5))
+        checkpoints.save("departments", 2)
+
+        When("Relay relays events") {
+            val relayed = relay.relayBatch()
+
+            Then("Failed event is relayed again on the next poll") {
+                relayed shouldBe 1
+                checkpoints.load("departments") shouldBe 3
+                relay.relayBatch() shouldBe 0
+                selects.last().contains("\"incremental_query_id\" > 3") shouldBe true
+            }
+        }
+    }
+})
@@ -0,0 +1,25 @@
+package com.razz.eva.paging
+
+/**
+ * Disjoint part of the keyset range scanned by [SlicedPages.asSlicedBatchFlow]:
+ * ordering values greater than [after] and less or equal to [upTo], `null` leaves the side unbounded.
+ */
+data class KeysetSlice<P : Comparable<P>>(
+    val after: P?,
+    val upTo: P?,
+) {
+
+    operator fun contains(value: P): Boolean =
+        (after == null || value > after) && (upTo == null || value <= upTo)
+
+    companion object {
+        /**
+         * Splits the whole keyset range at [boundaries] into `boundaries.size + 1` slices,
+         * every boundary falls into the slice below it.
+         */
+        fun <P : Comparable<P>> split(boundaries: List<P>): List<KeysetSlice<P>> {
+            val sorted = boundaries.distinct().sorted()
+            return (listOf(null) + sorted).zip(sorted + listOf(null), ::KeysetSlice)
+        }
+    }
+}
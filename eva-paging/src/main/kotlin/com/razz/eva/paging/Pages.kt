@@ -3,27 +3,46 @@ package com.razz.eva.paging
 import com.razz.eva.paging.Page.First
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.FlowCollector
+import kotlinx.coroutines.flow.buffer
 import kotlinx.coroutines.flow.flow
 
 abstract class Pages<ORDER_BY : Comparable<ORDER_BY>, ELEMENT : Any>(
-    private val batchSize: Int,
+    internal val batchSize: Int,
 ) {
 
     protected abstract suspend fun batch(page: Page<ORDER_BY>): PagedList<ELEMENT, ORDER_BY>
 
-    fun asFlow(page: Page<ORDER_BY>? = null): Flow<ELEMENT> = flow {
-        asBatchFlow(page ?: First(Size(batchSize)))
+    /**
+     * @param prefetch number of batches fetched ahead of the one being collected,
+     * with 0 the next batch is fetched only once the current one is collected
+     */
+    fun asFlow(page: Page<ORDER_BY>? = null, prefetch: Int = 0): Flow<ELEMENT> = flow {
+        asBatchFlow(page, prefetch)
             .collect { batch -> batch.forEach { emit(it) } }
     }
 
-    fun asBatchFlow(page: Page<ORDER_BY>? = null): Flow<List<ELEMENT>> =
-        flow { emitBatch(page ?: First(Size(batchSize))) }
+    /**
+     * @param prefetch number of batches fetched ahead of the one being collected,
+     * with 0 the next batch is fetched only once the current one is collected
+     */
+    fun asBatchFlow(page: Page<ORDER_BY>? = null, prefetch: Int = 0): Flow<List<ELEMENT>> =
+        flow { emitBatch(page ?: First(Size(batchSize)), ::batch) }
+            .prefetch(prefetch)
 
-    private tailrec suspend fun FlowCollector<List<ELEMENT>>.emitBatch(page: Page<ORDER_BY>?) {
+    internal tailrec suspend fun FlowCollector<List<ELEMENT>>.emitBatch(
+        page: Page<ORDER_BY>?,
+        fetch: suspend (Page<ORDER_BY>) -> PagedList<ELEMENT, ORDER_BY>,
+    ) {
         if (page != null) {
-            val batch = batch(page)
+            val batch = fetch(page)
             emit(batch)
-            emitBatch(batch.nextPage())
+            emitBatch(batch.nextPage(), fetch)
         } else return
     }
+
+    internal fun <T> Flow<T>.prefetch(prefetch: Int): Flow<T> {
+        require(prefetch >= 0) { "Prefetch must not be negative" }
+        // the batch being fetched is already ahead, so the buffer holds one batch less
+        return if (prefetch == 0) this else buffer(prefetch - 1)
+    }
 }
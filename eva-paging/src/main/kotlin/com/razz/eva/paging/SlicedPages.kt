@@ -0,0 +1,43 @@
+package com.razz.eva.paging
+
+import com.razz.eva.paging.Page.First
+import kotlinx.coroutines.channels.Channel.Factory.RENDEZVOUS
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+
+/**
+ * [Pages] able to fetch the elements of a keyset slice on their own, so the keyset range can be scanned
+ * by several slices at once with [asSlicedBatchFlow].
+ */
+abstract class SlicedPages<ORDER_BY : Comparable<ORDER_BY>, ELEMENT : Any>(
+    batchSize: Int,
+) : Pages<ORDER_BY, ELEMENT>(batchSize) {
+
+    /**
+     * Batch of the elements within [slice] only.
+     */
+    protected abstract suspend fun batch(
+        page: Page<ORDER_BY>,
+        slice: KeysetSlice<ORDER_BY>,
+    ): PagedList<ELEMENT, ORDER_BY>
+
+    /**
+     * Scans the keyset range split at [boundaries] into disjoint slices concurrently, see [KeysetSlice.split].
+     * Batches of different slices interleave, batches of a slice keep their order.
+     *
+     * @param prefetch number of batches every slice fetches ahead of the one being collected
+     */
+    fun asSlicedBatchFlow(boundaries: List<ORDER_BY>, prefetch: Int = 0): Flow<List<ELEMENT>> =
+        channelFlow {
+            KeysetSlice.split(boundaries).forEach { slice ->
+                launch {
+                    flow { emitBatch(First(Size(batchSize))) { page -> batch(page, slice) } }
+                        .prefetch(prefetch)
+                        .collect { batch -> send(batch) }
+                }
+            }
+        }.buffer(RENDEZVOUS)
+}
@@ -1,18 +1,27 @@
 package com.razz.types.paging
 
 import com.razz.eva.paging.BasicPagedList
+import com.razz.eva.paging.KeysetSlice
 import com.razz.eva.paging.Page
 import com.razz.eva.paging.Page.First
 import com.razz.eva.paging.Page.Next
 import com.razz.eva.paging.PagedList
 import com.razz.eva.paging.Pages
 import com.razz.eva.paging.Size
+import com.razz.eva.paging.SlicedPages
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
 import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.collections.shouldHaveSize
 import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.toList
+import java.util.concurrent.CopyOnWriteArrayList
 
 class PagesSpec : BehaviorSpec({
 
+    isolationMode = InstancePerLeaf
+
     Given("Pages returns two batches") {
         val pages = object : Pages<Int, Int>(2) {
             override suspend fun batch(page: Page<Int>): PagedList<Int, Int> = when (page) {
@@ -60,4 +69,73 @@ class PagesSpec : BehaviorSpec({
             }
         }
     }
+
+    Given("Pages returns three batches") {
+        val log = CopyOnWriteArrayList<String>()
+        val pages = object : Pages<Int, Int>(1) {
+            override suspend fun batch(page: Page<Int>): PagedList<Int, Int> {
+                val element = when (page) {
+                    is First -> 1
+                    is Next -> page.maxOrdering + 1
+                }
+                log.add("fetched $element")
+                return BasicPagedList(listOf(element), if (element < 3) Next(element, "$element", Size(1)) else null)
+            }
+        }
+
+        When("Principal processes batches without prefetch") {
+            pages.asBatchFlow().collect { batch ->
+                delay(50)
+                log.add("processed ${batch.single()}")
+            }
+
+            Then("Next batch is fetched once the current one is processed") {
+                log shouldBe listOf("fetched 1", "processed 1", "fetched 2", "processed 2", "fetched 3", "processed 3")
+            }
+        }
+
+        When("Principal processes batches with prefetch of one batch") {
+            pages.asBatchFlow(prefetch = 1).collect { batch ->
+                delay(50)
+                log.add("processed ${batch.single()}")
+            }
+
+            Then("Next batch is fetched while the current one is processed") {
+                log shouldBe listOf("fetched 1", "fetched 2", "processed 1", "fetched 3", "processed 2", "processed 3")
+            }
+        }
+    }
+
+    Given("Pages scanning keyset slices") {
+        val elements = (1..10).toList()
+        val pages = object : SlicedPages<Int, Int>(2) {
+            override suspend fun batch(page: Page<Int>): PagedList<Int, Int> = TODO("NEVER HAPPENS")
+
+            override suspend fun batch(page: Page<Int>, slice: KeysetSlice<Int>): PagedList<Int, Int> {
+                val batch = elements.sortedDescending()
+                    .filter { it in slice && (page !is Next || it < page.maxOrdering) }
+                    .take(page.sizeValue())
+                return BasicPagedList(
+                    batch,
+                    if (batch.size == page.sizeValue()) Next(batch.last(), "${batch.last()}", page.size) else null,
+                )
+            }
+        }
+
+        When("Principal requests sliced flow of batches") {
+            val batches = pages.asSlicedBatchFlow(boundaries = listOf(7, 3), prefetch = 1).toList()
+
+            Then("Flow has all elements once") {
+                batches.flatten() shouldContainExactlyInAnyOrder elements
+            }
+
+            Then("Every batch is within one slice") {
+                val slices = KeysetSlice.split(listOf(3, 7))
+                slices shouldHaveSize 3
+                batches.filter { it.isNotEmpty() }.forEach { batch ->
+                    slices.count { slice -> batch.all { it in slice } } shouldBe 1
+                }
+            }
+        }
+    }
 })
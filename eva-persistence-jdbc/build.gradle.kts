@@ -11,6 +11,7 @@ dependencies {
     api(project(eva.eva_tracing))
 
     implementation(libs.kotlin.stdlib)
+    implementation(libs.kotlin.logging)
 
     implementation(libs.postgres)
     implementation(libs.jooq)
@@ -1,5 +1,7 @@
 package com.razz.eva.persistence.jdbc
 
+import com.razz.eva.persistence.ConcurrencyLimit
+import com.razz.eva.persistence.ConcurrencyLimiter
 import com.razz.eva.tracing.withSpan
 import io.opentelemetry.api.OpenTelemetry
 import kotlinx.coroutines.CoroutineDispatcher
@@ -9,6 +11,7 @@ import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.withContext
 import java.sql.Connection
+import java.util.concurrent.ConcurrentHashMap
 import javax.sql.DataSource
 import kotlin.coroutines.coroutineContext
 
@@ -19,13 +22,29 @@ class DataSourceConnectionProvider(
     private val blockingJdbcContext: CoroutineDispatcher = Dispatchers.IO,
     private val openTelemetry: OpenTelemetry? = null,
     poolMaxSize: Int = Int.MAX_VALUE,
+    concurrencyLimit: ConcurrencyLimit? = null,
 ) : JdbcConnectionProvider {
 
     private val semaphore = Semaphore(poolMaxSize)
+    private val limiter = concurrencyLimit?.let { ConcurrencyLimiter(it, openTelemetry ?: OpenTelemetry.noop()) }
+    private val acquiredAt = ConcurrentHashMap<Connection, Long>()
 
     override suspend fun acquire(): Connection {
         coroutineContext.ensureActive() // fail-fast if current coroutine was cancelled before acquiring a connection
 
+        // the adaptive limit goes first, so callers queue for it instead of for the pool and give up in time
+        val admittedAt = limiter?.acquire()
+        val connection = try {
+            acquirePooled()
+        } catch (t: Throwable) {
+            limiter?.release(admittedAt)
+            throw t
+        }
+        if (admittedAt != null) acquiredAt[connection] = admittedAt
+        return connection
+    }
+
+    private suspend fun acquirePooled(): Connection {
         // acquire a permit before acquiring a connection from the pool,
         // so we can be sure that won't just reserve a thread and wait for a connection to be available
         openTelemetry.withSpan(spanName = "semaphore-acquire", parameters = {
@@ -72,5 +91,6 @@ class DataSourceConnectionProvider(
             }
         } finally {
             semaphore.release() // release the permit after closing the connection
+            limiter?.release(acquiredAt.remove(connection))
         }
 }
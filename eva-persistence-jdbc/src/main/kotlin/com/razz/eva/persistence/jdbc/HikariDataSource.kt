@@ -17,5 +17,13 @@ fun dataSource(config: DatabaseConfig, isPrimary: Boolean): HikariDataSource =
         password = config.password.showPassword()
         maximumPoolSize = config.maxPoolSize.value()
         leakDetectionThreshold = 3000L
+        // repository queries render the same sql per query shape, pgjdbc keeps them prepared server-side
+        // per pooled connection in an lru keyed by sql, so each shape is parsed and planned once per connection
+        addDataSourceProperty("prepareThreshold", PREPARE_THRESHOLD)
+        addDataSourceProperty("preparedStatementCacheQueries", PREPARED_STATEMENT_CACHE_QUERIES)
+        config.additionalProperties.forEach(::addDataSourceProperty)
         HikariDataSource(this)
     }
+
+private const val PREPARE_THRESHOLD = 1
+private const val PREPARED_STATEMENT_CACHE_QUERIES = 512
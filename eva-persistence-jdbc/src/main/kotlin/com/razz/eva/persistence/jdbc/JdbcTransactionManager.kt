@@ -3,6 +3,13 @@ package com.razz.eva.persistence.jdbc
 import com.razz.eva.persistence.ConnectionMode
 import com.razz.eva.persistence.ConnectionProvider
 import com.razz.eva.persistence.ConnectionWrapper
+import com.razz.eva.persistence.Lsn
+import com.razz.eva.persistence.ReplicaProbe
+import com.razz.eva.persistence.ReplicaRouting
+import com.razz.eva.persistence.ReplicaStatus
+import com.razz.eva.persistence.Savepoints
+import com.razz.eva.persistence.ReplicaStatus.Companion.PG_CURRENT_LSN_QUERY
+import com.razz.eva.persistence.ReplicaStatus.Companion.PG_REPLICA_STATUS_QUERY
 import com.razz.eva.persistence.TransactionManager
 import com.razz.eva.tracing.getEvaMeter
 import io.opentelemetry.api.OpenTelemetry
@@ -12,6 +19,7 @@ import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.sql.Connection
+import java.time.Duration
 import kotlin.coroutines.coroutineContext
 
 class JdbcTransactionManager(
@@ -19,7 +27,8 @@ class JdbcTransactionManager(
     replicaProvider: ConnectionProvider<Connection>,
     private val blockingJdbcContext: CoroutineDispatcher = Dispatchers.IO,
     openTelemetry: OpenTelemetry? = null,
-) : TransactionManager<Connection>(primaryProvider, replicaProvider) {
+    replicaRouting: ReplicaRouting? = null,
+) : TransactionManager<Connection>(primaryProvider, replicaProvider, replicaRouting, JdbcReplicaProbe) {
 
     // otel default boundaries are millisecond-oriented; dispatch waits sit in the micro to
     // millisecond range, so advise boundaries covering 10us .. 1s
@@ -62,11 +71,28 @@ class JdbcTransactionManager(
 
     override fun supportsPipelining(): Boolean = false
 
+    override val savepoints: Savepoints<Connection> = object : Savepoints<Connection> {
+        override suspend fun <R> inSavepoint(block: suspend (Connection) -> R): R {
+            val connection = checkNotNull(ctxConnection()) { "Savepoint requires an existing transaction" }
+            // runs inside inTransaction, so already on the blocking jdbc context
+            val savepoint = connection.setSavepoint()
+            val result = try {
+                block(connection)
+            } catch (ex: Exception) {
+                // see JdbcConnectionElement.rollback: the pool may have closed the connection on a fatal error
+                if (!connection.isClosed) connection.rollback(savepoint)
+                throw ex
+            }
+            connection.releaseSavepoint(savepoint)
+            return result
+        }
+    }
+
     companion object {
         private const val OP = "op"
         private const val WITH_CONNECTION = "with_connection"
         private const val IN_TRANSACTION = "in_transaction"
-        private val DISPATCH_WAIT_BUCKET_BOUNDARIES_NANOS = listOf(
+        internal val DISPATCH_WAIT_BUCKET_BOUNDARIES_NANOS = listOf(
             10_000L, // 10us
             50_000L,
             100_000L,
@@ -81,3 +107,23 @@ class JdbcTransactionManager(
         )
     }
 }
+
+// both run inside withConnection or inTransaction, so already on the blocking jdbc context
+private object JdbcReplicaProbe : ReplicaProbe<Connection> {
+
+    override suspend fun replicaStatus(connection: Connection): ReplicaStatus =
+        connection.createStatement().use { statement ->
+            statement.executeQuery(PG_REPLICA_STATUS_QUERY).use { rs ->
+                rs.next()
+                ReplicaStatus(rs.getString(1)?.let(Lsn::parse), Duration.ofMillis(rs.getLong(2)))
+            }
+        }
+
+    override suspend fun currentLsn(connection: Connection): Lsn =
+        connection.createStatement().use { statement ->
+            statement.executeQuery(PG_CURRENT_LSN_QUERY).use { rs ->
+                rs.next()
+                Lsn.parse(rs.getString(1))
+            }
+        }
+}
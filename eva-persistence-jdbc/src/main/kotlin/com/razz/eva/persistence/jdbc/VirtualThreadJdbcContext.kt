@@ -0,0 +1,77 @@
+package com.razz.eva.persistence.jdbc
+
+import com.razz.eva.persistence.jdbc.JdbcTransactionManager.Companion.DISPATCH_WAIT_BUCKET_BOUNDARIES_NANOS
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingStream
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
+import mu.KotlinLogging
+import java.time.Duration
+import java.util.concurrent.Executors
+
+/**
+ * Blocking jdbc context running every jdbc call on a virtual thread of its own,
+ * to pass as `blockingJdbcContext` to [JdbcTransactionManager] and [DataSourceConnectionProvider].
+ * Unlike [Dispatchers.IO] it is not capped at 64 threads, so under load calls don't queue for a thread
+ * (see `jdbc.dispatch.wait`), and unlike a fixed thread pool it doesn't have to be sized to the connection pools.
+ *
+ * A virtual thread blocked within a `synchronized` section pins its carrier thread, and with all carriers pinned
+ * no other virtual thread runs. Pinning of the context threads longer than [pinnedThreshold] is detected
+ * with the `jdk.VirtualThreadPinned` JFR event, recorded into `jdbc.virtual_thread.pinned` and logged
+ * with the stack trace of the pinning section. Pass `null` to turn the detection off.
+ */
+class VirtualThreadJdbcContext(
+    openTelemetry: OpenTelemetry? = null,
+    pinnedThreshold: Duration? = Duration.ofMillis(20),
+) : AutoCloseable {
+
+    private val logger = KotlinLogging.logger {}
+
+    private val executorDispatcher = Executors
+        .newThreadPerTaskExecutor(Thread.ofVirtual().name(THREAD_NAME_PREFIX, 0).factory())
+        .asCoroutineDispatcher()
+
+    val dispatcher: CoroutineDispatcher get() = executorDispatcher
+
+    // same boundaries as jdbc.dispatch.wait, pinning worth reporting sits in the millisecond range
+    private val pinnedMetric = openTelemetry?.getEvaMeter()
+        ?.histogramBuilder("jdbc.virtual_thread.pinned")
+        ?.setDescription("Time jdbc virtual threads kept their carrier thread pinned")
+        ?.setUnit("ns")
+        ?.ofLongs()
+        ?.setExplicitBucketBoundariesAdvice(DISPATCH_WAIT_BUCKET_BOUNDARIES_NANOS)
+        ?.build()
+
+    private val pinningDetection = pinnedThreshold?.let { threshold ->
+        RecordingStream().apply {
+            enable(PINNED_EVENT).withThreshold(threshold).withStackTrace()
+            onEvent(PINNED_EVENT, ::pinned)
+            startAsync()
+        }
+    }
+
+    private fun pinned(event: RecordedEvent) {
+        // the event is jvm wide, report only the threads of this context
+        if (event.thread?.javaName?.startsWith(THREAD_NAME_PREFIX) != true) return
+        pinnedMetric?.record(event.duration.toNanos())
+        logger.warn {
+            val frames = event.stackTrace?.frames.orEmpty().joinToString("\n") { frame ->
+                "\tat ${frame.method.type.name}.${frame.method.name}:${frame.lineNumber}"
+            }
+            "Jdbc virtual thread [${event.thread.javaName}] pinned its carrier thread for ${event.duration}\n$frames"
+        }
+    }
+
+    override fun close() {
+        pinningDetection?.close()
+        executorDispatcher.close()
+    }
+
+    private companion object {
+        const val THREAD_NAME_PREFIX = "eva-jdbc-"
+        const val PINNED_EVENT = "jdk.VirtualThreadPinned"
+    }
+}
@@ -0,0 +1,38 @@
+package com.razz.eva.persistence.jdbc.executor
+
+import org.jooq.EnumType
+import org.jooq.Field
+import org.jooq.JSON
+import org.jooq.JSONB
+import org.jooq.Record
+import java.math.BigDecimal
+import java.util.HexFormat
+
+/**
+ * Encodes records into rows of `COPY ... FROM STDIN (FORMAT csv)`.
+ * Values go through the field converters into their database types first, so they are written
+ * the way a bound parameter of the field would be.
+ */
+internal object CopyRows {
+
+    fun row(record: Record, fields: List<Field<*>>): String =
+        fields.joinToString(separator = ",", postfix = "\n") { field -> column(record, field) }
+
+    private fun <T> column(record: Record, field: Field<T>): String {
+        // an unquoted empty column is null, an empty string is quoted
+        val value = field.converter.to(record.get(field)) ?: return ""
+        return "\"" + text(value).replace("\"", "\"\"") + "\""
+    }
+
+    private fun text(value: Any): String = when (value) {
+        is EnumType -> value.literal
+        is ByteArray -> "\\x" + HexFormat.of().formatHex(value)
+        is JSON -> value.data()
+        is JSONB -> value.data()
+        is BigDecimal -> value.toPlainString()
+        is Array<*> -> value.joinToString(separator = ",", prefix = "{", postfix = "}") { element ->
+            element?.let { "\"" + text(it).replace("\\", "\\\\").replace("\"", "\\\"") + "\"" } ?: "NULL"
+        }
+        else -> value.toString()
+    }
+}
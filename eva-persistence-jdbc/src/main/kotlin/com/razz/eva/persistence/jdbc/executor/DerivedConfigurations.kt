@@ -0,0 +1,54 @@
+package com.razz.eva.persistence.jdbc.executor
+
+import com.razz.eva.tracing.QueryTracingListenerProvider
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
+import org.jooq.Configuration
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Executor configurations derived once per repository configuration: settings and query tracing
+ * are attached on the first query, every further query only derives the connection from the cached one.
+ * Repositories keep their [org.jooq.DSLContext] for life, so the cache stops growing at [maxSize]
+ * and configurations of short-lived contexts are derived on every query instead.
+ */
+internal class DerivedConfigurations(
+    private val maxSize: Int,
+    private val openTelemetry: OpenTelemetry,
+) {
+    init {
+        require(maxSize >= 0) { "Configuration cache size must not be negative" }
+    }
+
+    private val derived = ConcurrentHashMap<Configuration, Configuration>()
+
+    private val lookupMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("jdbc.query.configuration.cache")
+        .setDescription("Lookups of jooq configurations derived by the jdbc query executor")
+        .setUnit("{lookup}")
+        .build()
+
+    fun derive(source: Configuration): Configuration {
+        val cached = derived[source]
+        if (cached != null) {
+            lookupMetric.add(1, HIT)
+            return cached
+        }
+        lookupMetric.add(1, MISS)
+        val configuration = source
+            .derive(source.settings())
+            .derive(QueryTracingListenerProvider(openTelemetry))
+        return if (derived.size < maxSize) {
+            derived.putIfAbsent(source, configuration) ?: configuration
+        } else {
+            configuration
+        }
+    }
+
+    private companion object {
+        val HIT: Attributes = Attributes.of(AttributeKey.stringKey("result"), "hit")
+        val MISS: Attributes = Attributes.of(AttributeKey.stringKey("result"), "miss")
+    }
+}
@@ -13,12 +13,14 @@ import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.eva.persistence.executor.QueryExecutor.Constraint
 import com.razz.eva.persistence.postgres.PgHelpers.PG_CONNECTION_UNAVAILABLE
 import com.razz.eva.persistence.postgres.PgHelpers.PG_UNIQUE_VIOLATION
-import com.razz.eva.tracing.QueryTracingListenerProvider
 import io.opentelemetry.api.OpenTelemetry
 import io.opentelemetry.api.OpenTelemetry.noop
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
 import org.jooq.DMLQuery
 import org.jooq.DSLContext
-import org.jooq.Param
+import org.jooq.Field
 import org.jooq.Query
 import org.jooq.Record
 import org.jooq.Select
@@ -29,14 +31,22 @@ import org.jooq.exception.SQLStateClass.C08_CONNECTION_EXCEPTION
 import org.jooq.exception.SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION
 import org.jooq.exception.SQLStateClass.C40_TRANSACTION_ROLLBACK
 import org.jooq.impl.DSL
+import org.postgresql.PGConnection
 import org.postgresql.util.PSQLException
 import java.sql.Connection
+import java.sql.SQLException
 
+/**
+ * @param configurationCacheSize how many repository configurations keep their derived executor configuration
+ */
 class JdbcQueryExecutor(
     private val transactionManager: TransactionManager<Connection>,
-    private val openTelemetry: OpenTelemetry = noop(),
+    openTelemetry: OpenTelemetry = noop(),
+    configurationCacheSize: Int = DEFAULT_CONFIGURATION_CACHE_SIZE,
 ) : QueryExecutor {
 
+    private val configurations = DerivedConfigurations(configurationCacheSize, openTelemetry)
+
     override suspend fun <R : Record> executeSelect(
         dslContext: DSLContext,
         jooqQuery: Select<R>,
@@ -47,6 +57,24 @@ class JdbcQueryExecutor(
         }
     }
 
+    // records are fetched through a jdbc cursor, which pgjdbc only opens within a transaction,
+    // so a connection outside of one gets a transaction for the duration of the stream
+    override fun <R : Record> streamSelect(
+        dslContext: DSLContext,
+        jooqQuery: Select<R>,
+        table: Table<R>,
+        fetchSize: Int,
+    ): Flow<R> = channelFlow {
+        transactionManager.withConnection { connection ->
+            connection.inCursorTransaction {
+                dslContext.using(connection).resultQuery(EMBEDDED_QUERY, jooqQuery).coerce(table)
+                    .fetchSize(fetchSize)
+                    .fetchLazy()
+                    .use { cursor -> cursor.forEach { send(it) } }
+            }
+        }
+    }.buffer(fetchSize)
+
     override suspend fun <RIN : Record, ROUT : Record> executeStore(
         dslContext: DSLContext,
         jooqQuery: StoreQuery<RIN>,
@@ -63,28 +91,87 @@ class JdbcQueryExecutor(
         jooqQuery: DMLQuery<R>,
     ): Int {
         return transactionManager.inTransaction(REQUIRE_EXISTING) { connection ->
-            dslContext.using(connection).run {
-                execute(
-                    render(jooqQuery),
-                    *extractParams(jooqQuery)
-                        .values
-                        .filterNot(Param<*>::isInline)
-                        .toTypedArray(),
-                )
+            dslContext.using(connection).execute(EMBEDDED_QUERY, jooqQuery)
+        }
+    }
+
+    // consecutive queries rendering the same sql go out as one prepared statement batch with a set of
+    // bind values per query, so pgjdbc sends each of them in one round trip and keeps them prepared
+    override suspend fun executeBatch(
+        dslContext: DSLContext,
+        jooqQueries: List<DMLQuery<*>>,
+    ): List<Int> {
+        return transactionManager.inTransaction(REQUIRE_EXISTING) { connection ->
+            val batches = mutableListOf<Pair<String, MutableList<DMLQuery<*>>>>()
+            for (query in jooqQueries) {
+                val sql = dslContext.render(query)
+                val batch = batches.lastOrNull()?.takeIf { (batchSql) -> batchSql == sql }
+                    ?: (sql to mutableListOf<DMLQuery<*>>()).also(batches::add)
+                batch.second += query
+            }
+            val connected = dslContext.using(connection)
+            batches.flatMap { (_, queries) ->
+                queries.fold(connected.batch(queries.first())) { batch, query ->
+                    batch.bind(*dslContext.extractBindValues(query).toTypedArray())
+                }.execute().toList()
             }
         }
     }
 
+    // rows are streamed with COPY FROM STDIN as csv, one COPY per set of changed fields,
+    // so the fields a record leaves unset keep their column defaults as with an insert
+    override suspend fun <R : Record> executeBulkInsert(
+        dslContext: DSLContext,
+        table: Table<R>,
+        records: List<R>,
+    ): Int {
+        if (records.isEmpty()) return 0
+        return transactionManager.inTransaction(REQUIRE_EXISTING) { connection ->
+            val copyApi = connection.unwrap(PGConnection::class.java).copyAPI
+            records.groupBy { record -> record.fields().filter(record::touched) }
+                .entries
+                .sumOf { (fields, group) ->
+                    val copy = copyApi.copyIn(copyStatement(dslContext, table, fields))
+                    try {
+                        for (record in group) {
+                            val row = CopyRows.row(record, fields).toByteArray()
+                            copy.writeToCopy(row, 0, row.size)
+                        }
+                        copy.endCopy().toInt()
+                    } catch (ex: SQLException) {
+                        throw DataAccessException("COPY into ${table.name} failed", ex)
+                    } finally {
+                        if (copy.isActive) copy.cancelCopy()
+                    }
+                }
+        }
+    }
+
+    private fun copyStatement(dslContext: DSLContext, table: Table<*>, fields: List<Field<*>>): String {
+        val columns = fields.joinToString { field -> dslContext.render(DSL.name(field.name)) }
+        return "COPY ${dslContext.render(table)} ($columns) FROM STDIN (FORMAT csv)"
+    }
+
+    // the query is embedded into the executed one, so it is rendered and bound in one pass while executing
+    // instead of being rendered, having its params extracted and the rendered sql parsed again as plain sql
     private fun <R : Record> DSLContext.preparedQuery(
         jooqQuery: Query,
         table: Table<R>,
-    ): List<R> = resultQuery(
-        render(jooqQuery),
-        *extractParams(jooqQuery)
-            .values
-            .filterNot(Param<*>::isInline)
-            .toTypedArray(),
-    ).coerce(table).fetch()
+    ): List<R> = resultQuery(EMBEDDED_QUERY, jooqQuery).coerce(table).fetch()
+
+    private inline fun <T> Connection.inCursorTransaction(block: () -> T): T {
+        if (!autoCommit) return block()
+        autoCommit = false
+        try {
+            return block()
+        } finally {
+            // the stream only reads, nothing to commit
+            if (!isClosed) {
+                rollback()
+                autoCommit = true
+            }
+        }
+    }
 
     override fun extractConstraintName(ex: Exception): Constraint? {
         val dataAccessException = ex as? DataAccessException ?: return null
@@ -142,11 +229,12 @@ class JdbcQueryExecutor(
         sqlStateClass() == C08_CONNECTION_EXCEPTION || sqlState() in PG_CONNECTION_UNAVAILABLE
 
     private fun DSLContext.using(connection: Connection): DSLContext {
-        val configWithConnection = configuration()
-            .derive(connection)
-            .derive(settings())
-            .derive(QueryTracingListenerProvider(openTelemetry))
+        return DSL.using(configurations.derive(configuration()).derive(connection))
+    }
+
+    companion object {
+        const val DEFAULT_CONFIGURATION_CACHE_SIZE = 64
 
-        return DSL.using(configWithConnection)
+        private const val EMBEDDED_QUERY = "{0}"
     }
 }
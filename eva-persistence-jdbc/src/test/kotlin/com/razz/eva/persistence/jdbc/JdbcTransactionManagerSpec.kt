@@ -27,6 +27,7 @@ import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.withContext
 import java.sql.Connection
+import java.sql.Savepoint
 import java.sql.SQLTransientConnectionException
 
 class JdbcTransactionManagerSpec : BehaviorSpec({
@@ -499,6 +500,54 @@ class JdbcTransactionManagerSpec : BehaviorSpec({
                 }
             }
         }
+
+        When("Principal runs failing and succeeding actions in savepoints of one transaction") {
+            clearMocks(primaryPool, answers = false)
+            clearMocks(replicaPool, answers = false)
+
+            val connection = mockk<Connection>(relaxed = true)
+            val failedSavepoint = mockk<Savepoint>()
+            val succeededSavepoint = mockk<Savepoint>()
+            every { connection.autoCommit } returns true
+            every { connection.isClosed } returns false
+            every { connection.setSavepoint() } returnsMany listOf(failedSavepoint, succeededSavepoint)
+            every { primaryPool.connection } returns connection
+
+            val result = jdbcTransactionManager.inTransaction(REQUIRE_NEW) { _ ->
+                val failed = runCatching {
+                    jdbcTransactionManager.savepoints.inSavepoint { _ -> throw IllegalStateException("Stale") }
+                }
+                failed.exceptionOrNull()?.message shouldBe "Stale"
+                jdbcTransactionManager.savepoints.inSavepoint { _ -> "persisted" }
+            }
+
+            Then("Only the failed savepoint was rolled back and the transaction committed") {
+                result shouldBe "persisted"
+                verifyOrder {
+                    connection.autoCommit = false
+                    connection.setSavepoint()
+                    connection.rollback(failedSavepoint)
+                    connection.setSavepoint()
+                    connection.releaseSavepoint(succeededSavepoint)
+                    connection.commit()
+                    connection.close()
+                }
+                verify(exactly = 0) {
+                    connection.rollback()
+                    connection.releaseSavepoint(failedSavepoint)
+                    connection.rollback(succeededSavepoint)
+                }
+            }
+        }
+
+        When("Principal runs action in savepoint without transaction") {
+            Then("Exception thrown") {
+                val ex = shouldThrow<IllegalStateException> {
+                    jdbcTransactionManager.savepoints.inSavepoint { _ -> TODO("NEVER HAPPENS") }
+                }
+                ex.message shouldBe "Savepoint requires an existing transaction"
+            }
+        }
     }
 
     Given("Jdbc transaction manager with otel metrics") {
@@ -0,0 +1,80 @@
+package com.razz.eva.persistence.jdbc
+
+import io.kotest.assertions.nondeterministic.eventually
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.mockk.every
+import io.mockk.mockk
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.withContext
+import java.sql.Connection
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArraySet
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit.SECONDS
+import java.util.concurrent.atomic.AtomicInteger
+import javax.sql.DataSource
+import kotlin.time.Duration.Companion.seconds
+
+class VirtualThreadJdbcContextSpec : ShouldSpec({
+
+    should("run jdbc calls beyond Dispatchers.IO parallelism each on a virtual thread") {
+        val pool = mockk<DataSource>()
+        every { pool.connection } answers { mockk<Connection>(relaxed = true) }
+        VirtualThreadJdbcContext(pinnedThreshold = null).use { jdbcContext ->
+            val provider = DataSourceConnectionProvider(pool, jdbcContext.dispatcher)
+            val transactionManager = JdbcTransactionManager(provider, provider, jdbcContext.dispatcher)
+
+            val running = AtomicInteger()
+            val maxRunning = AtomicInteger()
+            val threads = CopyOnWriteArraySet<Thread>()
+            val allRunning = CountDownLatch(CALLS)
+            List(CALLS) {
+                async {
+                    transactionManager.withConnection {
+                        threads.add(Thread.currentThread())
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+                        // every call blocks until all of them run, which only happens when none waits for a thread
+                        allRunning.countDown()
+                        allRunning.await(10, SECONDS)
+                        running.decrementAndGet()
+                    }
+                }
+            }.awaitAll()
+
+            maxRunning.get() shouldBe CALLS
+            threads.all { it.isVirtual } shouldBe true
+        }
+    }
+
+    should("report virtual threads pinning their carrier thread").config(
+        enabledIf = { Runtime.version().feature() < JDK_WITHOUT_MONITOR_PINNING },
+    ) {
+        val metricReader = InMemoryMetricReader.create()
+        val openTelemetry = OpenTelemetrySdk.builder()
+            .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+            .build()
+        VirtualThreadJdbcContext(openTelemetry, pinnedThreshold = Duration.ofMillis(10)).use { jdbcContext ->
+            val lock = Any()
+            withContext(jdbcContext.dispatcher) {
+                synchronized(lock) { Thread.sleep(50) }
+            }
+
+            eventually(10.seconds) {
+                metricReader.collectAllMetrics()
+                    .filter { it.name == "jdbc.virtual_thread.pinned" }
+                    .sumOf { metric -> metric.histogramData.points.sumOf { it.count } } shouldBe 1
+            }
+        }
+    }
+}) {
+    private companion object {
+        const val CALLS = 200
+        // since jdk 24 virtual threads blocked in synchronized sections don't pin carrier threads
+        const val JDK_WITHOUT_MONITOR_PINNING = 24
+    }
+}
@@ -0,0 +1,44 @@
+package com.razz.eva.persistence.jdbc.executor
+
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import org.jooq.JSONB
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import java.time.LocalDateTime
+import java.util.UUID
+
+class CopyRowsSpec : BehaviorSpec({
+
+    Given("Record with values of different types") {
+        val id = DSL.field("id", SQLDataType.UUID)
+        val name = DSL.field("name", SQLDataType.VARCHAR)
+        val note = DSL.field("note", SQLDataType.VARCHAR)
+        val createdAt = DSL.field("created_at", SQLDataType.LOCALDATETIME)
+        val payload = DSL.field("payload", SQLDataType.JSONB)
+        val tags = DSL.field("tags", SQLDataType.VARCHAR.array())
+        val data = DSL.field("data", SQLDataType.BLOB)
+        val fields = listOf(id, name, note, createdAt, payload, tags, data)
+
+        val uuid = UUID.fromString("6f0b7a2e-5a1c-4a5e-9f2e-2b9c1f6d3a10")
+        val record = DSL.using(POSTGRES).newRecord(*fields.toTypedArray()).apply {
+            set(id, uuid)
+            set(name, "say \"hi\", bye")
+            set(note, null)
+            set(createdAt, LocalDateTime.of(2024, 5, 1, 10, 15, 30))
+            set(payload, JSONB.valueOf("""{"a":1}"""))
+            set(tags, arrayOf("x", null))
+            set(data, byteArrayOf(1, 15))
+        }
+
+        When("Principal encodes the record as a COPY row") {
+            val row = CopyRows.row(record, fields)
+
+            Then("Row is csv with nulls unquoted and quotes doubled") {
+                row shouldBe "\"$uuid\",\"say \"\"hi\"\", bye\",,\"2024-05-01T10:15:30\",\"{\"\"a\"\":1}\"," +
+                    "\"{\"\"x\"\",NULL}\",\"\\x010f\"\n"
+            }
+        }
+    }
+})
@@ -14,13 +14,23 @@ import io.mockk.coVerify
 import io.mockk.mockk
 import io.mockk.spyk
 import io.opentelemetry.api.OpenTelemetry.noop
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
 import java.sql.Connection
 import java.sql.SQLException
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.withContext
+import org.jooq.Record
 import org.jooq.SQLDialect.POSTGRES
 import org.jooq.exception.DataAccessException
 import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import org.jooq.impl.TableImpl
+import org.jooq.tools.jdbc.MockConnection
+import org.jooq.tools.jdbc.MockResult
 
 class JdbcQueryExecutorSpec : BehaviorSpec({
 
@@ -186,6 +196,127 @@ class JdbcQueryExecutorSpec : BehaviorSpec({
         }
     }
 
+    Given("Jdbc query executor with otel metrics and a connection recording executed statements") {
+        val metricReader = InMemoryMetricReader.create()
+        val openTelemetry = OpenTelemetrySdk.builder()
+            .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+            .build()
+        val connectionProvider = mockk<JdbcConnectionProvider>(relaxed = true)
+        val jdbcExecutor = JdbcQueryExecutor(
+            JdbcTransactionManager(connectionProvider, connectionProvider),
+            openTelemetry,
+        )
+        val executed = mutableListOf<Pair<String, List<Any?>>>()
+        val executedBatches = mutableListOf<Pair<List<String>, List<List<Any?>>>>()
+        val connection = MockConnection { ctx ->
+            if (ctx.batch()) {
+                executedBatches += ctx.batchSQL().toList() to ctx.batchBindings().map { it.toList() }
+                Array(ctx.batchBindings().size) { MockResult(1) }
+            } else {
+                executed += ctx.sql() to ctx.bindings().toList()
+                arrayOf(MockResult(0, dslContext.newResult()))
+            }
+        }
+        val table = DSL.table("cool_table")
+        val idSelect = DSL.using(POSTGRES).selectFrom(table).where(DSL.field("id").eq(42))
+        val nameUpdate = DSL.using(POSTGRES).updateQuery(table).apply {
+            addValue(DSL.field("name"), "kazah")
+            addConditions(DSL.field("id").eq(42), DSL.field("version").eq(DSL.inline(1)))
+        }
+        val idDelete = DSL.using(POSTGRES).deleteQuery(table).apply {
+            addConditions(DSL.field("id").eq(42))
+        }
+
+        When("Principal executes select, store and delete on the same dsl context") {
+            withContext(Dispatchers.IO + JdbcConnectionElement(connection)) {
+                jdbcExecutor.executeSelect(dslContext, idSelect, table)
+                jdbcExecutor.executeStore(dslContext, nameUpdate, table)
+                jdbcExecutor.executeQuery(dslContext, idDelete)
+            }
+
+            Then("Each query is executed as rendered with its non inline bind values") {
+                executed shouldBe listOf(idSelect, nameUpdate, idDelete).map { query ->
+                    dslContext.render(query) to dslContext.extractBindValues(query).toList()
+                }
+            }
+
+            And("Configuration is derived once and reused for further queries") {
+                val lookups = metricReader.collectAllMetrics()
+                    .filter { it.name == "jdbc.query.configuration.cache" }
+                    .flatMap { metric -> metric.longSumData.points }
+                    .associate { it.attributes.get(AttributeKey.stringKey("result")) to it.value }
+                lookups shouldBe mapOf("miss" to 1L, "hit" to 2L)
+            }
+        }
+
+        When("Principal executes a batch of queries where consecutive ones render the same sql") {
+            val nameInserts = listOf("kazah", "bobr").map { name ->
+                DSL.using(POSTGRES).insertQuery(table).apply {
+                    addValue(DSL.field("name"), name)
+                }
+            }
+            val counts = withContext(Dispatchers.IO + JdbcConnectionElement(connection)) {
+                jdbcExecutor.executeBatch(dslContext, nameInserts + idDelete)
+            }
+
+            Then("Queries of the same sql are sent in one prepared batch with their params bound") {
+                executedBatches shouldBe listOf(
+                    listOf(dslContext.render(nameInserts.first())) to listOf(listOf("kazah"), listOf("bobr")),
+                )
+            }
+
+            And("A query alone in its batch is executed as a prepared statement") {
+                executed.last() shouldBe (dslContext.render(idDelete) to listOf(42))
+                counts shouldBe listOf(1, 1, 0)
+            }
+        }
+    }
+
+    Given("Jdbc query executor streaming from a connection of the provider") {
+        val table = object : TableImpl<Record>(DSL.name("cool_table")) {
+            val ID = createField(DSL.name("id"), SQLDataType.INTEGER)!!
+        }
+        val autoCommits = mutableListOf<Boolean>()
+        var rollbacks = 0
+        val connection = object : MockConnection({
+            val result = dslContext.newResult(table).apply {
+                listOf(1, 2, 3).forEach { id -> add(dslContext.newRecord(table).apply { set(table.ID, id) }) }
+            }
+            arrayOf(MockResult(result.size, result))
+        }) {
+            private var autoCommit = true
+
+            override fun getAutoCommit() = autoCommit
+
+            override fun setAutoCommit(autoCommit: Boolean) {
+                this.autoCommit = autoCommit
+                autoCommits += autoCommit
+            }
+
+            override fun rollback() {
+                rollbacks++
+            }
+        }
+        val connectionProvider = mockk<JdbcConnectionProvider>(relaxed = true)
+        coEvery { connectionProvider.acquire() } coAnswers { connection }
+        val jdbcExecutor = JdbcQueryExecutor(JdbcTransactionManager(connectionProvider, connectionProvider))
+
+        When("Principal collects the stream of a select") {
+            val streamed = jdbcExecutor.streamSelect(dslContext, dslContext.selectFrom(table), table, fetchSize = 2)
+                .toList()
+
+            Then("Every record is streamed") {
+                streamed.map { it[table.ID] } shouldBe listOf(1, 2, 3)
+            }
+
+            And("Cursor is read within a transaction rolled back once the stream completes") {
+                autoCommits shouldBe listOf(false, true)
+                rollbacks shouldBe 1
+                coVerify(exactly = 1) { connectionProvider.release(connection) }
+            }
+        }
+    }
+
     Given("Jdbc query executor extracting connection exceptions") {
         val executor = JdbcQueryExecutor(mockk(relaxed = true))
 
@@ -1,24 +1,45 @@
 package com.razz.eva.persistence.vertx
 
+import com.razz.eva.persistence.ConcurrencyLimit
+import com.razz.eva.persistence.ConcurrencyLimiter
+import io.opentelemetry.api.OpenTelemetry
 import io.vertx.kotlin.coroutines.coAwait
 import io.vertx.pgclient.PgConnection
 import io.vertx.sqlclient.Pool
 import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.withContext
+import java.util.concurrent.ConcurrentHashMap
 
 class PgPoolConnectionProvider(
     private val pool: Pool,
+    concurrencyLimit: ConcurrencyLimit? = null,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : PgConnectionProvider {
 
+    private val limiter = concurrencyLimit?.let { ConcurrencyLimiter(it, openTelemetry) }
+    private val acquiredAt = ConcurrentHashMap<PgConnection, Long>()
+
     override suspend fun acquire(): PgConnection {
-        return withContext(NonCancellable) {
-            pool.connection.coAwait() as PgConnection
+        val admittedAt = limiter?.acquire()
+        val connection = try {
+            withContext(NonCancellable) {
+                pool.connection.coAwait() as PgConnection
+            }
+        } catch (t: Throwable) {
+            limiter?.release(admittedAt)
+            throw t
         }
+        if (admittedAt != null) acquiredAt[connection] = admittedAt
+        return connection
     }
 
     override suspend fun release(connection: PgConnection) {
-        withContext(NonCancellable) {
-            connection.close().coAwait()
+        try {
+            withContext(NonCancellable) {
+                connection.close().coAwait()
+            }
+        } finally {
+            limiter?.release(acquiredAt.remove(connection))
         }
     }
 }
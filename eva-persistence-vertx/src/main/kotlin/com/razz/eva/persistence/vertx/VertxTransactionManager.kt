@@ -2,14 +2,23 @@ package com.razz.eva.persistence.vertx
 
 import com.razz.eva.persistence.ConnectionProvider
 import com.razz.eva.persistence.ConnectionWrapper
+import com.razz.eva.persistence.Lsn
+import com.razz.eva.persistence.ReplicaProbe
+import com.razz.eva.persistence.ReplicaRouting
+import com.razz.eva.persistence.ReplicaStatus
+import com.razz.eva.persistence.ReplicaStatus.Companion.PG_CURRENT_LSN_QUERY
+import com.razz.eva.persistence.ReplicaStatus.Companion.PG_REPLICA_STATUS_QUERY
 import com.razz.eva.persistence.TransactionManager
+import io.vertx.kotlin.coroutines.coAwait
 import io.vertx.pgclient.PgConnection
+import java.time.Duration
 import kotlin.coroutines.coroutineContext
 
 class VertxTransactionManager(
     primaryProvider: ConnectionProvider<PgConnection>,
     replicaProvider: ConnectionProvider<PgConnection>,
-) : TransactionManager<PgConnection>(primaryProvider, replicaProvider) {
+    replicaRouting: ReplicaRouting? = null,
+) : TransactionManager<PgConnection>(primaryProvider, replicaProvider, replicaRouting, VertxReplicaProbe) {
 
     override fun wrapConnection(newConn: PgConnection): ConnectionWrapper<PgConnection> =
         VertxConnectionElement(newConn)
@@ -19,3 +28,16 @@ class VertxTransactionManager(
 
     override fun supportsPipelining(): Boolean = true
 }
+
+private object VertxReplicaProbe : ReplicaProbe<PgConnection> {
+
+    override suspend fun replicaStatus(connection: PgConnection): ReplicaStatus {
+        val row = connection.query(PG_REPLICA_STATUS_QUERY).execute().coAwait().first()
+        return ReplicaStatus(row.getString(0)?.let(Lsn::parse), Duration.ofMillis(row.getLong(1) ?: 0))
+    }
+
+    override suspend fun currentLsn(connection: PgConnection): Lsn {
+        val row = connection.query(PG_CURRENT_LSN_QUERY).execute().coAwait().first()
+        return Lsn.parse(row.getString(0))
+    }
+}
@@ -0,0 +1,111 @@
+package com.razz.eva.persistence.vertx.executor
+
+import io.vertx.core.json.Json
+import io.vertx.sqlclient.Row
+import io.vertx.sqlclient.Tuple
+import org.jooq.Converter
+import org.jooq.DSLContext
+import org.jooq.DataType
+import org.jooq.Field
+import org.jooq.JSON
+import org.jooq.JSONB
+import org.jooq.Record
+import org.jooq.Table
+import org.jooq.impl.SQLDataType
+import org.jooq.postgres.extensions.types.Inet
+import org.jooq.tools.Convert
+import java.time.ZoneOffset.UTC
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Decodes vertx rows into records of [table]. The column type dispatch is resolved once per field
+ * when the decoder is built, every row is written straight into a single record of the table.
+ */
+internal class RecordDecoder<R : Record>(private val table: Table<R>) {
+
+    @Suppress("UNCHECKED_CAST")
+    private val fields = table.fields() as Array<Field<Any?>>
+    private val columns = Array(fields.size) { i -> columnDecoder(fields[i]) }
+
+    fun decode(dslContext: DSLContext, row: Row): R {
+        val record = dslContext.newRecord(table)
+        for (i in fields.indices) {
+            record.set(fields[i], columns[i].decode(row, i))
+        }
+        record.touched(false)
+        return record
+    }
+}
+
+/**
+ * Decoders of the tables rows are fetched into. Repositories select from a table derived from their query,
+ * so derived tables share the decoder of tables producing the same record type from the same columns.
+ * The cache stops growing at [maxSize], decoders of further tables are built once per query instead.
+ */
+internal class RecordDecoders(private val maxSize: Int) {
+
+    init {
+        require(maxSize >= 0) { "Decoder cache size must not be negative" }
+    }
+
+    private val decoders = ConcurrentHashMap<Any, RecordDecoder<*>>()
+
+    fun <R : Record> decoderFor(table: Table<R>): RecordDecoder<R> {
+        val key = if (table.tableType.isTable) table else DerivedTableKey(table)
+        @Suppress("UNCHECKED_CAST")
+        val cached = decoders[key] as RecordDecoder<R>?
+        if (cached != null) return cached
+        val decoder = RecordDecoder(table)
+        return if (decoders.size < maxSize) {
+            @Suppress("UNCHECKED_CAST")
+            decoders.putIfAbsent(key, decoder) as RecordDecoder<R>? ?: decoder
+        } else {
+            decoder
+        }
+    }
+
+    private data class DerivedTableKey(val recordType: Class<*>, val columns: List<Column>) {
+        constructor(table: Table<*>) : this(
+            table.recordType,
+            table.fields().map { Column(it.name, it.dataType.sqlDataType, it.type, it.converter.javaClass) },
+        )
+    }
+
+    private data class Column(
+        val name: String,
+        val sqlDataType: DataType<*>?,
+        val type: Class<*>,
+        val converter: Class<*>,
+    )
+}
+
+private fun interface ColumnDecoder {
+    fun decode(row: Row, index: Int): Any?
+}
+
+private fun columnDecoder(field: Field<Any?>): ColumnDecoder {
+    @Suppress("UNCHECKED_CAST")
+    val converter = field.converter as Converter<Any, Any>
+    val decoder = when {
+        field.dataType.sqlDataType == SQLDataType.JSON -> ColumnDecoder { row, i ->
+            row.getJson(i)?.let { if (it == Tuple.JSON_NULL) JSON.json("null") else JSON.json(Json.encode(it)) }
+        }
+        field.dataType.sqlDataType == SQLDataType.JSONB -> ColumnDecoder { row, i ->
+            row.getJson(i)?.let { if (it == Tuple.JSON_NULL) JSONB.jsonb("null") else JSONB.jsonb(Json.encode(it)) }
+        }
+        field.dataType.sqlDataType == SQLDataType.TIMESTAMP -> ColumnDecoder { row, i ->
+            row.getLocalDateTime(i)?.toInstant(UTC)
+        }
+        field.dataType.sqlDataType == SQLDataType.DATE -> ColumnDecoder { row, i -> row.getLocalDate(i) }
+        field.dataType.sqlDataType == SQLDataType.NUMERIC -> ColumnDecoder { row, i -> row.getBigDecimal(i) }
+        field.type == Inet::class.java -> ColumnDecoder { row, i ->
+            (row.getValue(i) as? io.vertx.pgclient.data.Inet)?.let { Inet.inet(it.address, it.netmask) }
+        }
+        else -> return ColumnDecoder { row, i -> converter.from(row.get(converter.fromType(), i)) }
+    }
+    // values decoded by type are already of the user type unless the field declares its own converter
+    return ColumnDecoder { row, i ->
+        val value = decoder.decode(row, i)
+        if (value == null || field.type.isInstance(value)) value else Convert.convert(value, converter)
+    }
+}
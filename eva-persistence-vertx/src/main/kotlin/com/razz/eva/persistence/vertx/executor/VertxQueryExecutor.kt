@@ -23,6 +23,11 @@ import io.vertx.sqlclient.RowSet
 import io.vertx.sqlclient.SqlResult
 import io.vertx.sqlclient.Tuple
 import io.vertx.sqlclient.impl.ListTuple
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.withContext
 import org.jooq.Converter
 import org.jooq.DMLQuery
 import org.jooq.DSLContext
@@ -37,7 +42,6 @@ import org.jooq.exception.SQLStateClass
 import org.jooq.exception.SQLStateClass.C08_CONNECTION_EXCEPTION
 import org.jooq.exception.SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION
 import org.jooq.exception.SQLStateClass.C40_TRANSACTION_ROLLBACK
-import org.jooq.impl.SQLDataType
 import org.jooq.postgres.extensions.types.Inet
 import java.io.IOException
 import java.time.Instant
@@ -47,8 +51,11 @@ import java.time.ZoneOffset.UTC
 
 class VertxQueryExecutor(
     private val transactionManager: TransactionManager<PgConnection>,
+    decoderCacheSize: Int = DEFAULT_DECODER_CACHE_SIZE,
 ) : QueryExecutor {
 
+    private val decoders = RecordDecoders(decoderCacheSize)
+
     override suspend fun <R : Record> executeSelect(
         dslContext: DSLContext,
         jooqQuery: Select<R>,
@@ -60,6 +67,47 @@ class VertxQueryExecutor(
         }
     }
 
+    // records are read through a portal cursor, which postgres only keeps within a transaction,
+    // so a connection outside of one gets a transaction for the duration of the stream
+    override fun <R : Record> streamSelect(
+        dslContext: DSLContext,
+        jooqQuery: Select<R>,
+        table: Table<R>,
+        fetchSize: Int,
+    ): Flow<R> = channelFlow {
+        val decoder = decoders.decoderFor(table)
+        transactionManager.withConnection { connection ->
+            val transaction = if (connection.transaction() == null) connection.begin().coAwait() else null
+            try {
+                readCursor(connection, dslContext, jooqQuery, fetchSize) { row -> send(decoder.decode(dslContext, row)) }
+            } finally {
+                // the stream only reads, nothing to commit
+                transaction?.let { withContext(NonCancellable) { it.rollback().coAwait() } }
+            }
+        }
+    }.buffer(fetchSize)
+
+    private suspend fun readCursor(
+        connection: PgConnection,
+        dslContext: DSLContext,
+        jooqQuery: Query,
+        fetchSize: Int,
+        consume: suspend (Row) -> Unit,
+    ) {
+        val statement = connection.prepare(dslContext.renderNamedParams(jooqQuery)).coAwait()
+        val cursor = statement.cursor(bindParams(dslContext, jooqQuery))
+        try {
+            do {
+                for (row in cursor.read(fetchSize).coAwait()) consume(row)
+            } while (cursor.hasMore())
+        } finally {
+            withContext(NonCancellable) {
+                cursor.close().coAwait()
+                statement.close().coAwait()
+            }
+        }
+    }
+
     override suspend fun <RIN : Record, ROUT : Record> executeStore(
         dslContext: DSLContext,
         jooqQuery: StoreQuery<RIN>,
@@ -72,6 +120,25 @@ class VertxQueryExecutor(
         }
     }
 
+    // every query is sent before any of them is awaited, so the connection pipelines them in one round trip
+    override suspend fun <RIN : Record, ROUT : Record> executeStores(
+        dslContext: DSLContext,
+        jooqQueries: List<StoreQuery<RIN>>,
+        table: Table<ROUT>,
+    ): List<ROUT> {
+        val decoder = decoders.decoderFor(table)
+        return transactionManager.inTransaction(REQUIRE_EXISTING) { connection ->
+            jooqQueries
+                .map { jooqQuery ->
+                    jooqQuery.setReturning()
+                    connection.preparedQuery(dslContext.renderNamedParams(jooqQuery))
+                        .mapping { row -> decoder.decode(dslContext, row) }
+                        .execute(bindParams(dslContext, jooqQuery))
+                }
+                .flatMap { sent -> sent.coAwait().toList() }
+        }
+    }
+
     override suspend fun <R : Record> executeQuery(
         dslContext: DSLContext,
         jooqQuery: DMLQuery<R>,
@@ -82,14 +149,39 @@ class VertxQueryExecutor(
         }
     }
 
+    // consecutive queries rendering the same sql go out as one prepared batch, every batch is sent
+    // before any of them is awaited, so the connection pipelines them all in one round trip
+    override suspend fun executeBatch(
+        dslContext: DSLContext,
+        jooqQueries: List<DMLQuery<*>>,
+    ): List<Int> {
+        return transactionManager.inTransaction(REQUIRE_EXISTING) { connection ->
+            val batches = mutableListOf<Pair<String, MutableList<Tuple>>>()
+            for (query in jooqQueries) {
+                val sql = dslContext.renderNamedParams(query)
+                val batch = batches.lastOrNull()?.takeIf { (batchSql) -> batchSql == sql }
+                    ?: (sql to mutableListOf<Tuple>()).also(batches::add)
+                batch.second += bindParams(dslContext, query)
+            }
+            batches
+                .map { (sql, tuples) -> connection.preparedQuery(sql).executeBatch(tuples) }
+                .flatMap { sent ->
+                    generateSequence(sent.coAwait(), RowSet<Row>::next).map(SqlResult<*>::rowCount).toList()
+                }
+        }
+    }
+
     private suspend inline fun <R : Record> executeQuery(
         connection: PgConnection,
         dslContext: DSLContext,
         jooqQuery: Query,
         table: Table<R>,
-    ): RowSet<R> = connection.preparedQuery(dslContext.renderNamedParams(jooqQuery)).mapping { row ->
-        convertRowToRecord(dslContext, row, table)
-    }.execute(bindParams(dslContext, jooqQuery)).coAwait()
+    ): RowSet<R> {
+        val decoder = decoders.decoderFor(table)
+        return connection.preparedQuery(dslContext.renderNamedParams(jooqQuery))
+            .mapping { row -> decoder.decode(dslContext, row) }
+            .execute(bindParams(dslContext, jooqQuery)).coAwait()
+    }
 
     private fun bindParams(
         dslContext: DSLContext,
@@ -111,42 +203,6 @@ class VertxQueryExecutor(
         },
     )
 
-    private fun <R : Record> convertRowToRecord(
-        dslContext: DSLContext,
-        row: Row,
-        table: Table<R>,
-    ): R {
-        val fields = table.fields()
-        val values = arrayOfNulls<Any>(fields.size)
-        for (i in fields.indices) {
-            val field = fields[i]
-            values[i] = when {
-                field.dataType.sqlDataType == SQLDataType.JSON -> row.getJson(i)?.let {
-                    if (it == Tuple.JSON_NULL) JSON.json("null") else JSON.json(Json.encode(it))
-                }
-                field.dataType.sqlDataType == SQLDataType.JSONB -> row.getJson(i)?.let {
-                    if (it == Tuple.JSON_NULL) JSONB.jsonb("null") else JSONB.jsonb(Json.encode(it))
-                }
-                field.dataType.sqlDataType == SQLDataType.TIMESTAMP -> row.getLocalDateTime(i)?.toInstant(UTC)
-                field.dataType.sqlDataType == SQLDataType.DATE -> row.getLocalDate(i)
-                field.dataType.sqlDataType == SQLDataType.NUMERIC -> row.getBigDecimal(i)
-                field.type == Inet::class.java -> (row.getValue(i) as? io.vertx.pgclient.data.Inet)?.let {
-                    Inet.inet(it.address, it.netmask)
-                }
-                else -> {
-                    @Suppress("UNCHECKED_CAST")
-                    val converter = field.converter as Converter<Any, Any>
-                    converter.from(row.get(converter.fromType(), i))
-                }
-            }
-        }
-
-        val record = dslContext.newRecord(table)
-        record.fromArray(*values)
-        record.touched(false)
-        return record.into(table)
-    }
-
     override fun extractConstraintName(ex: Exception): Constraint? {
         if (ex !is PgException) {
             return null
@@ -205,6 +261,10 @@ class VertxQueryExecutor(
 
     private fun PgException.connectionUnavailable(): Boolean =
         sqlStateClass == C08_CONNECTION_EXCEPTION || sqlState in PG_CONNECTION_UNAVAILABLE
+
+    companion object {
+        const val DEFAULT_DECODER_CACHE_SIZE = 64
+    }
 }
 
 private val PgException.sqlStateClass get() = SQLStateClass.fromCode(sqlState)
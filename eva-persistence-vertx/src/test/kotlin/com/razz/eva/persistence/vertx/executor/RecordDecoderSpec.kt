@@ -0,0 +1,77 @@
+package com.razz.eva.persistence.vertx.executor
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+import io.mockk.every
+import io.mockk.mockk
+import io.vertx.core.json.JsonObject
+import io.vertx.sqlclient.Row
+import org.jooq.Converter
+import org.jooq.JSONB
+import org.jooq.Record
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import org.jooq.impl.TableImpl
+import java.time.Instant
+import java.time.LocalDateTime
+import java.time.ZoneOffset.UTC
+import java.util.UUID
+
+private val decodedTable = object : TableImpl<Record>(DSL.name("decoded_test")) {
+    val ID = createField(DSL.name("id"), SQLDataType.UUID)!!
+    val NAME = createField(DSL.name("name"), SQLDataType.VARCHAR)!!
+    val DATA = createField(DSL.name("data"), SQLDataType.JSONB)!!
+    val UPDATED_AT = createField(
+        DSL.name("updated_at"),
+        SQLDataType.TIMESTAMP.asConvertedDataType(
+            Converter.ofNullable(
+                LocalDateTime::class.java,
+                Instant::class.java,
+                { it.toInstant(UTC) },
+                { LocalDateTime.ofInstant(it, UTC) },
+            ),
+        ),
+    )!!
+}
+
+class RecordDecoderSpec : ShouldSpec({
+
+    val dslContext = DSL.using(POSTGRES)
+
+    should("decode row into untouched record of the table") {
+        val id = UUID.randomUUID()
+        val updatedAt = LocalDateTime.of(2024, 5, 1, 12, 30)
+        val row = mockk<Row> {
+            every { get(UUID::class.java, 0) } returns id
+            every { get(String::class.java, 1) } returns "name"
+            every { getJson(2) } returns JsonObject().put("key", "value")
+            every { getLocalDateTime(3) } returns updatedAt
+        }
+
+        val record = RecordDecoder(decodedTable).decode(dslContext, row)
+
+        record[decodedTable.ID] shouldBe id
+        record[decodedTable.NAME] shouldBe "name"
+        record[decodedTable.DATA] shouldBe JSONB.jsonb("""{"key":"value"}""")
+        record[decodedTable.UPDATED_AT] shouldBe updatedAt.toInstant(UTC)
+        record.touched() shouldBe false
+    }
+
+    should("build decoder once per table") {
+        val decoders = RecordDecoders(maxSize = 1)
+
+        decoders.decoderFor(decodedTable) shouldBeSameInstanceAs decoders.decoderFor(decodedTable)
+    }
+
+    should("share decoder between derived tables of the same columns") {
+        val decoders = RecordDecoders(maxSize = 2)
+        val select = dslContext.selectFrom(decodedTable)
+
+        decoders.decoderFor(select.asTable()) shouldBeSameInstanceAs decoders.decoderFor(select.asTable())
+        decoders.decoderFor(select.asTable()) shouldNotBeSameInstanceAs
+            decoders.decoderFor(dslContext.select(decodedTable.ID).from(decodedTable).asTable())
+    }
+})
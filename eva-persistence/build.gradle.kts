@@ -10,4 +10,7 @@ dependencies {
 
     api(project(eva.eva_domain))
     api(project(eva.eva_idempotency_key))
+    api(project(eva.eva_tracing))
+
+    testImplementation(libs.opentelemetry.sdk.testing)
 }
@@ -0,0 +1,142 @@
+package com.razz.eva.persistence
+
+import com.razz.eva.persistence.PersistenceException.ConnectionException
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.withTimeoutOrNull
+import java.time.Duration
+import java.util.concurrent.TimeoutException
+
+/**
+ * Configuration of a [ConcurrencyLimiter].
+ *
+ * @param name of the limited pool, the `pool` attribute of the limiter metrics
+ * @param latencyThreshold how long a connection may be held, acquiring it included,
+ * before the limit is lowered by [backoffRatio]
+ * @param queueTimeout how long a caller waits for the limit before failing with [ConnectionException]
+ */
+data class ConcurrencyLimit(
+    val name: String = "default",
+    val initialLimit: Int = 20,
+    val minLimit: Int = 1,
+    val maxLimit: Int = 200,
+    val latencyThreshold: Duration = Duration.ofMillis(100),
+    val backoffRatio: Double = 0.9,
+    val queueTimeout: Duration = Duration.ofSeconds(1),
+) {
+    init {
+        require(minLimit in 1..maxLimit) { "Concurrency limit bounds must be positive and ordered" }
+        require(initialLimit in minLimit..maxLimit) { "Initial concurrency limit must be within its bounds" }
+        require(backoffRatio > 0 && backoffRatio < 1) { "Concurrency limit backoff ratio must be within (0, 1)" }
+    }
+}
+
+/**
+ * Limits how many connections are held at once, adapting the limit to their latency the AIMD way:
+ * every connection held for longer than [ConcurrencyLimit.latencyThreshold] lowers the limit multiplicatively,
+ * every faster one raises it by one while the limit is in use. So when the database slows down callers queue here
+ * instead of piling up in the pool, and a caller not admitted within [ConcurrencyLimit.queueTimeout] fails fast.
+ *
+ * The limit, connections in flight and rejected callers are exported as
+ * `db.connection.limit`, `db.connection.in_flight` and `db.connection.rejected`.
+ */
+class ConcurrencyLimiter(
+    private val config: ConcurrencyLimit,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
+) {
+
+    private val lock = Any()
+    private var limit = config.initialLimit.toDouble()
+    private var inFlight = 0
+    private val waiters = ArrayDeque<CompletableDeferred<Unit>>()
+
+    private val attributes = Attributes.of(POOL, config.name)
+
+    private val rejectedMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("db.connection.rejected")
+        .setDescription("Callers failed for not getting a connection within the concurrency limit in time")
+        .setUnit("{caller}")
+        .build()
+
+    init {
+        openTelemetry.getEvaMeter()
+            .gaugeBuilder("db.connection.limit")
+            .setDescription("Current adaptive limit of connections held at once")
+            .setUnit("{connection}")
+            .ofLongs()
+            .buildWithCallback { it.record(limit().toLong(), attributes) }
+        openTelemetry.getEvaMeter()
+            .upDownCounterBuilder("db.connection.in_flight")
+            .setDescription("Connections held within the concurrency limit")
+            .setUnit("{connection}")
+            .buildWithCallback { it.record(inFlight().toLong(), attributes) }
+    }
+
+    fun limit(): Int = synchronized(lock) { limit.toInt() }
+
+    fun inFlight(): Int = synchronized(lock) { inFlight }
+
+    /**
+     * Waits until a connection can be acquired within the limit and returns the time to pass to [release].
+     */
+    suspend fun acquire(): Long {
+        val waiter = synchronized(lock) {
+            if (waiters.isEmpty() && inFlight < limit.toInt()) {
+                inFlight++
+                return System.nanoTime()
+            }
+            CompletableDeferred<Unit>().also(waiters::addLast)
+        }
+        val admitted = try {
+            withTimeoutOrNull(config.queueTimeout.toMillis()) { waiter.await() } != null
+        } catch (ex: CancellationException) {
+            if (abandon(waiter)) release(null)
+            throw ex
+        }
+        // admitted right after the timeout is still admitted
+        if (admitted || abandon(waiter)) return System.nanoTime()
+        rejectedMetric.add(1, attributes)
+        throw ConnectionException(
+            TimeoutException(
+                "Connection limit of ${limit()} in [${config.name}] was not available in ${config.queueTimeout}",
+            ),
+        )
+    }
+
+    /**
+     * Releases the connection acquired at [acquiredAt], adjusting the limit to how long it was held.
+     */
+    fun release(acquiredAt: Long?) {
+        synchronized(lock) {
+            if (acquiredAt != null) adjust(System.nanoTime() - acquiredAt)
+            inFlight--
+            while (waiters.isNotEmpty() && inFlight < limit.toInt()) {
+                inFlight++
+                waiters.removeFirst().complete(Unit)
+            }
+        }
+    }
+
+    private fun adjust(latencyNanos: Long) {
+        limit = if (latencyNanos > config.latencyThreshold.toNanos()) {
+            maxOf(config.minLimit.toDouble(), limit * config.backoffRatio)
+        } else if (inFlight >= limit.toInt()) {
+            minOf(config.maxLimit.toDouble(), limit + 1)
+        } else {
+            limit
+        }
+    }
+
+    // gives up waiting for the waiter, returns whether it was admitted meanwhile
+    private fun abandon(waiter: CompletableDeferred<Unit>): Boolean = synchronized(lock) {
+        !waiters.remove(waiter)
+    }
+
+    private companion object {
+        val POOL: AttributeKey<String> = AttributeKey.stringKey("pool")
+    }
+}
@@ -0,0 +1,114 @@
+package com.razz.eva.persistence
+
+import java.time.Duration
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Routes reads away from a replica lagging behind the primary. [TransactionManager] probes the replica
+ * with its [ReplicaProbe] on a connection it acquired for a read at most once per [probeInterval], and serves the read
+ * from the primary while the replica is more than [maxLag] behind or has not replayed the commit
+ * required by [ReadYourWrites].
+ */
+data class ReplicaRouting(
+    val maxLag: Duration = Duration.ofSeconds(1),
+    val probeInterval: Duration = Duration.ofMillis(500),
+) {
+    init {
+        require(!maxLag.isNegative) { "Replica max lag must not be negative" }
+        require(!probeInterval.isNegative) { "Replica probe interval must not be negative" }
+    }
+}
+
+/**
+ * Reads replica lag and commit positions over connections of a [TransactionManager] with [ReplicaRouting].
+ */
+interface ReplicaProbe<C> {
+
+    /**
+     * Reads how far the replica behind [connection] is, see [ReplicaStatus.PG_REPLICA_STATUS_QUERY].
+     */
+    suspend fun replicaStatus(connection: C): ReplicaStatus
+
+    /**
+     * Reads the current position of the primary behind [connection] to record a commit for [ReadYourWrites],
+     * see [ReplicaStatus.PG_CURRENT_LSN_QUERY].
+     */
+    suspend fun currentLsn(connection: C): Lsn
+}
+
+/**
+ * Position in the write-ahead log of postgres, rendered as `16/B374D848`.
+ */
+@JvmInline
+value class Lsn(private val position: Long) : Comparable<Lsn> {
+
+    override fun compareTo(other: Lsn) = position.compareTo(other.position)
+
+    override fun toString() = "${(position ushr HALF_BITS).toString(HEX)}/${(position and LOW_HALF).toString(HEX)}"
+        .uppercase()
+
+    companion object {
+        private const val HALF_BITS = 32
+        private const val HEX = 16
+        private const val LOW_HALF = 0xFFFFFFFFL
+
+        fun parse(lsn: String): Lsn {
+            val (high, low) = lsn.split('/')
+            return Lsn(high.toLong(HEX) shl HALF_BITS or low.toLong(HEX))
+        }
+    }
+}
+
+/**
+ * How far a replica is behind the primary.
+ *
+ * @param replayedLsn last replayed position, null when the connection is to the primary itself
+ * @param lag time since the last replayed transaction, zero once everything received is replayed
+ */
+data class ReplicaStatus(
+    val replayedLsn: Lsn?,
+    val lag: Duration,
+) {
+    internal val probedAt: Long = System.nanoTime()
+
+    internal fun replayed(lsn: Lsn?) = lsn == null || replayedLsn == null || replayedLsn >= lsn
+
+    internal fun olderThan(interval: Duration) = System.nanoTime() - probedAt >= interval.toNanos()
+
+    companion object {
+        /**
+         * Query returning the replayed position as text and the lag in milliseconds.
+         */
+        const val PG_REPLICA_STATUS_QUERY = "select pg_last_wal_replay_lsn()::text, " +
+            "case when pg_last_wal_receive_lsn() is null or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() " +
+            "then 0 else (extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000)::bigint end"
+
+        /**
+         * Query returning the current position of the primary as text.
+         */
+        const val PG_CURRENT_LSN_QUERY = "select pg_current_wal_insert_lsn()::text"
+    }
+}
+
+/**
+ * Makes reads see the writes committed before them in its coroutine context: every transaction
+ * committed within the context records its commit position, and [TransactionManager] with [ReplicaRouting]
+ * reads from the replica only once the replica replayed it. Pass [lsn] on to carry the requirement
+ * over to a later request, for instance the one rendering the result of a unit of work.
+ */
+class ReadYourWrites(lsn: Lsn? = null) : CoroutineContext.Element {
+
+    @Volatile
+    var lsn: Lsn? = lsn
+        private set
+
+    @Synchronized
+    internal fun committed(commitLsn: Lsn) {
+        val current = lsn
+        if (current == null || current < commitLsn) lsn = commitLsn
+    }
+
+    override val key: CoroutineContext.Key<*> = Key
+
+    companion object Key : CoroutineContext.Key<ReadYourWrites>
+}
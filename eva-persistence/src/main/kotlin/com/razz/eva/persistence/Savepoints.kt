@@ -0,0 +1,14 @@
+package com.razz.eva.persistence
+
+/**
+ * Savepoints within the transactions of a [TransactionManager], a failed statement is rolled back
+ * without aborting the enclosing transaction, see [TransactionManager.savepoints].
+ */
+interface Savepoints<C> {
+
+    /**
+     * Runs [block] inside a savepoint of the transaction from the coroutine context. A failure of [block]
+     * rolls back to the savepoint and is rethrown, the enclosing transaction stays usable.
+     */
+    suspend fun <R> inSavepoint(block: suspend (C) -> R): R
+}
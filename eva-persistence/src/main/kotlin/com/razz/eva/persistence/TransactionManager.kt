@@ -11,18 +11,28 @@ import kotlinx.coroutines.currentCoroutineContext
 abstract class TransactionManager<C>(
     private val primaryProvider: ConnectionProvider<C>,
     private val replicaProvider: ConnectionProvider<C>,
+    private val replicaRouting: ReplicaRouting? = null,
+    private val replicaProbe: ReplicaProbe<C>? = null,
 ) {
 
+    init {
+        require(replicaRouting == null || replicaProbe != null) {
+            "Replica routing requires a replica probe for ${this::class.simpleName} connections"
+        }
+    }
+
+    @Volatile
+    private var replicaStatus: ReplicaStatus? = null
+
     open suspend fun <R> withConnection(block: suspend (C) -> R): R {
         return when (val existingConn = ctxConnection()) {
             null -> {
-                var newConn: C? = null
+                var acquired: Pair<ConnectionProvider<C>, C>? = null
                 try {
-                    newConn = acquire(connectionProvider(currentCoroutineContext()))
-                    currentCoroutineContext()[ConnectionAcquisitionCounter]?.increment()
-                    block(newConn)
+                    acquired = acquireForRead()
+                    block(acquired.second)
                 } finally {
-                    newConn?.let { connectionProvider(currentCoroutineContext()).release(it) }
+                    acquired?.let { (provider, newConn) -> provider.release(newConn) }
                 }
             }
             else -> block(existingConn)
@@ -51,7 +61,7 @@ abstract class TransactionManager<C>(
                             ctx.rollback()
                             throw ex
                         }
-                    }
+                    }.also { recordCommit(newConn) }
                 } finally {
                     newConn?.let { primaryProvider.release(it) }
                 }
@@ -71,6 +81,8 @@ abstract class TransactionManager<C>(
         provider.acquire()
     } catch (ex: CancellationException) {
         throw ex
+    } catch (ex: ConnectionException) {
+        throw ex
     } catch (ex: Exception) {
         throw ConnectionException(ex)
     }
@@ -82,9 +94,64 @@ abstract class TransactionManager<C>(
             replicaProvider
         }
 
+    private suspend fun acquireForRead(): Pair<ConnectionProvider<C>, C> {
+        val provider = connectionProvider(currentCoroutineContext())
+        val connection = acquire(provider)
+        currentCoroutineContext()[ConnectionAcquisitionCounter]?.increment()
+        if (provider !== replicaProvider || primaryProvider === replicaProvider) return provider to connection
+        val servesRead = try {
+            replicaServesRead(connection)
+        } catch (ex: Exception) {
+            replicaProvider.release(connection)
+            throw ex
+        }
+        if (servesRead) return provider to connection
+        replicaProvider.release(connection)
+        val primaryConnection = acquire(primaryProvider)
+        currentCoroutineContext()[ConnectionAcquisitionCounter]?.increment()
+        return primaryProvider to primaryConnection
+    }
+
+    private suspend fun replicaServesRead(connection: C): Boolean {
+        val routing = replicaRouting ?: return true
+        val probe = replicaProbe ?: return true
+        val required = currentCoroutineContext()[ReadYourWrites]?.lsn
+        var status = replicaStatus
+        // a replica known to be behind the required commit may have replayed it since, so probe it again
+        if (status == null || status.olderThan(routing.probeInterval) || !status.replayed(required)) {
+            status = probe.replicaStatus(connection).also { replicaStatus = it }
+        }
+        return status.lag <= routing.maxLag && status.replayed(required)
+    }
+
+    private suspend fun recordCommit(connection: C) {
+        val probe = replicaProbe
+        if (replicaRouting == null || probe == null) return
+        val readYourWrites = currentCoroutineContext()[ReadYourWrites] ?: return
+        // the transaction is committed already, so a failed read of its position must not fail it,
+        // reads of the context go to the primary instead
+        val commitLsn = try {
+            probe.currentLsn(connection)
+        } catch (ex: CancellationException) {
+            throw ex
+        } catch (ex: Exception) {
+            UNKNOWN_COMMIT_LSN
+        }
+        readYourWrites.committed(commitLsn)
+    }
+
     abstract fun supportsPipelining(): Boolean
 
+    /**
+     * Savepoints of the transactions of this manager, null when it does not support them.
+     */
+    open val savepoints: Savepoints<C>? = null
+
     protected abstract fun wrapConnection(newConn: C): ConnectionWrapper<C>
 
     protected abstract suspend fun ctxConnection(): C?
+
+    private companion object {
+        val UNKNOWN_COMMIT_LSN = Lsn(Long.MAX_VALUE)
+    }
 }
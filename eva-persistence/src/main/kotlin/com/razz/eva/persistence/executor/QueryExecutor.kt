@@ -2,6 +2,10 @@ package com.razz.eva.persistence.executor
 
 import com.razz.eva.domain.ModelId
 import com.razz.eva.persistence.PersistenceException
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
 import org.jooq.DMLQuery
 import org.jooq.DSLContext
 import org.jooq.Record
@@ -17,17 +21,69 @@ interface QueryExecutor {
         table: Table<R>,
     ): List<R>
 
+    /**
+     * Streams records of [jooqQuery] fetching [fetchSize] of them at a time, so memory stays bounded
+     * however many rows the query returns. Executors without cursor support fetch all records at once.
+     */
+    fun <R : Record> streamSelect(
+        dslContext: DSLContext,
+        jooqQuery: Select<R>,
+        table: Table<R>,
+        fetchSize: Int = DEFAULT_FETCH_SIZE,
+    ): Flow<R> = flow {
+        emitAll(executeSelect(dslContext, jooqQuery, table).asFlow())
+    }
+
     suspend fun <RIN : Record, ROUT : Record> executeStore(
         dslContext: DSLContext,
         jooqQuery: StoreQuery<RIN>,
         table: Table<ROUT>,
     ): List<ROUT>
 
+    /**
+     * Executes [jooqQueries] in order within the existing transaction and returns the records they return,
+     * in the same order. Executors able to send them in fewer round trips than one per query override it.
+     */
+    suspend fun <RIN : Record, ROUT : Record> executeStores(
+        dslContext: DSLContext,
+        jooqQueries: List<StoreQuery<RIN>>,
+        table: Table<ROUT>,
+    ): List<ROUT> = jooqQueries.flatMap { executeStore(dslContext, it, table) }
+
     suspend fun <R : Record> executeQuery(
         dslContext: DSLContext,
         jooqQuery: DMLQuery<R>,
     ): Int
 
+    /**
+     * Executes [jooqQueries] in order within the existing transaction and returns their row counts.
+     * Executors able to send them in fewer round trips than one per query override it,
+     * a failure of any query fails the whole batch.
+     */
+    suspend fun executeBatch(
+        dslContext: DSLContext,
+        jooqQueries: List<DMLQuery<*>>,
+    ): List<Int> = jooqQueries.map { executeQuery(dslContext, it) }
+
+    /**
+     * Inserts [records] into [table] in bulk with the fields each of them has changed and returns the number
+     * of rows inserted, without returning them. Executors able to stream rows, with `COPY` for instance,
+     * override it, by default records go in multi-row inserts kept under the bind parameters limit.
+     */
+    suspend fun <R : Record> executeBulkInsert(
+        dslContext: DSLContext,
+        table: Table<R>,
+        records: List<R>,
+    ): Int = records.chunked(maxOf(1, MAX_BIND_PARAMS / table.fields().size)).sumOf { chunk ->
+        val insertQuery = dslContext.insertQuery(table).apply {
+            chunk.forEachIndexed { i, record ->
+                if (i > 0) newRecord()
+                setRecord(record)
+            }
+        }
+        executeQuery(dslContext, insertQuery)
+    }
+
     fun extractConstraintName(ex: Exception): Constraint?
 
     fun extractUniqueConstraintName(ex: Exception, table: Table<*>): Constraint?
@@ -38,4 +94,13 @@ interface QueryExecutor {
 
     @JvmInline
     value class Constraint(val name: String?)
+
+    companion object {
+        const val DEFAULT_FETCH_SIZE = 1000
+
+        /**
+         * Bind parameters postgres accepts in one statement.
+         */
+        const val MAX_BIND_PARAMS = 65535
+    }
 }
@@ -0,0 +1,95 @@
+package com.razz.eva.persistence
+
+import com.razz.eva.persistence.PersistenceException.ConnectionException
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeTypeOf
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.yield
+import java.time.Duration
+import java.util.concurrent.TimeoutException
+
+class ConcurrencyLimiterSpec : BehaviorSpec({
+
+    isolationMode = InstancePerLeaf
+
+    val metricReader = InMemoryMetricReader.create()
+    val openTelemetry = OpenTelemetrySdk.builder()
+        .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+        .build()
+
+    fun metric(name: String): Long = metricReader.collectAllMetrics().single { it.name == name }.let { metric ->
+        when {
+            metric.longGaugeData.points.isNotEmpty() -> metric.longGaugeData.points.single().value
+            else -> metric.longSumData.points.single().value
+        }
+    }
+
+    Given("Concurrency limiter of two connections") {
+        val limiter = ConcurrencyLimiter(
+            config = ConcurrencyLimit(
+                name = "primary",
+                initialLimit = 2,
+                maxLimit = 10,
+                latencyThreshold = Duration.ofMinutes(1),
+                queueTimeout = Duration.ofMillis(50),
+            ),
+            openTelemetry = openTelemetry,
+        )
+        limiter.acquire()
+        val second = limiter.acquire()
+
+        When("Third connection is not released in time") {
+            val ex = shouldThrow<ConnectionException> { limiter.acquire() }
+
+            Then("Caller fails fast") {
+                ex.cause.shouldBeTypeOf<TimeoutException>()
+                metric("db.connection.rejected") shouldBe 1
+                metric("db.connection.in_flight") shouldBe 2
+            }
+        }
+
+        When("Connection is released while a caller waits") {
+            val admitted = coroutineScope {
+                val waiting = async { limiter.acquire() }
+                yield()
+                limiter.release(second)
+                waiting.await()
+            }
+
+            Then("Waiting caller is admitted") {
+                (admitted > 0) shouldBe true
+                limiter.inFlight() shouldBe 2
+            }
+
+            Then("Limit in use is raised by fast connections") {
+                limiter.limit() shouldBe 3
+                metric("db.connection.limit") shouldBe 3
+            }
+        }
+    }
+
+    Given("Concurrency limiter of slow connections") {
+        val limiter = ConcurrencyLimiter(
+            config = ConcurrencyLimit(initialLimit = 10, latencyThreshold = Duration.ZERO, backoffRatio = 0.5),
+            openTelemetry = openTelemetry,
+        )
+
+        When("Connection is released after the latency threshold") {
+            val acquiredAt = limiter.acquire()
+            Thread.sleep(1)
+            limiter.release(acquiredAt)
+
+            Then("Limit is lowered") {
+                limiter.limit() shouldBe 5
+                limiter.inFlight() shouldBe 0
+            }
+        }
+    }
+})
@@ -0,0 +1,145 @@
+package com.razz.eva.persistence
+
+import com.razz.eva.persistence.ConnectionMode.REQUIRE_NEW
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.comparables.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.mockk
+import kotlinx.coroutines.withContext
+import java.time.Duration
+import kotlin.coroutines.CoroutineContext
+
+class ReplicaRoutingSpec : BehaviorSpec({
+
+    isolationMode = InstancePerLeaf
+
+    class CountingProbe(
+        var status: ReplicaStatus,
+        private val commitLsn: Lsn,
+    ) : ReplicaProbe<DummyConnection> {
+        var probes = 0
+
+        override suspend fun replicaStatus(connection: DummyConnection): ReplicaStatus {
+            probes++
+            return status
+        }
+
+        override suspend fun currentLsn(connection: DummyConnection) = commitLsn
+    }
+
+    class RoutingTransactionManager(
+        primaryProvider: ConnectionProvider<DummyConnection>,
+        replicaProvider: ConnectionProvider<DummyConnection>,
+        probe: ReplicaProbe<DummyConnection>,
+    ) : TransactionManager<DummyConnection>(
+        primaryProvider,
+        replicaProvider,
+        ReplicaRouting(maxLag = Duration.ofSeconds(1), probeInterval = Duration.ofMinutes(1)),
+        probe,
+    ) {
+
+        override fun wrapConnection(newConn: DummyConnection) = object : ConnectionWrapper<DummyConnection> {
+            override suspend fun begin() = Unit
+            override suspend fun commit() = Unit
+            override suspend fun rollback() = Unit
+            override val key = object : CoroutineContext.Key<ConnectionWrapper<DummyConnection>> {}
+        }
+
+        override suspend fun ctxConnection(): DummyConnection? = null
+
+        override fun supportsPipelining() = false
+    }
+
+    val primaryProvider = mockk<DummyConnectionProvider>()
+    val replicaProvider = mockk<DummyConnectionProvider>()
+    coEvery { primaryProvider.acquire() } returns DummyConnection
+    coEvery { primaryProvider.release(DummyConnection) } returns Unit
+    coEvery { replicaProvider.acquire() } returns DummyConnection
+    coEvery { replicaProvider.release(DummyConnection) } returns Unit
+
+    val probe = CountingProbe(
+        status = ReplicaStatus(Lsn.parse("0/5"), Duration.ofMillis(100)),
+        commitLsn = Lsn.parse("0/10"),
+    )
+    val transactionManager = RoutingTransactionManager(
+        primaryProvider = primaryProvider,
+        replicaProvider = replicaProvider,
+        probe = probe,
+    )
+
+    Given("Replica lagging less than allowed") {
+        When("Principal reads twice") {
+            transactionManager.withConnection { }
+            transactionManager.withConnection { }
+
+            Then("Both reads are served by the replica") {
+                coVerify(exactly = 2) { replicaProvider.acquire() }
+                coVerify(exactly = 0) { primaryProvider.acquire() }
+            }
+
+            Then("Replica is probed once within the probe interval") {
+                probe.probes shouldBe 1
+            }
+        }
+    }
+
+    Given("Replica lagging more than allowed") {
+        probe.status = ReplicaStatus(Lsn.parse("0/5"), Duration.ofSeconds(5))
+
+        When("Principal reads") {
+            transactionManager.withConnection { }
+
+            Then("Replica connection is released and the read is served by the primary") {
+                coVerify(exactly = 1) { replicaProvider.release(DummyConnection) }
+                coVerify(exactly = 1) { primaryProvider.acquire() }
+                coVerify(exactly = 1) { primaryProvider.release(DummyConnection) }
+            }
+        }
+    }
+
+    Given("Read your writes in context") {
+        val readYourWrites = ReadYourWrites()
+
+        When("Principal reads after a commit the replica did not replay yet") {
+            withContext(readYourWrites) {
+                transactionManager.inTransaction(REQUIRE_NEW) { }
+                transactionManager.withConnection { }
+            }
+
+            Then("Commit position is recorded") {
+                readYourWrites.lsn shouldBe Lsn.parse("0/10")
+            }
+
+            Then("Read is served by the primary") {
+                coVerify(exactly = 2) { primaryProvider.acquire() }
+                coVerify(exactly = 1) { replicaProvider.release(DummyConnection) }
+            }
+        }
+
+        When("Principal reads once the replica replayed the commit") {
+            withContext(readYourWrites) {
+                transactionManager.inTransaction(REQUIRE_NEW) { }
+                transactionManager.withConnection { }
+                probe.status = ReplicaStatus(Lsn.parse("0/10"), Duration.ZERO)
+                transactionManager.withConnection { }
+            }
+
+            Then("Replica is probed again and serves the read") {
+                probe.probes shouldBe 2
+                coVerify(exactly = 2) { replicaProvider.acquire() }
+                coVerify(exactly = 2) { replicaProvider.release(DummyConnection) }
+                coVerify(exactly = 2) { primaryProvider.acquire() }
+            }
+        }
+    }
+
+    Given("Log sequence numbers") {
+        Then("They are parsed and compared by position") {
+            Lsn.parse("16/B374D848").toString() shouldBe "16/B374D848"
+            Lsn.parse("0/FFFFFFFF") shouldBeLessThan Lsn.parse("1/0")
+        }
+    }
+})
@@ -28,6 +28,8 @@ dependencies {
     implementation(project(eva.eva_serialization))
     implementation(project(eva.eva_events_db_schema))
 
+    testImplementation(libs.opentelemetry.sdk.testing)
+
     testImplementation(project(eva.eva_uow))
     testImplementation(project(eva.eva_uow_params_kotlinx))
     testImplementation(project(eva.eva_test))
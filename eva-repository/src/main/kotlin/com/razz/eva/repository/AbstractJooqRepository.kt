@@ -9,11 +9,19 @@ import com.razz.eva.domain.Version.Companion.version
 import com.razz.eva.persistence.PersistenceException.ConstraintViolation
 import com.razz.eva.persistence.PersistenceException.StaleRecordException
 import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.tracing.getEvaMeter
 import com.razz.jooq.record.BaseModelRecord
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.catch
 import org.jooq.Condition
 import org.jooq.DSLContext
 import org.jooq.EnumType
 import org.jooq.Field
+import org.jooq.JSON
+import org.jooq.JSONB
 import org.jooq.Record
 import org.jooq.Select
 import org.jooq.SelectLimitStep
@@ -23,6 +31,7 @@ import org.jooq.TableField
 import org.jooq.UpdateQuery
 import org.jooq.impl.DSL
 import java.time.Instant
+import java.util.UUID
 
 abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
     private val queryExecutor: QueryExecutor,
@@ -37,6 +46,7 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
     @Suppress("UNCHECKED_CAST")
     private val createdAt: TableField<R, Instant> = table.field("record_created_at") as TableField<R, Instant>,
     private val stripNotModifiedFields: Boolean = false,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 )
     where ID : Comparable<ID>,
           MID : ModelId<out Comparable<*>>,
@@ -78,19 +88,28 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
     }
 
     private fun <Q : StoreQuery<R>> prepareQuery(context: TransactionalContext, model: M, storeQuery: Q): Q {
+        storeQuery.setRecord(strippedRecord(context, model))
+        return storeQuery
+    }
+
+    // fields equal to the ones of the proto record are reset, so they are not written,
+    // columns a full-row update would have written are counted as skipped along with an estimate of their size
+    private fun strippedRecord(context: TransactionalContext, model: M): R {
         val record = toRecord(context, model)
-        val protoRecord = protoRecord(model)
-        if (protoRecord != null) {
-            for (i in 0..<record.size()) {
-                val origin = protoRecord.getValue(i)
-                val changed = record.getValue(i)
-                if (origin == changed) {
-                    record.reset(i)
-                }
+        val protoRecord = protoRecord(model) ?: return record
+        for (i in 0..<record.size()) {
+            val origin = protoRecord.getValue(i)
+            val changed = record.getValue(i)
+            if (origin == changed) {
+                record.reset(i)
             }
         }
-        storeQuery.setRecord(record)
-        return storeQuery
+        val skipped = modifiableFields.filterNot(record::touched)
+        if (skipped.isNotEmpty()) {
+            skippedColumnsMetric.add(skipped.size.toLong(), tableAttributes)
+            skippedBytesMetric.add(skipped.sumOf { field -> estimatedSize(protoRecord.get(field)) }, tableAttributes)
+        }
+        return record
     }
 
     private fun <Q : UpdateQuery<R>> prepareUpdate(updateQuery: Q): Q {
@@ -116,7 +135,7 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
 
     protected suspend fun persistRecord(context: TransactionalContext, model: M): R {
         require(model.isNew()) {
-            "Can insert only new model"
+            NEW_MODELS_ONLY
         }
         val insertQuery = prepareQuery(context, model, dslContext.insertQuery(table))
         val added = wrapException(model) {
@@ -137,17 +156,20 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
                 return listOf(persistRecord(context, models.first()))
             }
         }
-        val insertQuery = models.fold(dslContext.insertQuery(table)) { query, model ->
-            require(model.isNew()) {
-                "Can insert only new model"
+        // one insert per chunk of rows fitting the bind parameters budget
+        val insertQueries = models.chunked(chunkSize(table.fields().size)).map { chunk ->
+            chunk.fold(dslContext.insertQuery(table)) { query, model ->
+                require(model.isNew()) {
+                    NEW_MODELS_ONLY
+                }
+                query.newRecord()
+                prepareQuery(context, model, query)
             }
-            query.newRecord()
-            prepareQuery(context, model, query)
         }
         val added = wrapException(models.first()) {
-            queryExecutor.executeStore(
+            queryExecutor.executeStores(
                 dslContext = dslContext,
-                jooqQuery = insertQuery,
+                jooqQueries = insertQueries,
                 table = table,
             )
         }
@@ -159,11 +181,41 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
         return added
     }
 
+    /**
+     * Inserts new [models] with [QueryExecutor.executeBulkInsert], so rows are not returned
+     * and the inserted records themselves become the persisted ones.
+     */
+    protected suspend fun bulkPersistRecords(context: TransactionalContext, models: List<M>): List<R> {
+        require(models.isNotEmpty()) {
+            "No models provided for insert"
+        }
+        val records = models.map { model ->
+            require(model.isNew()) {
+                NEW_MODELS_ONLY
+            }
+            toRecord(context, model)
+        }
+        val added = wrapException(models.first()) {
+            queryExecutor.executeBulkInsert(
+                dslContext = dslContext,
+                table = table,
+                records = records,
+            )
+        }
+        if (added != models.size) {
+            throw IllegalStateException(
+                "${models.size} models were queried for insert, while $added rows were inserted",
+            )
+        }
+        return records.onEach { record -> record.touched(false) }
+    }
+
     protected suspend fun updateRecord(context: TransactionalContext, model: M): R {
         require(model.isDirty()) {
             "Can update only dirty model"
         }
-        val updateQuery = prepareUpdate(model, prepareQuery(context, model, dslContext.updateQuery(table)))
+        val updateQuery = deltaUpdate(context, model)
+            ?: prepareUpdate(model, prepareQuery(context, model, dslContext.updateQuery(table)))
         val updated = wrapException(model) {
             queryExecutor.executeStore(
                 dslContext = dslContext,
@@ -189,35 +241,35 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
                 return listOf(updateRecord(context, models.first()))
             }
         }
-        val records = models.map { model ->
+        val deltaUpdates = models.mapNotNull { model ->
             require(model.isDirty()) {
                 "Can update only dirty model"
             }
-            DSL.row(
-                *toRecord(context, model).run {
-                    setId(dbId(model.id()))
-                    valuesRow()
-                        .fields()
-                        .filterIndexed { i, _ -> createdAt != this.field(i) }
-                        .map { field ->
-                            if (EnumType::class.java.isAssignableFrom(field.type)) {
-                                field
-                            } else {
-                                field.cast(field.dataType)
-                            }
-                        }
-                        .toTypedArray()
-                },
-            )
-        }.toTypedArray()
-        val updateQuery = dslContext.updateQuery(ORIGIN_TABLE).apply {
-            addValues(destinationValues, sourceValues)
-            addFrom(DSL.values(*records).`as`(VALUES_ALIAS, *VALUES_ROW))
-        }.let(::prepareUpdate)
+            deltaUpdate(context, model)?.let { update -> model to update }
+        }.toMap()
+        // models with stripped fields only update the columns they changed, one update per set of columns
+        val rowsByColumns = models.filterNot(deltaUpdates::containsKey).groupBy { model ->
+            updatedColumns(context, model)
+        }.mapValues { (columns, columnModels) ->
+            columnModels.map { model -> valuesRow(context, model, columns) }
+        }
+        // one update per chunk of rows fitting the bind parameters budget, stale records are found across chunks
+        val updateQueries = rowsByColumns.flatMap { (columns, rows) ->
+            val modifiable = columns.filter { field -> field != tableId }
+            val destination = DSL.row(*modifiable.toTypedArray())
+            val source = DSL.row(*modifiable.map { field -> VALUES_TABLE.field(field)!! }.toTypedArray())
+            val aliases = columns.map(Field<*>::getUnqualifiedName).toTypedArray()
+            rows.chunked(chunkSize(columns.size)).map { chunk ->
+                dslContext.updateQuery(ORIGIN_TABLE).apply {
+                    addValues(destination, source)
+                    addFrom(DSL.values(*chunk.toTypedArray()).`as`(VALUES_ALIAS, *aliases))
+                }.let(::prepareUpdate)
+            }
+        }
         val updated = wrapException(models.first()) {
-            queryExecutor.executeStore(
+            queryExecutor.executeStores(
                 dslContext = dslContext,
-                jooqQuery = updateQuery,
+                jooqQueries = deltaUpdates.values + updateQueries,
                 table = table,
             )
         }
@@ -236,19 +288,78 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
         return updated
     }
 
-    private fun Table<*>.onlyModifiableFields(): Array<Field<*>> = this.fields().filterNot { field ->
-        field.unqualifiedName == createdAt.unqualifiedName || field.unqualifiedName == tableId.unqualifiedName
-    }.toTypedArray()
+    // a persisted model changing commutative fields only is updated by adding its deltas to the stored values,
+    // guarded by their conditions instead of its version
+    private fun deltaUpdate(context: TransactionalContext, model: M): UpdateQuery<R>? {
+        val stored = model.proto<R>()
+        if (commutativeByField.isEmpty() || stored == null) return null
+        val record = toRecord(context, model)
+        val changed = modifiableFields
+            .filter { field -> field != version && field != updatedAt && record.touched(field) }
+            .filter { field -> record.get(field) != stored.get(field) }
+            .map { field -> commutativeByField[field]?.takeIf { it.accepts(stored, record) } }
+        if (changed.isEmpty() || null in changed) return null
+        return dslContext.updateQuery(table).apply {
+            changed.filterNotNull().forEach { field -> field.addDelta(this, stored, record) }
+            addValue(updatedAt, context.startedAt)
+            addValue(version, version.plus(1))
+            addConditions(tableId.eq(dbId(model.id())))
+            addConditions(partitionCond(model))
+        }
+    }
+
+    private fun updatedColumns(context: TransactionalContext, model: M): List<Field<*>> {
+        if (protoRecord(model) == null) return updatableFields
+        val record = strippedRecord(context, model)
+        return updatableFields.filter { field -> field == tableId || record.touched(field) }
+    }
+
+    private fun valuesRow(context: TransactionalContext, model: M, columns: List<Field<*>>) = DSL.row(
+        *toRecord(context, model).run {
+            setId(dbId(model.id()))
+            val values = valuesRow().fields()
+            columns
+                .map { column -> values[table.indexOf(column)] }
+                .map { field ->
+                    if (EnumType::class.java.isAssignableFrom(field.type)) {
+                        field
+                    } else {
+                        field.cast(field.dataType)
+                    }
+                }
+                .toTypedArray()
+        },
+    )
 
     private val ORIGIN_ALIAS = DSL.quotedName("T")
     private val ORIGIN_TABLE = table.`as`(ORIGIN_ALIAS)
     private val VALUES_ALIAS = DSL.quotedName("U")
-    private val VALUES_ROW = table.fields().filter { createdAt != it }.map { it.unqualifiedName }.toTypedArray()
+    private val VALUES_TABLE = ORIGIN_TABLE.`as`(VALUES_ALIAS)
+
+    @Suppress("UNCHECKED_CAST")
+    private val updatedAt = table.field("record_updated_at") as TableField<R, Instant>
+    private val commutativeByField by lazy {
+        commutativeFields().associateBy<CommutativeField<R, *>, Field<*>> { it.field }
+    }
+
+    private val updatableFields = table.fields().filter { field -> field != createdAt }
+    private val modifiableFields = updatableFields.filter { field -> field != tableId }
+
+    private val tableAttributes = Attributes.of(TABLE, table.name)
 
-    private val destinationValues = DSL.row(*table.onlyModifiableFields())
-    private val sourceValues = DSL.row(*ORIGIN_TABLE.`as`(VALUES_ALIAS).onlyModifiableFields())
+    private val skippedColumnsMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("model.update.skipped_columns")
+        .setDescription("Columns left out of model updates since their values did not change")
+        .setUnit("{column}")
+        .build()
 
-    private inline fun <R : Record, ME : M> wrapException(model: ME, block: () -> List<R>) = try {
+    private val skippedBytesMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("model.update.skipped_bytes")
+        .setDescription("Estimated size of the column values left out of model updates")
+        .setUnit("By")
+        .build()
+
+    private inline fun <T> wrapException(model: M, block: () -> T): T = try {
         block()
     } catch (ex: Exception) {
         val modelException = queryExecutor.extractModelException(ex, table, model.id()) ?: throw ex
@@ -258,8 +369,22 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
         }
     }
 
+    /**
+     * Bind parameters a single multi-row insert or update of [persistRecords] and [updateRecords] may take,
+     * more models are split into several statements.
+     */
+    protected open fun maxBindParams(): Int = QueryExecutor.MAX_BIND_PARAMS
+
+    private fun chunkSize(columns: Int) = maxOf(1, maxBindParams() / columns)
+
     protected open fun partitionCond(model: M): Condition = DSL.noCondition()
 
+    /**
+     * Fields updated by adding the change of a model to the stored value, see [CommutativeField].
+     * Updates of persisted models changing only these fields are not checked against their version.
+     */
+    protected open fun commutativeFields(): List<CommutativeField<R, *>> = listOf()
+
     protected open fun mapConstraintViolation(ex: ConstraintViolation): Exception? = null
 
     protected suspend fun <R : Record> atMostOneRecord(select: SelectLimitStep<R>): R? {
@@ -294,6 +419,17 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
         }
     }
 
+    protected fun <R : Record> streamRecords(select: Select<R>, fetchSize: Int): Flow<R> {
+        return queryExecutor.streamSelect(
+            dslContext = dslContext,
+            jooqQuery = select,
+            table = select.asTable(),
+            fetchSize = fetchSize,
+        ).catch { ex ->
+            throw (ex as? Exception)?.let(queryExecutor::extractConnectionException) ?: ex
+        }
+    }
+
     @Throws(JooqQueryException::class)
     private fun <T, K> List<T>.getSingleOrNull(mapper: (T) -> K, ex: (List<T>) -> JooqQueryException): K? {
         return when (size) {
@@ -303,3 +439,21 @@ abstract class AbstractJooqRepository<ID, MID, M, ME, R>(
         }
     }
 }
+
+private const val NEW_MODELS_ONLY = "Can insert only new model"
+private const val FIXED_SIZE_BYTES = 8L
+private const val UUID_BYTES = 16L
+
+private val TABLE: AttributeKey<String> = AttributeKey.stringKey("table")
+
+// rough size of a column value as sent to the database, variable length values are counted by their content
+private fun estimatedSize(value: Any?): Long = when (value) {
+    null -> 0
+    is String -> value.toByteArray().size.toLong()
+    is ByteArray -> value.size.toLong()
+    is JSON -> value.data().toByteArray().size.toLong()
+    is JSONB -> value.data().toByteArray().size.toLong()
+    is UUID -> UUID_BYTES
+    is Array<*> -> value.sumOf(::estimatedSize)
+    else -> FIXED_SIZE_BYTES
+}
@@ -0,0 +1,151 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.Model
+import com.razz.eva.domain.ModelId
+import com.razz.eva.tracing.getEvaMeter
+import io.opentelemetry.api.OpenTelemetry
+import io.opentelemetry.api.OpenTelemetry.noop
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.common.Attributes
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * Configuration of a [CachingModelRepository].
+ *
+ * @param maxSize how many models are kept at most, the least recently read one is evicted first
+ * @param ttl how long a model is served from memory since it was loaded or persisted
+ */
+data class ModelCache(
+    val maxSize: Int = 10_000,
+    val ttl: Duration = Duration.ofMinutes(1),
+) {
+    init {
+        require(maxSize > 0) { "Model cache max size must be positive" }
+        require(!ttl.isNegative && !ttl.isZero) { "Model cache ttl must be positive" }
+    }
+}
+
+/**
+ * Read-through cache in front of [delegate] for rarely changing models: [find] and [list] are served from memory,
+ * models are loaded from [delegate] only when missing or expired. Register it in [ModelRepos] instead of
+ * the repository it wraps, each model class with a configuration of its own.
+ *
+ * Models persisted by a unit of work replace the cached ones once its transaction is committed, models are
+ * evicted as soon as they are updated. A cached model of an older version can still be served until
+ * the cache learns about the newer one, updating it then fails with
+ * [com.razz.eva.persistence.PersistenceException.StaleRecordException] and the unit of work retried
+ * on stale records reads it again from [delegate]. A cached model replaces another one only if its version
+ * is not older, so a slow read never overrides a persisted model.
+ *
+ * Lookups are counted as `model.cache.lookups` with the `result` of a hit or a miss,
+ * evictions as `model.cache.evictions` with the `cause` of size or expiry.
+ */
+class CachingModelRepository<MID : ModelId<out Comparable<*>>, M : Model<MID, *>>(
+    private val delegate: ModelRepository<MID, M>,
+    private val config: ModelCache = ModelCache(),
+    openTelemetry: OpenTelemetry = noop(),
+    private val clock: Clock = Clock.systemUTC(),
+) : ModelRepository<MID, M> {
+
+    private class Entry<M>(val model: M, val expiresAt: Instant)
+
+    private val repositoryName = delegate::class.simpleName.toString()
+    private val hit = Attributes.of(REPOSITORY, repositoryName, RESULT, "hit")
+    private val miss = Attributes.of(REPOSITORY, repositoryName, RESULT, "miss")
+    private val evictedBySize = Attributes.of(REPOSITORY, repositoryName, CAUSE, "size")
+    private val expired = Attributes.of(REPOSITORY, repositoryName, CAUSE, "expired")
+
+    private val lookupMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("model.cache.lookups")
+        .setDescription("Model lookups served by the model cache or loaded by the repository it wraps")
+        .setUnit("{lookup}")
+        .build()
+
+    private val evictionMetric = openTelemetry.getEvaMeter()
+        .counterBuilder("model.cache.evictions")
+        .setDescription("Models evicted from the model cache when it is full or when they expire")
+        .setUnit("{eviction}")
+        .build()
+
+    // access ordered, so the least recently read model is the eldest one
+    private val entries = object : LinkedHashMap<MID, Entry<M>>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<MID, Entry<M>>): Boolean {
+            val full = size > config.maxSize
+            if (full) evictionMetric.add(1, evictedBySize)
+            return full
+        }
+    }
+
+    override suspend fun find(id: MID): M? {
+        val cached = cached(id)
+        if (cached != null) {
+            lookupMetric.add(1, hit)
+            return cached
+        }
+        lookupMetric.add(1, miss)
+        return delegate.find(id)?.also(::store)
+    }
+
+    override suspend fun list(ids: Collection<MID>): List<M> {
+        val hits = mutableListOf<M>()
+        val missing = mutableListOf<MID>()
+        ids.toSet().forEach { id -> cached(id)?.let(hits::add) ?: missing.add(id) }
+        if (hits.isNotEmpty()) lookupMetric.add(hits.size.toLong(), hit)
+        if (missing.isEmpty()) return hits
+        lookupMetric.add(missing.size.toLong(), miss)
+        return hits + delegate.list(missing).onEach(::store)
+    }
+
+    override suspend fun <ME : M> add(context: TransactionalContext, model: ME): ME =
+        delegate.add(context, model)
+
+    override suspend fun <ME : M> add(context: TransactionalContext, models: List<ME>): List<ME> =
+        delegate.add(context, models)
+
+    override suspend fun <ME : M> update(context: TransactionalContext, model: ME): ME {
+        evict(listOf(model))
+        return delegate.update(context, model)
+    }
+
+    override suspend fun <ME : M> update(context: TransactionalContext, models: List<ME>): List<ME> {
+        evict(models)
+        return delegate.update(context, models)
+    }
+
+    /**
+     * Caches [model] persisted by a committed transaction.
+     */
+    internal fun persisted(model: Model<*, *>) {
+        @Suppress("UNCHECKED_CAST")
+        store(model as M)
+    }
+
+    private fun cached(id: MID): M? = synchronized(entries) {
+        val entry = entries[id] ?: return null
+        if (entry.expiresAt.isAfter(clock.instant())) return entry.model
+        entries.remove(id)
+        evictionMetric.add(1, expired)
+        null
+    }
+
+    private fun store(model: M) = synchronized(entries) {
+        val current = entries[model.id()]?.model
+        if (current == null || current.version().version <= model.version().version) {
+            entries[model.id()] = Entry(model, clock.instant().plus(config.ttl))
+        }
+    }
+
+    private fun evict(models: List<M>) = synchronized(entries) {
+        models.forEach { entries.remove(it.id()) }
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 16
+        const val LOAD_FACTOR = 0.75f
+        val REPOSITORY: AttributeKey<String> = AttributeKey.stringKey("repository")
+        val RESULT: AttributeKey<String> = AttributeKey.stringKey("result")
+        val CAUSE: AttributeKey<String> = AttributeKey.stringKey("cause")
+    }
+}
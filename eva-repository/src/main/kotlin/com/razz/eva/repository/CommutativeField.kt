@@ -0,0 +1,57 @@
+package com.razz.eva.repository
+
+import org.jooq.Condition
+import org.jooq.Field
+import org.jooq.Record
+import org.jooq.TableField
+import org.jooq.UpdateQuery
+import org.jooq.impl.DSL
+import java.math.BigDecimal
+import java.math.BigInteger
+
+/**
+ * Numeric [field] of a model table whose changes commute, a balance or a counter for instance.
+ * Updates of persisted models changing only such fields add the difference to the stored value,
+ * `amount = amount + delta`, instead of overwriting the row when its version matches,
+ * so concurrent changes of the field do not make each other stale.
+ *
+ * [guard] receives the updated value and is checked by the database, an update violating it
+ * does not find its row and fails as stale, e.g. `CommutativeField(WALLETS.AMOUNT) { amount -> amount.ge(0) }`.
+ */
+class CommutativeField<R : Record, T : Number>(
+    val field: TableField<R, T>,
+    private val guard: (Field<T>) -> Condition = { DSL.noCondition() },
+) {
+    init {
+        require(SUPPORTED_TYPES.any { it.isAssignableFrom(field.type) }) {
+            "Commutative field ${field.name} must be one of ${SUPPORTED_TYPES.map(Class<*>::getSimpleName)}"
+        }
+    }
+
+    internal fun accepts(stored: R, changed: R): Boolean = stored.get(field) != null && changed.get(field) != null
+
+    internal fun addDelta(query: UpdateQuery<R>, stored: R, changed: R) {
+        val updated = field.plus(delta(stored.get(field)!!, changed.get(field)!!))
+        query.addValue(field, updated)
+        query.addConditions(guard(updated))
+    }
+
+    private fun delta(stored: T, changed: T): Number = when (changed) {
+        is Int -> changed - stored.toInt()
+        is Long -> changed - stored.toLong()
+        is Double -> changed - stored.toDouble()
+        is BigDecimal -> changed - stored as BigDecimal
+        is BigInteger -> changed - stored as BigInteger
+        else -> throw IllegalStateException("Unsupported commutative value ${changed::class}")
+    }
+
+    private companion object {
+        val SUPPORTED_TYPES = listOf(
+            Int::class.javaObjectType,
+            Long::class.javaObjectType,
+            Double::class.javaObjectType,
+            BigDecimal::class.java,
+            BigInteger::class.java,
+        )
+    }
+}
@@ -7,4 +7,18 @@ interface EventRepository {
     suspend fun warmup() {}
 
     suspend fun add(uowEvent: UowEvent)
+
+    /**
+     * Renders and validates [uowEvent] before the write transaction is open, failing the way [add] would,
+     * so that adding the prepared event only executes its statements while the connection is held.
+     */
+    fun prepare(uowEvent: UowEvent): PreparedUowEvent = PreparedUowEvent { add(uowEvent) }
+}
+
+/**
+ * Uow event rendered by [EventRepository.prepare], ready to be added within the write transaction.
+ */
+fun interface PreparedUowEvent {
+
+    suspend fun add()
 }
@@ -8,6 +8,9 @@ import com.razz.eva.paging.Page
 import com.razz.eva.paging.PagedList
 import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.jooq.record.BaseModelRecord
+import io.opentelemetry.api.OpenTelemetry
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.map
 import org.jooq.Condition
 import org.jooq.DSLContext
 import org.jooq.Field
@@ -33,8 +36,9 @@ abstract class JooqBaseModelRepository<ID, MID, M, ME, R>(
     @Suppress("UNCHECKED_CAST")
     createdAt: TableField<R, Instant> = table.field("record_created_at") as TableField<R, Instant>,
     stripNotModifiedFields: Boolean = false,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : AbstractJooqRepository<ID, MID, M, ME, R>(
-    queryExecutor, dslContext, table, tableId, dbId, version, createdAt, stripNotModifiedFields,
+    queryExecutor, dslContext, table, tableId, dbId, version, createdAt, stripNotModifiedFields, openTelemetry,
 ), ModelRepository<MID, M>
     where ID : Comparable<ID>,
           MID : ModelId<out Comparable<*>>,
@@ -62,12 +66,25 @@ abstract class JooqBaseModelRepository<ID, MID, M, ME, R>(
     }
 
     override suspend fun <ME : M> add(context: TransactionalContext, models: List<ME>): List<ME> {
-        return persistRecords(context, models).map {
+        val records = if (models.size >= bulkInsertThreshold()) {
+            bulkPersistRecords(context, models)
+        } else {
+            persistRecords(context, models)
+        }
+        return records.map {
             @Suppress("UNCHECKED_CAST")
             fromRecord(it) as ME
         }
     }
 
+    /**
+     * Number of new models added at once from which they are bulk inserted, with `COPY` by the jdbc executor,
+     * instead of a multi-row `INSERT ... RETURNING`, see [QueryExecutor.executeBulkInsert].
+     * Bulk inserted models are built from the records they were stored from, so columns
+     * the database fills in on insert are not read back. Bulk inserts are off by default.
+     */
+    protected open fun bulkInsertThreshold(): Int = Int.MAX_VALUE
+
     /**
      * This method meant to be used only by
      * [com.razz.eva.uow.ModelPersisting#update]
@@ -185,6 +202,28 @@ abstract class JooqBaseModelRepository<ID, MID, M, ME, R>(
         return findAll(select)
     }
 
+    /**
+     * Streams models matching [condition] fetching [fetchSize] records at a time, for walks over more rows
+     * than [findAllWhere] can hold in memory. The stream keeps its connection until it is fully collected.
+     */
+    protected fun streamWhere(
+        condition: Condition,
+        sortField: SortField<*>? = null,
+        sortFields: Array<SortField<*>> = emptyArray(),
+        fetchSize: Int = QueryExecutor.DEFAULT_FETCH_SIZE,
+    ): Flow<M> {
+        val select = dslContext.selectFrom(table)
+            .where(condition)
+            .let {
+                when (sortField) {
+                    null -> it
+                    else -> it.orderBy(sortField, *sortFields)
+                }
+            }
+
+        return streamRecords(select, fetchSize).map(::fromRecord)
+    }
+
     protected suspend fun findAll(select: Select<R>): List<M> {
         return allRecords(select).map(::fromRecord)
     }
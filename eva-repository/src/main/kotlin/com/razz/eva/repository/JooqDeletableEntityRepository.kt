@@ -5,7 +5,11 @@ import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.jooq.record.BaseEntityRecord
 import org.jooq.Condition
 import org.jooq.DSLContext
+import org.jooq.EnumType
+import org.jooq.Field
 import org.jooq.Table
+import org.jooq.TableField
+import org.jooq.impl.DSL
 
 abstract class JooqDeletableEntityRepository<E : DeletableEntity, R : BaseEntityRecord>(
     private val queryExecutor: QueryExecutor,
@@ -27,12 +31,58 @@ abstract class JooqDeletableEntityRepository<E : DeletableEntity, R : BaseEntity
     override suspend fun delete(context: TransactionalContext, entities: List<E>): Int {
         if (entities.isEmpty()) return 0
         if (entities.size == 1) return if (delete(context, entities.first())) 1 else 0
-        val conditions = entities.map(::entityCondition).reduce(Condition::or)
-        val deleteQuery = dslContext.deleteFrom(table).where(conditions)
-        val deleted = queryExecutor.executeQuery(
-            dslContext = dslContext,
-            jooqQuery = deleteQuery,
-        )
+        val key = entityKey()
+        val deleted = when {
+            key.isNotEmpty() -> {
+                val records = entities.map(::toRecord)
+                deleteKeys(records.map { record -> key.map { field -> record.get(field) } })
+            }
+            else -> {
+                val conditions = entities.map(::entityCondition).reduce(Condition::or)
+                val deleteQuery = dslContext.deleteFrom(table).where(conditions)
+                queryExecutor.executeQuery(
+                    dslContext = dslContext,
+                    jooqQuery = deleteQuery,
+                )
+            }
+        }
         return deleted
     }
+
+    /**
+     * Deletes rows by the values of their [entityKey] columns, in chunks fitting the bind parameters budget.
+     * A single column key is matched with `= ANY (array)`, a composite one with `DELETE ... USING (VALUES ...)`,
+     * so the statement and its plan stay the same however many keys are deleted.
+     */
+    protected suspend fun deleteKeys(keys: List<List<Any?>>): Int {
+        val key = entityKey()
+        val deleteQueries = keys.distinct().chunked(maxOf(1, maxBindParams() / key.size)).map { chunk ->
+            when (key.size) {
+                1 -> dslContext.deleteFrom(table).where(anyOf(key.single(), chunk.map(List<Any?>::single)))
+                else -> dslContext.deleteQuery(originTable).apply {
+                    val rows = DSL.values(*chunk.map { values -> keyRow(key, values) }.toTypedArray())
+                    addUsing(rows.`as`(valuesAlias, *key.map(Field<*>::getUnqualifiedName).toTypedArray()))
+                    addConditions(key.map(::keyMatches))
+                }
+            }
+        }
+        return when (deleteQueries.size) {
+            1 -> queryExecutor.executeQuery(dslContext = dslContext, jooqQuery = deleteQueries.single())
+            else -> queryExecutor.executeBatch(dslContext = dslContext, jooqQueries = deleteQueries).sum()
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> anyOf(field: Field<T>, values: List<Any?>): Condition {
+        val array = java.lang.reflect.Array.newInstance(field.type, values.size) as Array<T>
+        values.forEachIndexed { i, value -> array[i] = value as T }
+        return field.eq(DSL.any(*array))
+    }
+
+    private fun keyRow(key: List<TableField<R, *>>, values: List<Any?>) = DSL.row(
+        *key.zip(values).map { (field, value) ->
+            val param = DSL.`val`(value, field)
+            if (EnumType::class.java.isAssignableFrom(field.type)) param else param.cast(field.dataType)
+        }.toTypedArray(),
+    )
 }
@@ -13,6 +13,9 @@ import com.razz.eva.persistence.PersistenceException
 import com.razz.eva.persistence.PersistenceException.UniqueUowEventRecordViolationException
 import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.eva.repository.Fake.FakeModelEvent
+import com.razz.eva.repository.JooqEventRepository.PayloadFormat.CBOR
+import com.razz.eva.repository.JooqEventRepository.PayloadFormat.JSON
+import com.razz.eva.serialization.cbor.CborFormat
 import com.razz.eva.serialization.json.JsonFormat.json
 import com.razz.eva.tracing.contextMap
 import io.opentelemetry.api.OpenTelemetry
@@ -24,8 +27,6 @@ import kotlinx.serialization.json.JsonPrimitive
 import kotlinx.serialization.json.buildJsonObject
 import kotlinx.serialization.json.put
 import org.jooq.DSLContext
-import org.jooq.InsertQuery
-import org.jooq.Record
 
 class JooqEventRepository(
     private val queryExecutor: QueryExecutor,
@@ -33,8 +34,21 @@ class JooqEventRepository(
     private val openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
     private val maxEventPayloadSize: Int = 1024 * 1024,
     private val maxParamsSize: Int = 1024 * 1024,
+    private val bulkInsertThreshold: Int = Int.MAX_VALUE,
+    private val payloadFormat: PayloadFormat = JSON,
 ) : EventRepository {
 
+    /**
+     * Format model event payloads are stored in, readers of model events decode either of them.
+     */
+    enum class PayloadFormat {
+        /** Json text in `model_events.payload` */
+        JSON,
+
+        /** Cbor bytes in `model_events.payload_bin`, see [CborFormat] */
+        CBOR,
+    }
+
     override suspend fun warmup() {
         toUERecord(Fake.uowEvent)
         toMERecord(
@@ -56,8 +70,10 @@ class JooqEventRepository(
         eventId: ModelEventId,
         modelEvent: ModelEvent<*>,
     ): ModelEventsRecord {
-        val payloadString = modelEvent.payload(uowEvent.principal).toString()
-        val payloadSize = payloadString.utf8SizeInBytes()
+        val payloadJson = modelEvent.payload(uowEvent.principal)
+        val payloadString = if (payloadFormat == JSON) payloadJson.toString() else null
+        val payloadBytes = if (payloadFormat == CBOR) CborFormat.encode(payloadJson) else null
+        val payloadSize = payloadBytes?.size ?: checkNotNull(payloadString).utf8SizeInBytes()
 
         if (payloadSize > maxEventPayloadSize) {
             throw PersistenceException.EventPayloadTooLargeException(
@@ -76,7 +92,8 @@ class JooqEventRepository(
             name = modelEvent.eventName()
             modelName = modelEvent.modelName
             occurredAt = uowEvent.occurredAt
-            payload = payloadString
+            if (payloadString != null) payload = payloadString
+            if (payloadBytes != null) payloadBin = payloadBytes
         }
     }
 
@@ -115,11 +132,54 @@ class JooqEventRepository(
     }
 
     override suspend fun add(uowEvent: UowEvent) {
+        prepare(uowEvent).add()
+    }
+
+    override fun prepare(uowEvent: UowEvent): PreparedUowEvent {
+        val uowEventR = toUERecord(uowEvent)
+        // model events of a unit of work share its tracing context
+        val tracingContext = contextMap(openTelemetry.propagators.textMapPropagator)
+            .takeIf { it.isNotEmpty() }
+            ?.let { json.encodeToString(it) }
+        val modelEventRs = uowEvent.modelEvents.map { (id, event) ->
+            toMERecord(
+                uowEvent = uowEvent,
+                eventId = id,
+                modelEvent = event,
+            ).also {
+                if (tracingContext != null) {
+                    it.tracingContext = tracingContext
+                }
+            }
+        }
+        return PreparedUowEvent { insert(uowEvent, uowEventR, modelEventRs) }
+    }
+
+    private suspend fun insert(
+        uowEvent: UowEvent,
+        uowEventR: UowEventsRecord,
+        modelEventRs: List<ModelEventsRecord>,
+    ) {
+        val uowEventInsert = dslContext.insertQuery(UOW_EVENTS).apply {
+            setRecord(uowEventR)
+        }
+        // model events of bulk inserted models go with QueryExecutor.executeBulkInsert after the uow event
+        val bulkInsert = modelEventRs.size >= bulkInsertThreshold
+        val modelEventsInsert = if (modelEventRs.isNotEmpty() && !bulkInsert) {
+            dslContext.insertQuery(MODEL_EVENTS).apply {
+                for (mer in modelEventRs) {
+                    addRecord(mer)
+                }
+            }
+        } else {
+            null
+        }
+        // uow event and its model events go out in one batch, model event ids are random,
+        // so a unique violation in the batch is the one of the uow event
         try {
-            insert(
-                dslContext.insertQuery(UOW_EVENTS).apply {
-                    setRecord(toUERecord(uowEvent))
-                },
+            queryExecutor.executeBatch(
+                dslContext = dslContext,
+                jooqQueries = listOfNotNull(uowEventInsert, modelEventsInsert),
             )
         } catch (ex: Exception) {
             val uniqueConstraintName = queryExecutor.extractUniqueConstraintName(ex, UOW_EVENTS) ?: throw ex
@@ -130,37 +190,15 @@ class JooqEventRepository(
                 constraintName = uniqueConstraintName.name,
             )
         }
-
-        val modelEventRs = uowEvent.modelEvents.map { (id, event) ->
-            toMERecord(
-                uowEvent = uowEvent,
-                eventId = id,
-                modelEvent = event,
-            ).also {
-                val tracingContext = contextMap(openTelemetry.propagators.textMapPropagator)
-                if (tracingContext.isNotEmpty()) {
-                    it.tracingContext = json.encodeToString(tracingContext)
-                }
-            }
-        }
-        if (modelEventRs.isNotEmpty()) {
-            insert(
-                dslContext.insertQuery(MODEL_EVENTS).apply {
-                    for (mer in modelEventRs) {
-                        addRecord(mer)
-                    }
-                },
+        if (bulkInsert) {
+            queryExecutor.executeBulkInsert(
+                dslContext = dslContext,
+                table = MODEL_EVENTS,
+                records = modelEventRs,
             )
         }
     }
 
-    private suspend fun <R : Record> insert(query: InsertQuery<R>) {
-        queryExecutor.executeQuery(
-            dslContext = dslContext,
-            jooqQuery = query,
-        )
-    }
-
     private fun ModelEvent<*>.payload(principal: Principal<*>): JsonObject {
         return when (this) {
             is ModelWithPrincipalEvent -> {
@@ -18,6 +18,12 @@ abstract class JooqKeyDeletableEntityRepository<E : DeletableEntity, K : EntityK
 
     abstract fun keyCondition(key: K): Condition
 
+    /**
+     * Values of the [entityKey] columns identifying the entity of [key], in the same order.
+     * Without it keys are deleted by their [keyCondition]s joined with `OR`.
+     */
+    protected open fun keyValues(key: K): List<Any?>? = null
+
     override suspend fun delete(context: TransactionalContext, key: K): Boolean {
         val deleteQuery = dslContext.deleteFrom(table)
             .where(keyCondition(key))
@@ -32,12 +38,20 @@ abstract class JooqKeyDeletableEntityRepository<E : DeletableEntity, K : EntityK
     override suspend fun delete(context: TransactionalContext, keys: List<K>): Int {
         if (keys.isEmpty()) return 0
         if (keys.size == 1) return if (delete(context, keys.first())) 1 else 0
-        val conditions = keys.map(::keyCondition).reduce(Condition::or)
-        val deleteQuery = dslContext.deleteFrom(table).where(conditions)
-        val deleted = queryExecutor.executeQuery(
-            dslContext = dslContext,
-            jooqQuery = deleteQuery,
-        )
+        val keyValues = keys.map(::keyValues)
+        val deleted = when {
+            entityKey().isNotEmpty() && keyValues.all { values -> values != null } -> {
+                deleteKeys(keyValues.filterNotNull())
+            }
+            else -> {
+                val conditions = keys.map(::keyCondition).reduce(Condition::or)
+                val deleteQuery = dslContext.deleteFrom(table).where(conditions)
+                queryExecutor.executeQuery(
+                    dslContext = dslContext,
+                    jooqQuery = deleteQuery,
+                )
+            }
+        }
         return deleted
     }
 }
@@ -5,6 +5,7 @@ import com.razz.eva.domain.ModelEvent
 import com.razz.eva.domain.ModelId
 import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.jooq.record.TypedStatefulModelRecord
+import io.opentelemetry.api.OpenTelemetry
 import org.jooq.DSLContext
 import org.jooq.Table
 import org.jooq.TableField
@@ -23,8 +24,9 @@ abstract class JooqStatefulModelRepository<ID, MID, M, ME, R, S>(
     @Suppress("UNCHECKED_CAST")
     createdAt: TableField<R, Instant> = table.field("record_created_at") as TableField<R, Instant>,
     stripNotModifiedFields: Boolean = false,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : JooqBaseModelRepository<ID, MID, M, ME, R>(
-    queryExecutor, dslContext, table, tableId, dbId, version, createdAt, stripNotModifiedFields,
+    queryExecutor, dslContext, table, tableId, dbId, version, createdAt, stripNotModifiedFields, openTelemetry,
 ) where ID : Comparable<ID>,
       MID : ModelId<out Comparable<*>>,
       ME : ModelEvent<MID>,
@@ -5,7 +5,11 @@ import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.jooq.record.BaseEntityRecord
 import org.jooq.Condition
 import org.jooq.DSLContext
+import org.jooq.EnumType
+import org.jooq.Field
 import org.jooq.Table
+import org.jooq.TableField
+import org.jooq.impl.DSL
 
 abstract class JooqUpdatableEntityRepository<E : UpdatableEntity, R : BaseEntityRecord>(
     private val queryExecutor: QueryExecutor,
@@ -40,9 +44,84 @@ abstract class JooqUpdatableEntityRepository<E : UpdatableEntity, R : BaseEntity
         }
     }
 
+    /**
+     * Columns [entityCondition] is built of, entities are matched by them in batched updates.
+     * None by default, so entities are updated one by one until a repository declares the columns.
+     */
+    protected open fun entityKey(): List<TableField<R, *>> = listOf()
+
+    protected open fun maxBindParams(): Int = QueryExecutor.MAX_BIND_PARAMS
+
     override suspend fun update(context: TransactionalContext, entities: List<E>): List<E> {
         if (entities.isEmpty()) throw IllegalArgumentException("No entities provided for update")
         if (entities.size == 1) return listOf(update(context, entities.first()))
-        return entities.map { update(context, it) }
+        val key = entityKey()
+        val records = entities.map(::toRecord)
+        val keys = records.map { record -> key.map { field -> record.get(field) } }
+        // an entity updated twice keeps the last of its updates, only one row of values would win in a batch
+        if (key.isEmpty() || keys.toSet().size < keys.size) return entities.map { update(context, it) }
+        // one update per set of columns and chunk of rows fitting the bind parameters budget
+        val updateQueries = records.groupBy { record -> updatedColumns(key, record) }
+            .flatMap { (columns, columnRecords) ->
+                val modifiable = columns.filter { field -> field !in key }
+                val destination = DSL.row(*modifiable.toTypedArray())
+                val source = DSL.row(*modifiable.map { field -> valuesTable.field(field)!! }.toTypedArray())
+                val aliases = columns.map(Field<*>::getUnqualifiedName).toTypedArray()
+                columnRecords.chunked(maxOf(1, maxBindParams() / columns.size)).map { chunk ->
+                    val values = DSL.values(*chunk.map { record -> valuesRow(record, columns) }.toTypedArray())
+                    dslContext.updateQuery(originTable).apply {
+                        addValues(destination, source)
+                        addFrom(values.`as`(valuesAlias, *aliases))
+                        addConditions(key.map(::keyMatches))
+                    }
+                }
+            }
+        val updated = queryExecutor.executeStores(
+            dslContext = dslContext,
+            jooqQueries = updateQueries,
+            table = table,
+        )
+        if (updated.size > entities.size) {
+            throw IllegalStateException("Update affected ${updated.size} rows, expected ${entities.size}")
+        }
+        val updatedByKey = updated.associateBy { record -> key.map { field -> record.get(field) } }
+        val notFound = keys.filterNot(updatedByKey::containsKey)
+        if (notFound.isNotEmpty()) {
+            val described = notFound.joinToString { values -> describeKey(key, values) }
+            throw IllegalStateException(
+                "${notFound.size} of ${entities.size} entities not found for update: $described",
+            )
+        }
+        return keys.map { values -> fromRecord(updatedByKey.getValue(values)) }
     }
+
+    private fun describeKey(key: List<TableField<R, *>>, values: List<Any?>) =
+        key.zip(values).joinToString(prefix = "(", postfix = ")") { (field, value) -> "${field.name}=$value" }
+
+    private fun updatedColumns(key: List<TableField<R, *>>, record: R): List<Field<*>> =
+        table.fields().filter { field -> field in key || record.touched(field) }
+
+    private fun valuesRow(record: R, columns: List<Field<*>>) = DSL.row(
+        *record.valuesRow().fields().let { values ->
+            columns
+                .map { column -> values[table.indexOf(column)] }
+                .map { field ->
+                    if (EnumType::class.java.isAssignableFrom(field.type)) {
+                        field
+                    } else {
+                        field.cast(field.dataType)
+                    }
+                }
+                .toTypedArray()
+        },
+    )
+
+    internal fun keyMatches(field: TableField<R, *>) =
+        DSL.field(DSL.name(valuesAlias, field.unqualifiedName))
+            .eq(DSL.field(DSL.name(originAlias, field.unqualifiedName)))
+
+    private val originAlias = DSL.quotedName("T")
+    internal val originTable = table.`as`(originAlias)
+    internal val valuesAlias = DSL.quotedName("U")
+    private val valuesTable = originTable.`as`(valuesAlias)
 }
@@ -26,6 +26,13 @@ class ModelRepos(
         @Suppress("UNCHECKED_CAST")
         return repo as ModelRepository<ID, M>
     }
+
+    /**
+     * Passes models persisted by a committed transaction to the caching repositories among [repos].
+     */
+    internal fun persisted(models: List<Model<*, *>>) {
+        models.forEach { model -> (classToRepo[model::class] as? CachingModelRepository<*, *>)?.persisted(model) }
+    }
 }
 
 class RepositoryNotFoundException(model: Model<*, *>) :
@@ -1,15 +1,18 @@
 package com.razz.eva.repository
 
 import com.razz.eva.paging.BasicPagedList
+import com.razz.eva.paging.KeysetSlice
 import com.razz.eva.paging.Offset
 import com.razz.eva.paging.Page
 import com.razz.eva.paging.PagedList
 import com.razz.eva.paging.Size
+import org.jooq.Condition
 import org.jooq.Field
 import org.jooq.Record
 import org.jooq.Select
 import org.jooq.SelectOrderByStep
 import org.jooq.SortOrder
+import org.jooq.impl.DSL
 
 abstract class PagingStrategy<ID, M, S, P, R>
     where ID : Comparable<ID>,
@@ -40,6 +43,17 @@ abstract class PagingStrategy<ID, M, S, P, R>
         }
         .limit(page.sizeValue())
 
+    /**
+     * Condition limiting a query to the ordering values within [slice], for [com.razz.eva.paging.Pages] batches
+     * of keyset slices.
+     */
+    fun sliceCondition(slice: KeysetSlice<P>): Condition = DSL.and(
+        listOfNotNull(
+            slice.after?.let(tableOrdering()::gt),
+            slice.upTo?.let(tableOrdering()::le),
+        ),
+    )
+
     internal fun pagedList(list: List<R>, mapper: (R) -> M, pageSize: Size): PagedList<S, P> {
         val mapped = filter(list, mapper)
         return BasicPagedList(mapped, nextPage(mapped, pageSize))
@@ -0,0 +1,139 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.TestModel
+import com.razz.eva.domain.TestModel.Factory.existingCreatedTestModel
+import com.razz.eva.domain.TestModelId
+import com.razz.eva.domain.Version.Companion.V1
+import com.razz.eva.domain.Version.Companion.version
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset.UTC
+
+class CachingModelRepositorySpec : BehaviorSpec({
+
+    isolationMode = InstancePerLeaf
+
+    class MutableClock(var now: Instant) : Clock() {
+        override fun instant(): Instant = now
+        override fun getZone(): ZoneId = UTC
+        override fun withZone(zone: ZoneId?): Clock = this
+    }
+
+    class LoadingRepo(models: List<TestModel>) : ModelRepository<TestModelId, TestModel> {
+        val stored = models.associateBy { it.id() }.toMutableMap()
+        val found = mutableListOf<TestModelId>()
+        val listed = mutableListOf<Set<TestModelId>>()
+
+        override suspend fun find(id: TestModelId): TestModel? {
+            found += id
+            return stored[id]
+        }
+
+        override suspend fun list(ids: Collection<TestModelId>): List<TestModel> {
+            listed += ids.toSet()
+            return ids.mapNotNull(stored::get)
+        }
+
+        override suspend fun <ME : TestModel> add(context: TransactionalContext, model: ME): ME = model
+
+        override suspend fun <ME : TestModel> add(context: TransactionalContext, models: List<ME>): List<ME> = models
+
+        override suspend fun <ME : TestModel> update(context: TransactionalContext, model: ME): ME = model
+
+        override suspend fun <ME : TestModel> update(context: TransactionalContext, models: List<ME>): List<ME> =
+            models
+    }
+
+    val metricReader = InMemoryMetricReader.create()
+    val openTelemetry = OpenTelemetrySdk.builder()
+        .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+        .build()
+
+    fun counted(metric: String, attribute: String): Map<String?, Long> = metricReader.collectAllMetrics()
+        .filter { it.name == metric }
+        .flatMap { it.longSumData.points }
+        .associate { it.attributes.get(AttributeKey.stringKey(attribute)) to it.value }
+
+    val models = List(3) { existingCreatedTestModel(param1 = "cached", param2 = it.toLong(), version = V1) }
+    val clock = MutableClock(Instant.now())
+    val repo = LoadingRepo(models)
+    val cache = CachingModelRepository(repo, ModelCache(maxSize = 2, ttl = Duration.ofMinutes(1)), openTelemetry, clock)
+
+    Given("Model found through the cache") {
+        cache.find(models[0].id()) shouldBe models[0]
+
+        When("Model is found again") {
+            val found = cache.find(models[0].id())
+
+            Then("It is served from memory") {
+                found shouldBeSameInstanceAs models[0]
+                repo.found shouldBe listOf(models[0].id())
+                counted("model.cache.lookups", "result") shouldBe mapOf("miss" to 1L, "hit" to 1L)
+            }
+        }
+
+        When("Model is found after its ttl") {
+            clock.now = clock.now.plus(Duration.ofMinutes(2))
+            cache.find(models[0].id())
+
+            Then("It is loaded again") {
+                repo.found shouldBe listOf(models[0].id(), models[0].id())
+                counted("model.cache.evictions", "cause") shouldBe mapOf("expired" to 1L)
+            }
+        }
+
+        When("More models than the cache holds are found") {
+            cache.find(models[1].id())
+            cache.find(models[2].id())
+            cache.find(models[0].id())
+
+            Then("Least recently read model is evicted") {
+                repo.found shouldBe models.map { it.id() } + models[0].id()
+                counted("model.cache.evictions", "cause") shouldBe mapOf("size" to 2L)
+            }
+        }
+
+        When("Models are listed") {
+            val listed = cache.list(models.take(2).map { it.id() })
+
+            Then("Only missing models are loaded") {
+                listed.toSet() shouldBe models.take(2).toSet()
+                repo.listed shouldBe listOf(setOf(models[1].id()))
+            }
+        }
+
+        When("Model is updated") {
+            cache.update(TransactionalContext.transactionalContext(Instant.now()), models[0])
+            cache.find(models[0].id())
+
+            Then("It is evicted and loaded again") {
+                repo.found shouldBe listOf(models[0].id(), models[0].id())
+            }
+        }
+
+        When("Newer version of the model is persisted") {
+            val persisted = existingCreatedTestModel(models[0].id(), "persisted", 0, version(2))
+            ModelRepos(TestModel::class hasRepo cache).persisted(listOf(persisted))
+
+            Then("It replaces the cached one") {
+                cache.find(models[0].id()) shouldBeSameInstanceAs persisted
+                repo.found shouldBe listOf(models[0].id())
+            }
+
+            And("Older version read later does not replace it") {
+                ModelRepos(TestModel::class hasRepo cache).persisted(listOf(models[0]))
+                cache.find(models[0].id()) shouldBeSameInstanceAs persisted
+            }
+        }
+    }
+})
@@ -3,24 +3,34 @@ package com.razz.eva.repository
 import com.razz.eva.domain.Department.OwnedDepartment
 import com.razz.eva.domain.DepartmentEvent.OwnedDepartmentCreated
 import com.razz.eva.domain.DepartmentId.Companion.randomDepartmentId
+import com.razz.eva.domain.Employee.Companion.newEmployee
 import com.razz.eva.domain.EmployeeId
 import com.razz.eva.domain.ModelState.NewState.Companion.newState
+import com.razz.eva.domain.Name
 import com.razz.eva.domain.Ration.BUBALEH
 import com.razz.eva.domain.Ration.SHAKSHOUKA
 import com.razz.eva.domain.Version.Companion.V1
+import com.razz.eva.persistence.PersistenceException.StaleRecordException
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.BulkInsertExecuted
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.StoreExecuted
 import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
 import com.razz.eva.test.schema.enums.DepartmentsState
 import com.razz.eva.test.schema.tables.records.DepartmentsRecord
 import com.razz.jooq.converter.InstantConverter
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.BehaviorSpec
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
 import io.kotest.matchers.types.shouldBeTypeOf
+import io.opentelemetry.sdk.OpenTelemetrySdk
+import io.opentelemetry.sdk.metrics.SdkMeterProvider
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
 import org.jooq.SQLDialect.POSTGRES
 import org.jooq.conf.ParamType.INLINED
 import org.jooq.impl.DSL
 import java.time.Instant.now
+import java.util.UUID
 import java.util.UUID.randomUUID
 
 class JooqBaseRepositoryBatchingSpec : BehaviorSpec({
@@ -194,6 +204,29 @@ class JooqBaseRepositoryBatchingSpec : BehaviorSpec({
                 }
             }
 
+            And("Repository bulk inserting two models") {
+                val bulkRepo = DepartmentRepository(queryExecutor, dslContext, bulkInsertThreshold = 2)
+
+                When("Principal saving models") {
+                    val added = bulkRepo.add(addContext, listOf(dep1, dep2))
+
+                    Then("Query executor should receive records stamped as for insert") {
+                        val insert = queryExecutor.lastExecution.shouldBeTypeOf<BulkInsertExecuted>()
+                        insert.records.map { it as DepartmentsRecord }.forEach { record ->
+                            record.getRecordCreatedAt() shouldBe addContext.startedAt
+                            record.getRecordUpdatedAt() shouldBe addContext.startedAt
+                            record.getVersion() shouldBe V1.version
+                        }
+                    }
+
+                    Then("Models are built from the inserted records") {
+                        added.map { it.id() } shouldBe listOf(depId1, depId2)
+                        added.map { it.version() } shouldBe listOf(V1, V1)
+                        added.map { it.isNew() } shouldBe listOf(false, false)
+                    }
+                }
+            }
+
             And("Query executor accepts one model as batch update") {
                 queryExecutor.expectQueryFor(
                     DepartmentsRecord().apply {
@@ -303,52 +336,34 @@ class JooqBaseRepositoryBatchingSpec : BehaviorSpec({
                         listOf(addedDep1.rename("UPDATE TEST"), addedDep2.rename("UPDATE TEST 2")),
                     )
                     val recordUpdatedAt = InstantConverter.instance.to(updateContext.startedAt)
-                    val boss1 = requireNotNull(dep1.boss)
-                    val boss2 = requireNotNull(dep2.boss)
 
                     Then(
                         "Query executor should receive two records with RECORD_CREATED_AT and RECORD_UPDATED_AT" +
-                            " matching context.startedAt and V2",
+                            " matching context.startedAt and V2 and only the changed columns",
                     ) {
                         val update = queryExecutor.lastExecution.shouldBeTypeOf<StoreExecuted>()
                         update.jooqQuery.getSQL(INLINED) shouldBe """
                             update "departments" as "T" 
-                            set ("name", "boss", "headcount", "ration", "state", "record_updated_at", "version") 
+                            set ("name", "record_updated_at", "version") 
                             = row
                             ("U"."name",
-                            "U"."boss",
-                            "U"."headcount",
-                            "U"."ration",
-                            "U"."state",
                             "U"."record_updated_at",
                             "U"."version")
                             
                             from (values 
                                 (cast('${dep1.id().id}' as uuid),
                                 cast('UPDATE TEST' as text),
-                                cast('${boss1.id}' as uuid),
-                                cast(1 as int),
-                                cast('BUBALEH' as text),
-                                cast('OWNED' as "departments_state"),
                                 cast(timestamp '$recordUpdatedAt' as timestamp(6)),
                                 cast(2 as bigint)),
 
                                 (cast('${dep2.id().id}' as uuid),
                                 cast('UPDATE TEST 2' as text),
-                                cast('${boss2.id}' as uuid),
-                                cast(1 as int),
-                                cast('SHAKSHOUKA' as text),
-                                cast('OWNED' as "departments_state"),
                                 cast(timestamp '$recordUpdatedAt' as timestamp(6)),
                                 cast(2 as bigint)))
                                 
                             as "U"
                             ("id",
                             "name",
-                            "boss",
-                            "headcount",
-                            "ration",
-                            "state",
                             "record_updated_at",
                             "version")
                             
@@ -358,6 +373,107 @@ class JooqBaseRepositoryBatchingSpec : BehaviorSpec({
                     }
                 }
             }
+
+            And("Repository chunking updates by one row") {
+                val chunkingRepo = DepartmentRepository(queryExecutor, dslContext, maxBindParams = 4)
+                fun departmentRecord(id: UUID, name: String, ration: String, version: Long) =
+                    DepartmentsRecord().apply {
+                        setId(id)
+                        setName(name)
+                        setBoss(bossId1.id)
+                        setHeadcount(1)
+                        setRation(ration)
+                        setState(DepartmentsState.OWNED)
+                        setRecordUpdatedAt(addContext.startedAt)
+                        setRecordCreatedAt(addContext.startedAt)
+                        setVersion(version)
+                    }
+                queryExecutor.expectQueryFor(departmentRecord(depId1.id, dep1.name, BUBALEH.name, V1.version))
+                val addedDep1 = chunkingRepo.find(dep1.id()) as OwnedDepartment
+                queryExecutor.expectQueryFor(departmentRecord(depId2.id, dep2.name, SHAKSHOUKA.name, V1.version))
+                val addedDep2 = chunkingRepo.find(dep2.id()) as OwnedDepartment
+                val renamed = listOf(addedDep1.rename("UPDATE TEST"), addedDep2.rename("UPDATE TEST 2"))
+
+                When("Principal updating models and both rows are updated") {
+                    // expected results are taken in reverse order
+                    queryExecutor.expectQueryFor(departmentRecord(depId2.id, "UPDATE TEST 2", SHAKSHOUKA.name, 2))
+                    queryExecutor.expectQueryFor(departmentRecord(depId1.id, "UPDATE TEST", BUBALEH.name, 2))
+                    val updated = chunkingRepo.update(updateContext, renamed)
+
+                    Then("Every model goes in an update of its own") {
+                        val updates = queryExecutor.executionHistory.takeLast(2)
+                        updates.forEach { update ->
+                            val sql = update.shouldBeTypeOf<StoreExecuted>().jooqQuery.getSQL(INLINED)
+                            sql shouldContain "from (values ("
+                        }
+                        updated.map { it.name } shouldBe listOf("UPDATE TEST", "UPDATE TEST 2")
+                    }
+                }
+
+                When("Principal updating models and the row of the second chunk is stale") {
+                    queryExecutor.expectQueryFor()
+                    queryExecutor.expectQueryFor(departmentRecord(depId1.id, "UPDATE TEST", BUBALEH.name, 2))
+                    val attempt = suspend { chunkingRepo.update(updateContext, renamed) }
+
+                    Then("Stale record is found across chunks") {
+                        val ex = shouldThrow<StaleRecordException> { attempt() }
+                        ex.modelIds shouldBe setOf(depId2)
+                    }
+                }
+            }
+
+            And("Repository updating models which changed different columns") {
+                val metricReader = InMemoryMetricReader.create()
+                val openTelemetry = OpenTelemetrySdk.builder()
+                    .setMeterProvider(SdkMeterProvider.builder().registerMetricReader(metricReader).build())
+                    .build()
+                val measuredRepo = DepartmentRepository(queryExecutor, dslContext, openTelemetry = openTelemetry)
+                fun departmentRecord(id: UUID, name: String, headcount: Int, ration: String, version: Long) =
+                    DepartmentsRecord().apply {
+                        setId(id)
+                        setName(name)
+                        setBoss(bossId1.id)
+                        setHeadcount(headcount)
+                        setRation(ration)
+                        setState(DepartmentsState.OWNED)
+                        setRecordUpdatedAt(addContext.startedAt)
+                        setRecordCreatedAt(addContext.startedAt)
+                        setVersion(version)
+                    }
+                queryExecutor.expectQueryFor(departmentRecord(depId1.id, dep1.name, 1, BUBALEH.name, V1.version))
+                val addedDep1 = measuredRepo.find(dep1.id()) as OwnedDepartment
+                queryExecutor.expectQueryFor(departmentRecord(depId2.id, dep2.name, 1, SHAKSHOUKA.name, V1.version))
+                val addedDep2 = measuredRepo.find(dep2.id()) as OwnedDepartment
+                val employee = newEmployee(Name("Dan", "Shakshouka"), depId2, "dan@eva.dev", SHAKSHOUKA)
+
+                When("Principal updating renamed model and model with a new employee") {
+                    // expected results are taken in reverse order
+                    queryExecutor.expectQueryFor(departmentRecord(depId2.id, dep2.name, 2, SHAKSHOUKA.name, 2))
+                    queryExecutor.expectQueryFor(departmentRecord(depId1.id, "UPDATE TEST", 1, BUBALEH.name, 2))
+                    measuredRepo.update(
+                        updateContext,
+                        listOf(addedDep1.rename("UPDATE TEST"), addedDep2.addEmployee(employee)),
+                    )
+
+                    Then("Every set of changed columns goes in an update of its own") {
+                        val updates = queryExecutor.executionHistory.takeLast(2).map { update ->
+                            update.shouldBeTypeOf<StoreExecuted>().jooqQuery.getSQL(INLINED)
+                        }
+                        updates[0] shouldContain "set (\"name\", \"record_updated_at\", \"version\")"
+                        updates[1] shouldContain "set (\"headcount\", \"record_updated_at\", \"version\")"
+                    }
+
+                    Then("Columns left out of the updates are counted") {
+                        val metrics = metricReader.collectAllMetrics().associate { metric ->
+                            metric.name to metric.longSumData.points.single().value
+                        }
+                        metrics["model.update.skipped_columns"] shouldBe 8
+                        // boss, headcount, ration and state of the first model,
+                        // name, boss, ration and state of the second one
+                        metrics["model.update.skipped_bytes"] shouldBe 16 + 8 + 7 + 8 + 24 + 16 + 10 + 8
+                    }
+                }
+            }
         }
     }
 })
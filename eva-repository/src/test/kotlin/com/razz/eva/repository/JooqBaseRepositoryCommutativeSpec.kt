@@ -0,0 +1,121 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.Department.OwnedDepartment
+import com.razz.eva.domain.DepartmentId.Companion.randomDepartmentId
+import com.razz.eva.domain.Employee.Companion.newEmployee
+import com.razz.eva.domain.EmployeeId
+import com.razz.eva.domain.Name
+import com.razz.eva.domain.Ration.BUBALEH
+import com.razz.eva.domain.Version.Companion.V1
+import com.razz.eva.domain.Version.Companion.version
+import com.razz.eva.persistence.PersistenceException.StaleRecordException
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.StoreExecuted
+import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
+import com.razz.eva.test.schema.Tables.DEPARTMENTS
+import com.razz.eva.test.schema.enums.DepartmentsState
+import com.razz.eva.test.schema.tables.records.DepartmentsRecord
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import io.kotest.matchers.string.shouldNotContain
+import io.kotest.matchers.types.shouldBeTypeOf
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.conf.ParamType.INLINED
+import org.jooq.impl.DSL
+import java.time.Instant.now
+import java.util.UUID
+import java.util.UUID.randomUUID
+
+class JooqBaseRepositoryCommutativeSpec : BehaviorSpec({
+
+    Given("JooqBaseRepository with headcount declared commutative") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = DepartmentRepository(
+            queryExecutor,
+            dslContext,
+            commutativeFields = listOf(CommutativeField(DEPARTMENTS.HEADCOUNT) { headcount -> headcount.ge(1) }),
+        )
+        val findContext = transactionalContext(now())
+        val updateContext = transactionalContext(now())
+        val bossId = EmployeeId(randomUUID())
+
+        fun departmentRecord(id: UUID, name: String, headcount: Int, version: Long) = DepartmentsRecord().apply {
+            setId(id)
+            setName(name)
+            setBoss(bossId.id)
+            setHeadcount(headcount)
+            setRation(BUBALEH.name)
+            setState(DepartmentsState.OWNED)
+            setRecordUpdatedAt(findContext.startedAt)
+            setRecordCreatedAt(findContext.startedAt)
+            setVersion(version)
+        }
+
+        val depId = randomDepartmentId()
+        queryExecutor.expectQueryFor(departmentRecord(depId.id, "dep", 1, V1.version))
+        val dep = repo.find(depId) as OwnedDepartment
+        val employee = newEmployee(Name("Dan", "Bubaleh"), depId, "dan@eva.dev", BUBALEH)
+
+        When("Principal updating model changing only the headcount") {
+            queryExecutor.expectQueryFor(departmentRecord(depId.id, "dep", 5, 7))
+            val updated = repo.update(updateContext, dep.addEmployee(employee))
+
+            Then("Headcount is updated by its delta under the guard instead of the version check") {
+                val update = queryExecutor.lastExecution.shouldBeTypeOf<StoreExecuted>()
+                val sql = update.jooqQuery.getSQL(INLINED)
+                sql shouldContain "\"headcount\" = (\"departments\".\"headcount\" + 1)"
+                sql shouldContain "\"version\" = (\"departments\".\"version\" + 1)"
+                sql shouldContain "(\"departments\".\"headcount\" + 1) >= 1"
+                sql shouldNotContain "\"departments\".\"version\" = "
+                sql shouldNotContain "\"name\""
+            }
+
+            Then("Persisted model carries the stored headcount and version") {
+                updated.headcount shouldBe 5
+                updated.version() shouldBe version(7)
+            }
+        }
+
+        When("Principal updating model changing the headcount and the name") {
+            queryExecutor.expectQueryFor(departmentRecord(depId.id, "renamed", 2, 2))
+            repo.update(updateContext, dep.addEmployee(employee).rename("renamed"))
+
+            Then("Model is updated when its version matches") {
+                val update = queryExecutor.lastExecution.shouldBeTypeOf<StoreExecuted>()
+                update.jooqQuery.getSQL(INLINED) shouldContain "\"departments\".\"version\" = 1"
+            }
+        }
+
+        When("Principal updating model with the headcount guard violated") {
+            queryExecutor.expectQueryFor()
+            val attempt = suspend { repo.update(updateContext, dep.addEmployee(employee)) }
+
+            Then("Stale record exception is thrown") {
+                val ex = shouldThrow<StaleRecordException> { attempt() }
+                ex.modelIds shouldBe setOf(depId)
+            }
+        }
+
+        When("Principal updating models changing the headcount and the name") {
+            val otherDepId = randomDepartmentId()
+            queryExecutor.expectQueryFor(departmentRecord(otherDepId.id, "other", 1, V1.version))
+            val otherDep = repo.find(otherDepId) as OwnedDepartment
+            // expected results are taken in reverse order
+            queryExecutor.expectQueryFor(departmentRecord(otherDepId.id, "renamed", 1, 2))
+            queryExecutor.expectQueryFor(departmentRecord(depId.id, "dep", 2, 2))
+            val updated = repo.update(updateContext, listOf(dep.addEmployee(employee), otherDep.rename("renamed")))
+
+            Then("Headcount change goes in an update by delta and the name in a versioned one") {
+                val updates = queryExecutor.executionHistory.takeLast(2).map { update ->
+                    update.shouldBeTypeOf<StoreExecuted>().jooqQuery.getSQL(INLINED)
+                }
+                updates[0] shouldContain "(\"departments\".\"headcount\" + 1) >= 1"
+                updates[1] shouldContain "from (values ("
+                updated.map { it.id() } shouldBe listOf(depId, otherDepId)
+            }
+        }
+    }
+})
@@ -0,0 +1,62 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.DepartmentId
+import com.razz.eva.domain.EmployeeId
+import com.razz.eva.domain.Ration.BUBALEH
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.SelectExecuted
+import com.razz.eva.test.schema.tables.records.EmployeesRecord
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeTypeOf
+import kotlinx.coroutines.flow.toList
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.conf.ParamType.INLINED
+import org.jooq.impl.DSL
+import java.time.Instant
+import java.util.UUID.randomUUID
+
+class JooqBaseRepositoryStreamWhereSpec : BehaviorSpec({
+    Given("JooqBaseModelRepository with hacked queryExecutor") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+
+        val repo = EmployeeRepository(queryExecutor, dslContext)
+
+        When("Query executor streams records of the department") {
+            val departmentId = DepartmentId(randomUUID())
+            val employeeIds = List(3) { EmployeeId(randomUUID()) }
+            val now = Instant.now()
+            queryExecutor.expectQueryFor(
+                *employeeIds.map { id ->
+                    EmployeesRecord(id.id, "Rick", "Sanchez", departmentId.id, "rick@c137", BUBALEH.name, now, now, 1L)
+                }.toTypedArray(),
+            )
+
+            val streamed = repo.streamByDepartment(departmentId).toList()
+
+            Then("Every record is mapped to a model") {
+                streamed.map { it.id() } shouldBe employeeIds
+                streamed.map { it.departmentId }.toSet() shouldBe setOf(departmentId)
+            }
+
+            Then("Query executor receives a select without limit") {
+                val select = queryExecutor.lastExecution.shouldBeTypeOf<SelectExecuted>()
+                select.jooqQuery.getSQL(INLINED) shouldBe """
+                    select "employees"."id",
+                           "employees"."first_name",
+                           "employees"."last_name",
+                           "employees"."department_id",
+                           "employees"."email",
+                           "employees"."ration",
+                           "employees"."record_updated_at",
+                           "employees"."record_created_at",
+                           "employees"."version"
+                    from "employees"
+                    where "employees"."department_id" = cast('${departmentId.id}' as uuid)
+                    order by "employees"."id" asc
+                """.trim().replace(Regex("\\s+"), " ")
+            }
+        }
+    }
+})
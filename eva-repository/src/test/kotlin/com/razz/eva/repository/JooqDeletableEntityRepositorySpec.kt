@@ -0,0 +1,156 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.Tag
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.QueryExecuted
+import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
+import com.razz.eva.test.schema.tables.records.TagRecord
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeTypeOf
+import org.jooq.Condition
+import org.jooq.DSLContext
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.TableField
+import org.jooq.conf.ParamType.INLINED
+import org.jooq.impl.DSL
+import java.time.Instant.now
+import java.util.UUID.randomUUID
+import com.razz.eva.test.schema.tables.Tag as TagTable
+
+class JooqDeletableEntityRepositorySpec : BehaviorSpec({
+
+    class SubjectTagRepository(
+        queryExecutor: QueryExecutor,
+        dslContext: DSLContext,
+    ) : JooqDeletableEntityRepository<Tag, TagRecord>(queryExecutor, dslContext, TagTable.TAG) {
+
+        override fun toRecord(entity: Tag) = TagRecord(entity.subjectId, entity.name, entity.value)
+
+        override fun fromRecord(record: TagRecord) = Tag(record.subjectId, record.name, record.value)
+
+        override fun entityCondition(entity: Tag): Condition = TagTable.TAG.SUBJECT_ID.eq(entity.subjectId)
+
+        override fun entityKey(): List<TableField<TagRecord, *>> = listOf(TagTable.TAG.SUBJECT_ID)
+
+        override fun maxBindParams() = 2
+    }
+
+    class UnkeyedTagRepository(
+        queryExecutor: QueryExecutor,
+        dslContext: DSLContext,
+    ) : JooqDeletableEntityRepository<Tag, TagRecord>(queryExecutor, dslContext, TagTable.TAG) {
+
+        override fun toRecord(entity: Tag) = TagRecord(entity.subjectId, entity.name, entity.value)
+
+        override fun fromRecord(record: TagRecord) = Tag(record.subjectId, record.name, record.value)
+
+        override fun entityCondition(entity: Tag): Condition =
+            TagTable.TAG.SUBJECT_ID.eq(entity.subjectId).and(TagTable.TAG.NAME.eq(entity.name))
+    }
+
+    Given("JooqDeletableEntityRepository with hacked queryExecutor") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = TagRepository(queryExecutor, dslContext)
+        val context = transactionalContext(now())
+
+        val subjectId = randomUUID()
+        val color = Tag(subjectId, "color", "green")
+        val size = Tag(subjectId, "size", "XL")
+
+        When("Principal deleting entities") {
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"), TagRecord(subjectId, "size", "XL"))
+            repo.delete(context, listOf(color, size))
+
+            Then("Query executor receives one delete using the keys as values") {
+                val delete = queryExecutor.lastExecution.shouldBeTypeOf<QueryExecuted>()
+                delete.jooqQuery.getSQL(INLINED) shouldBe """
+                    delete from "tag" as "T"
+                    using (values
+                    (cast('$subjectId' as uuid), cast('color' as text)),
+                    (cast('$subjectId' as uuid), cast('size' as text))
+                    ) as "U" ("subject_id", "name")
+                    where ("U"."subject_id" = "T"."subject_id" and "U"."name" = "T"."name")
+                """.trim().replace(Regex("\\s+"), " ")
+                    .replace("( ", "(")
+                    .replace(" )", ")")
+            }
+        }
+
+        When("Principal deleting entities by keys") {
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"))
+            val keys = listOf(Tag.Key(subjectId, "color"), Tag.Key(subjectId, "size"), Tag.Key(subjectId, "color"))
+            repo.delete(context, keys)
+
+            Then("Query executor receives one delete using every key once") {
+                val delete = queryExecutor.lastExecution.shouldBeTypeOf<QueryExecuted>()
+                delete.jooqQuery.getSQL(INLINED) shouldBe """
+                    delete from "tag" as "T"
+                    using (values
+                    (cast('$subjectId' as uuid), cast('color' as text)),
+                    (cast('$subjectId' as uuid), cast('size' as text))
+                    ) as "U" ("subject_id", "name")
+                    where ("U"."subject_id" = "T"."subject_id" and "U"."name" = "T"."name")
+                """.trim().replace(Regex("\\s+"), " ")
+                    .replace("( ", "(")
+                    .replace(" )", ")")
+            }
+        }
+    }
+
+    Given("JooqDeletableEntityRepository keyed by a single column with a budget of two bind parameters") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = SubjectTagRepository(queryExecutor, dslContext)
+        val context = transactionalContext(now())
+
+        val subjectIds = List(3) { randomUUID() }
+
+        When("Principal deleting entities of three subjects") {
+            queryExecutor.expectQueryFor(TagRecord(subjectIds[2], "color", "green"))
+            queryExecutor.expectQueryFor(
+                TagRecord(subjectIds[0], "color", "green"),
+                TagRecord(subjectIds[1], "color", "green"),
+            )
+            repo.delete(context, subjectIds.map { subjectId -> Tag(subjectId, "color", "green") })
+
+            Then("Query executor receives a delete matching any of the keys per chunk") {
+                queryExecutor.executionHistory.map {
+                    it.shouldBeTypeOf<QueryExecuted>().jooqQuery.getSQL(INLINED)
+                } shouldBe subjectIds.chunked(2).map { chunk ->
+                    """delete from "tag" where "tag"."subject_id" = any (cast('{${
+                        chunk.joinToString(",") { "\"$it\"" }
+                    }}' as uuid[]))"""
+                }
+            }
+        }
+    }
+
+    Given("JooqDeletableEntityRepository not declaring an entity key") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = UnkeyedTagRepository(queryExecutor, dslContext)
+        val context = transactionalContext(now())
+
+        val subjectId = randomUUID()
+
+        When("Principal deleting entities") {
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"), TagRecord(subjectId, "size", "XL"))
+            repo.delete(context, listOf(Tag(subjectId, "color", "green"), Tag(subjectId, "size", "XL")))
+
+            Then("Query executor receives one delete of the entity conditions joined with or") {
+                val delete = queryExecutor.lastExecution.shouldBeTypeOf<QueryExecuted>()
+                delete.jooqQuery.getSQL(INLINED) shouldBe """
+                    delete from "tag" where (
+                    ("tag"."subject_id" = cast('$subjectId' as uuid) and "tag"."name" = 'color')
+                    or ("tag"."subject_id" = cast('$subjectId' as uuid) and "tag"."name" = 'size')
+                    )
+                """.trim().replace(Regex("\\s+"), " ")
+                    .replace("( ", "(")
+                    .replace(" )", ")")
+            }
+        }
+    }
+})
@@ -20,6 +20,8 @@ import com.razz.eva.events.db.tables.records.UowEventsRecord
 import com.razz.eva.persistence.PersistenceException
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.QueryExecuted
+import com.razz.eva.repository.JooqEventRepository.PayloadFormat.CBOR
+import com.razz.eva.serialization.cbor.CborFormat
 import com.razz.eva.serialization.json.JsonFormat.json
 import com.razz.eva.test.tracing.OpenTelemetryTestConfiguration
 import com.razz.eva.tracing.use
@@ -27,6 +29,7 @@ import com.razz.eva.uow.params.kotlinx.UowParams
 import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.BehaviorSpec
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldNotContain
 import io.opentelemetry.context.Context
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.json.Json.Default.parseToJsonElement
@@ -373,6 +376,33 @@ class JooqEventRepositorySpec : BehaviorSpec({
                 exception.maxEventPayloadSize shouldBe 100
             }
         }
+
+        When("preparing an event with a payload size exceeding the maxEventPayloadSize") {
+            val params = Params(1, "Nik", IdempotencyKey.random())
+            val uowEvent = UowEvent(
+                id = UowEvent.Id(randomUUID()),
+                uowName = UowName("TestUow"),
+                principal = TestPrincipal,
+                modelEvents = listOf(
+                    ModelEventId.random() to OrphanedDepartmentCreated(
+                        randomDepartmentId(),
+                        "Engineering".repeat(100),
+                        1_333,
+                        Ration.SHAKSHOUKA,
+                    ),
+                ),
+                idempotencyKey = params.idempotencyKey,
+                params = json.encodeToString(params.serialization(), params),
+                occurredAt = now,
+            )
+
+            val attempt = { eventRepo.prepare(uowEvent) }
+
+            Then("it should reject the event before any query is executed") {
+                shouldThrow<PersistenceException.EventPayloadTooLargeException>(attempt)
+                queryExecutor.executionHistory shouldBe listOf()
+            }
+        }
     }
 
     Given("an sqlEventRepository with maxParamsSize set to 64 bytes") {
@@ -459,4 +489,54 @@ class JooqEventRepositorySpec : BehaviorSpec({
             }
         }
     }
+
+    Given("an sqlEventRepository storing payloads as cbor") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val eventRepo = JooqEventRepository(queryExecutor, dslContext, payloadFormat = CBOR)
+
+        When("inserting an uow event with a model event") {
+            val params = Params(1, "Nik", IdempotencyKey.random())
+            val uowEvent = UowEvent(
+                id = UowEvent.Id(randomUUID()),
+                uowName = UowName("TestUow"),
+                principal = TestPrincipal,
+                modelEvents = listOf(
+                    ModelEventId.random() to OrphanedDepartmentCreated(
+                        randomDepartmentId(),
+                        "Engineering",
+                        1_333,
+                        Ration.SHAKSHOUKA,
+                    ),
+                ),
+                idempotencyKey = params.idempotencyKey,
+                params = json.encodeToString(params.serialization(), params),
+                occurredAt = now,
+            )
+            eventRepo.add(uowEvent)
+
+            Then("model event should carry cbor payload bytes instead of json text") {
+                val insert = queryExecutor.executionHistory.last() as QueryExecuted
+                val payloads = insert.jooqQuery.bindValues.filterIsInstance<ByteArray>()
+
+                insert.jooqQuery.getSQL() shouldNotContain "\"payload\""
+                payloads.map(CborFormat::decode) shouldBe listOf(
+                    parseToJsonElement(
+                        """
+                        {
+                            "principalId":"THIS_IS_SINGLETON",
+                            "principalName":"TEST_PRINCIPAL",
+                            "principalContext": {
+                              "AGENT":"Mozilla/5.0 (X11; Linux x86_64)"
+                            },
+                            "name":"Engineering",
+                            "headcount":1333,
+                            "ration":"SHAKSHOUKA"
+                        }
+                        """,
+                    ),
+                )
+            }
+        }
+    }
 })
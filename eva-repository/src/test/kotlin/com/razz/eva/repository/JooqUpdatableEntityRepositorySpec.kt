@@ -0,0 +1,134 @@
+package com.razz.eva.repository
+
+import com.razz.eva.domain.Tag
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.StoreExecuted
+import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
+import com.razz.eva.test.schema.tables.records.TagRecord
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeTypeOf
+import org.jooq.Condition
+import org.jooq.DSLContext
+import org.jooq.SQLDialect.POSTGRES
+import org.jooq.conf.ParamType.INLINED
+import org.jooq.impl.DSL
+import java.time.Instant.now
+import java.util.UUID.randomUUID
+import com.razz.eva.test.schema.tables.Tag as TagTable
+
+class JooqUpdatableEntityRepositorySpec : BehaviorSpec({
+
+    class UnkeyedTagRepository(
+        queryExecutor: QueryExecutor,
+        dslContext: DSLContext,
+    ) : JooqUpdatableEntityRepository<Tag, TagRecord>(queryExecutor, dslContext, TagTable.TAG) {
+
+        override fun toRecord(entity: Tag) = TagRecord(entity.subjectId, entity.name, entity.value)
+
+        override fun fromRecord(record: TagRecord) = Tag(record.subjectId, record.name, record.value)
+
+        override fun entityCondition(entity: Tag): Condition =
+            TagTable.TAG.SUBJECT_ID.eq(entity.subjectId).and(TagTable.TAG.NAME.eq(entity.name))
+    }
+
+    Given("JooqUpdatableEntityRepository with hacked queryExecutor") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = TagRepository(queryExecutor, dslContext)
+        val context = transactionalContext(now())
+
+        val subjectId = randomUUID()
+        val color = Tag(subjectId, "color", "green")
+        val size = Tag(subjectId, "size", "XL")
+
+        When("Principal updating entities and every row is updated") {
+            queryExecutor.expectQueryFor(
+                TagRecord(subjectId, "size", "XL"),
+                TagRecord(subjectId, "color", "green"),
+            )
+            val updated = repo.update(context, listOf(color, size))
+
+            Then("Query executor receives one update matching entities by key") {
+                queryExecutor.executionHistory.size shouldBe 1
+                val update = queryExecutor.lastExecution.shouldBeTypeOf<StoreExecuted>()
+                update.jooqQuery.getSQL(INLINED) shouldBe """
+                    update "tag" as "T"
+                    set ("value") = row ("U"."value")
+                    from (values
+                    (cast('$subjectId' as uuid), cast('color' as text), cast('green' as text)),
+                    (cast('$subjectId' as uuid), cast('size' as text), cast('XL' as text))
+                    ) as "U" ("subject_id", "name", "value")
+                    where ("U"."subject_id" = "T"."subject_id" and "U"."name" = "T"."name")
+                """.trim().replace(Regex("\\s+"), " ")
+                    .replace("( ", "(")
+                    .replace(" )", ")")
+            }
+
+            Then("Updated entities come in the order they were given") {
+                updated shouldBe listOf(color, size)
+            }
+        }
+
+        When("Principal updating entities and one of them is not found") {
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"))
+            val attempt = suspend { repo.update(context, listOf(color, size)) }
+
+            Then("Missing entity is reported by its key") {
+                shouldThrow<IllegalStateException> { attempt() }.message shouldBe
+                    "1 of 2 entities not found for update: (subject_id=$subjectId, name=size)"
+            }
+        }
+
+        When("Principal updating the same entity twice") {
+            val recolored = color.copy(value = "red")
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "red"))
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"))
+            val updated = repo.update(context, listOf(color, recolored))
+
+            Then("Entity is updated one update after another") {
+                queryExecutor.executionHistory.takeLast(2).map {
+                    it.shouldBeTypeOf<StoreExecuted>().jooqQuery.getSQL(INLINED)
+                } shouldBe listOf("green", "red").map { value ->
+                    """
+                    update "tag" set "subject_id" = cast('$subjectId' as uuid), "name" = 'color', "value" = '$value'
+                    where ("tag"."subject_id" = cast('$subjectId' as uuid) and "tag"."name" = 'color')
+                    """.trim().replace(Regex("\\s+"), " ")
+                }
+                updated shouldBe listOf(color, recolored)
+            }
+        }
+    }
+
+    Given("JooqUpdatableEntityRepository not declaring an entity key") {
+        val dslContext = DSL.using(POSTGRES)
+        val queryExecutor = FakeMemorizingQueryExecutor()
+        val repo = UnkeyedTagRepository(queryExecutor, dslContext)
+        val context = transactionalContext(now())
+
+        val subjectId = randomUUID()
+        val color = Tag(subjectId, "color", "green")
+        val size = Tag(subjectId, "size", "XL")
+
+        When("Principal updating entities") {
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "size", "XL"))
+            queryExecutor.expectQueryFor(TagRecord(subjectId, "color", "green"))
+            val updated = repo.update(context, listOf(color, size))
+
+            Then("Entities are updated one by one by their conditions") {
+                queryExecutor.executionHistory.map {
+                    it.shouldBeTypeOf<StoreExecuted>().jooqQuery.getSQL(INLINED)
+                } shouldBe listOf(color, size).map { tag ->
+                    """
+                    update "tag" set "subject_id" = cast('$subjectId' as uuid), "name" = '${tag.name}',
+                    "value" = '${tag.value}'
+                    where ("tag"."subject_id" = cast('$subjectId' as uuid) and "tag"."name" = '${tag.name}')
+                    """.trim().replace(Regex("\\s+"), " ")
+                }
+                updated shouldBe listOf(color, size)
+            }
+        }
+    }
+})
@@ -11,6 +11,7 @@ import com.razz.eva.domain.EmployeeId
 import com.razz.eva.domain.ModelState.PersistentState.Companion.persistentState
 import com.razz.eva.domain.Version.Companion.V1
 import com.razz.eva.paging.BasicPagedList
+import com.razz.eva.paging.KeysetSlice
 import com.razz.eva.paging.Offset
 import com.razz.eva.paging.Page
 import com.razz.eva.paging.Page.Factory.firstPage
@@ -170,6 +171,23 @@ class PagingStrategySpec : BehaviorSpec({
                     }
                 }
             }
+
+            And("Keyset slices") {
+                val boundary = Instant.parse("2021-01-01T00:00:00Z")
+                val (lower, upper) = KeysetSlice.split(listOf(boundary))
+
+                When("Principal generates slice conditions") {
+                    val lowerCondition = DSL.using(POSTGRES).renderInlined(strategy.sliceCondition(lower))
+                    val upperCondition = DSL.using(POSTGRES).renderInlined(strategy.sliceCondition(upper))
+
+                    Then("Slices split the ordering at the boundary") {
+                        lowerCondition shouldBe
+                            "\"bubalehs\".\"produced_on\" <= timestamp '2021-01-01 00:00:00.0'"
+                        upperCondition shouldBe
+                            "\"bubalehs\".\"produced_on\" > timestamp '2021-01-01 00:00:00.0'"
+                    }
+                }
+            }
         }
     }
 })
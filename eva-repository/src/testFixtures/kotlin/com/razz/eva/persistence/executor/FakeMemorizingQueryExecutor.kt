@@ -2,6 +2,7 @@ package com.razz.eva.persistence.executor
 
 import com.razz.eva.domain.ModelId
 import com.razz.eva.persistence.PersistenceException
+import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.BulkInsertExecuted
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.QueryExecuted
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.SelectExecuted
 import com.razz.eva.persistence.executor.FakeMemorizingQueryExecutor.ExecutionStep.StoreExecuted
@@ -69,6 +70,15 @@ class FakeMemorizingQueryExecutor(
             .execute(jooqQuery.getSQL(INLINED))
     }
 
+    override suspend fun <R : Record> executeBulkInsert(
+        dslContext: DSLContext,
+        table: Table<R>,
+        records: List<R>,
+    ): Int {
+        executions += BulkInsertExecuted(dslContext, table, records)
+        return records.size
+    }
+
     override fun extractConstraintName(ex: Exception): Constraint? = null
 
     override fun extractUniqueConstraintName(ex: Exception, table: Table<*>): Constraint? = null
@@ -95,6 +105,12 @@ class FakeMemorizingQueryExecutor(
             val dslContext: DSLContext,
             val jooqQuery: DMLQuery<out Record>,
         ) : ExecutionStep()
+
+        data class BulkInsertExecuted(
+            val dslContext: DSLContext,
+            val table: Table<out Record>,
+            val records: List<Record>,
+        ) : ExecutionStep()
     }
 
     class MockProvider(private val queries: Deque<List<TableRecord<*>>> = ArrayDeque()) : MockDataProvider {
@@ -102,6 +118,8 @@ class FakeMemorizingQueryExecutor(
         override fun execute(ctx: MockExecuteContext): Array<MockResult> {
             return when (val q = queries.pollFirst()) {
                 null -> arrayOf()
+                // a query expected to return no rows
+                emptyList<TableRecord<*>>() -> arrayOf(MockResult(0, DSL.using(POSTGRES).newResult()))
                 else -> {
                     val result = DSL.using(q.first().configuration()).newResult(*q.first().getTable().fields())
                     q.forEach { result.add(it) }
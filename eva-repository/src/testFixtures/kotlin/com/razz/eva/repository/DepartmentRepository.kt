@@ -14,6 +14,7 @@ import com.razz.eva.test.schema.enums.DepartmentsState
 import com.razz.eva.test.schema.enums.DepartmentsState.ORPHANED
 import com.razz.eva.test.schema.enums.DepartmentsState.OWNED
 import com.razz.eva.test.schema.tables.records.DepartmentsRecord
+import io.opentelemetry.api.OpenTelemetry
 import java.util.UUID
 import org.jooq.Condition
 import org.jooq.DSLContext
@@ -21,16 +22,27 @@ import org.jooq.DSLContext
 class DepartmentRepository(
     queryExecutor: QueryExecutor,
     dslContext: DSLContext,
-    preUpdate: PreModifyCallback<UUID, DepartmentId, Department<*>> = PreModifyCallback()
+    preUpdate: PreModifyCallback<UUID, DepartmentId, Department<*>> = PreModifyCallback(),
+    private val bulkInsertThreshold: Int = Int.MAX_VALUE,
+    private val maxBindParams: Int = QueryExecutor.MAX_BIND_PARAMS,
+    private val commutativeFields: List<CommutativeField<DepartmentsRecord, *>> = listOf(),
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : HackedRepository<
     UUID, DepartmentId, Department<*>, DepartmentEvent, DepartmentsRecord, DepartmentsState
     >(
     queryExecutor,
     dslContext,
     DEPARTMENTS,
-    preUpdate
+    preUpdate,
+    openTelemetry,
 ) {
 
+    override fun bulkInsertThreshold() = bulkInsertThreshold
+
+    override fun maxBindParams() = maxBindParams
+
+    override fun commutativeFields() = commutativeFields
+
     override fun partitionCond(model: Department<*>): Condition {
         return DEPARTMENTS.RATION.eq(model.ration.name)
     }
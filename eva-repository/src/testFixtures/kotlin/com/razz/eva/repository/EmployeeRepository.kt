@@ -10,6 +10,7 @@ import com.razz.eva.domain.Ration
 import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.eva.test.schema.Tables.EMPLOYEES
 import com.razz.eva.test.schema.tables.records.EmployeesRecord
+import kotlinx.coroutines.flow.Flow
 import org.jooq.DSLContext
 import java.util.UUID
 
@@ -50,6 +51,10 @@ class EmployeeRepository(
         return findAllWhere(condition = EMPLOYEES.DEPARTMENT_ID.eq(departmentId.id), limit = 10_000)
     }
 
+    fun streamByDepartment(departmentId: DepartmentId): Flow<Employee> {
+        return streamWhere(EMPLOYEES.DEPARTMENT_ID.eq(departmentId.id), EMPLOYEES.ID.asc(), fetchSize = 100)
+    }
+
     suspend fun findByDepartments(
         departmentIds: List<DepartmentId>,
     ): Map<DepartmentId, List<Employee>> {
@@ -14,6 +14,7 @@ import com.razz.eva.events.db.tables.UowEvents.UOW_EVENTS
 import com.razz.eva.events.db.tables.records.ModelEventsRecord
 import com.razz.eva.events.db.tables.records.UowEventsRecord
 import com.razz.eva.persistence.executor.QueryExecutor
+import com.razz.eva.serialization.cbor.CborFormat
 import com.razz.eva.serialization.json.JsonFormat.json
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.JsonObject
@@ -45,7 +46,7 @@ class EventQueries(
             modelId = ModelId(record.modelId),
             modelName = ModelName(record.modelName),
             occurredAt = record.occurredAt,
-            payload = json.parseToJsonElement(record.payload).jsonObject
+            payload = (record.payloadBin?.let(CborFormat::decode) ?: json.parseToJsonElement(record.payload)).jsonObject
         ) to Json.parseToJsonElement(record.tracingContext).jsonObject
 
     suspend fun getUowEvent(idempotencyKey: IdempotencyKey): PersistedUowEvent {
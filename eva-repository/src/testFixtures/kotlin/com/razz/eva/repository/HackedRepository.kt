@@ -5,6 +5,7 @@ import com.razz.eva.domain.ModelEvent
 import com.razz.eva.domain.ModelId
 import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.jooq.record.TypedStatefulModelRecord
+import io.opentelemetry.api.OpenTelemetry
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.launch
 import org.jooq.DSLContext
@@ -28,12 +29,14 @@ abstract class HackedRepository<ID, MID, M, ME, R, S>(
     queryExecutor: QueryExecutor,
     dslContext: DSLContext,
     table: Table<R>,
-    private val preUpdate: PreModifyCallback<ID, MID, M>
+    private val preUpdate: PreModifyCallback<ID, MID, M>,
+    openTelemetry: OpenTelemetry = OpenTelemetry.noop(),
 ) : JooqStatefulModelRepository<ID, MID, M, ME, R, S>(
     queryExecutor = queryExecutor,
     dslContext = dslContext,
     table = table,
     stripNotModifiedFields = true,
+    openTelemetry = openTelemetry,
 ) where ID : Comparable<ID>,
         MID : ModelId<ID>,
         ME : ModelEvent<MID>,
@@ -5,6 +5,7 @@ import com.razz.eva.persistence.executor.QueryExecutor
 import com.razz.eva.test.schema.tables.records.TagRecord
 import org.jooq.Condition
 import org.jooq.DSLContext
+import org.jooq.TableField
 import java.util.UUID
 import com.razz.eva.test.schema.tables.Tag as TagTable
 
@@ -23,10 +24,14 @@ class TagRepository(
         TagTable.TAG.SUBJECT_ID.eq(entity.subjectId)
             .and(TagTable.TAG.NAME.eq(entity.name))
 
+    override fun entityKey(): List<TableField<TagRecord, *>> = listOf(TagTable.TAG.SUBJECT_ID, TagTable.TAG.NAME)
+
     override fun keyCondition(key: Tag.Key): Condition =
         TagTable.TAG.SUBJECT_ID.eq(key.subjectId)
             .and(TagTable.TAG.NAME.eq(key.name))
 
+    override fun keyValues(key: Tag.Key): List<Any?> = listOf(key.subjectId, key.name)
+
     suspend fun listBySubject(subjectId: UUID): List<Tag> =
         listAllWhere(TagTable.TAG.SUBJECT_ID.eq(subjectId), limit = 1_000)
 
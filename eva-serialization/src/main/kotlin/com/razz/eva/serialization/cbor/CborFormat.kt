@@ -0,0 +1,214 @@
+package com.razz.eva.serialization.cbor
+
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonArray
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.booleanOrNull
+import kotlinx.serialization.json.longOrNull
+import java.io.ByteArrayOutputStream
+import java.math.BigDecimal
+
+/**
+ * Encodes json elements as CBOR (RFC 8949) and decodes them back, for payloads stored as bytes instead of json text.
+ *
+ * Integers take the shortest form, other numbers are written as doubles when that keeps their value,
+ * and as their json text tagged as embedded json otherwise, so no number loses precision.
+ * Only definite length items are read, as only those are written.
+ */
+object CborFormat {
+
+    fun encode(element: JsonElement): ByteArray {
+        val out = ByteArrayOutputStream()
+        out.write(element)
+        return out.toByteArray()
+    }
+
+    fun decode(bytes: ByteArray): JsonElement {
+        val reader = Reader(bytes)
+        val element = reader.element()
+        require(reader.exhausted()) { "Unexpected ${bytes.size - reader.position} trailing bytes of cbor" }
+        return element
+    }
+
+    private fun ByteArrayOutputStream.write(element: JsonElement) {
+        when (element) {
+            is JsonNull -> write(NULL)
+            is JsonPrimitive -> write(element)
+            is JsonArray -> {
+                head(ARRAY, element.size.toLong())
+                element.forEach { write(it) }
+            }
+            is JsonObject -> {
+                head(MAP, element.size.toLong())
+                element.forEach { (key, value) ->
+                    text(key)
+                    write(value)
+                }
+            }
+        }
+    }
+
+    private fun ByteArrayOutputStream.write(primitive: JsonPrimitive) {
+        if (primitive.isString) return text(primitive.content)
+        val boolean = primitive.booleanOrNull
+        val long = primitive.longOrNull
+        val double = primitive.content.toDoubleOrNull()?.takeIf { it.isFinite() }
+        when {
+            boolean != null -> write(if (boolean) TRUE else FALSE)
+            long != null && long >= 0 -> head(UNSIGNED, long)
+            long != null -> head(NEGATIVE, -1 - long)
+            double != null && BigDecimal(primitive.content).compareTo(BigDecimal(double.toString())) == 0 -> {
+                write(DOUBLE)
+                bytes(double.toRawBits(), Long.SIZE_BYTES)
+            }
+            else -> {
+                head(TAG, EMBEDDED_JSON)
+                text(primitive.content)
+            }
+        }
+    }
+
+    private fun ByteArrayOutputStream.text(text: String) {
+        val bytes = text.encodeToByteArray()
+        head(TEXT, bytes.size.toLong())
+        write(bytes)
+    }
+
+    private fun ByteArrayOutputStream.head(major: Int, argument: Long) {
+        val type = major shl MAJOR_SHIFT
+        when {
+            argument < ONE_BYTE_ARGUMENT -> write(type or argument.toInt())
+            argument <= UByte.MAX_VALUE.toLong() -> {
+                write(type or ONE_BYTE_ARGUMENT)
+                bytes(argument, Byte.SIZE_BYTES)
+            }
+            argument <= UShort.MAX_VALUE.toLong() -> {
+                write(type or TWO_BYTES_ARGUMENT)
+                bytes(argument, Short.SIZE_BYTES)
+            }
+            argument <= UInt.MAX_VALUE.toLong() -> {
+                write(type or FOUR_BYTES_ARGUMENT)
+                bytes(argument, Int.SIZE_BYTES)
+            }
+            else -> {
+                write(type or EIGHT_BYTES_ARGUMENT)
+                bytes(argument, Long.SIZE_BYTES)
+            }
+        }
+    }
+
+    private fun ByteArrayOutputStream.bytes(value: Long, count: Int) {
+        for (i in count - 1 downTo 0) {
+            write((value ushr (i * Byte.SIZE_BITS)).toInt() and BYTE_MASK)
+        }
+    }
+
+    private class Reader(private val bytes: ByteArray) {
+        var position = 0
+            private set
+
+        fun exhausted() = position == bytes.size
+
+        fun element(): JsonElement {
+            val initial = byte()
+            val major = initial ushr MAJOR_SHIFT
+            val info = initial and INFO_MASK
+            if (major == SIMPLE) return simple(info)
+            val argument = argument(info)
+            return when (major) {
+                UNSIGNED -> JsonPrimitive(argument)
+                NEGATIVE -> JsonPrimitive(-1 - argument)
+                TEXT -> JsonPrimitive(text(argument))
+                ARRAY -> JsonArray(List(length(argument)) { element() })
+                MAP -> {
+                    val size = length(argument)
+                    JsonObject(
+                        buildMap(size) {
+                            repeat(size) {
+                                val key = element()
+                                require(key is JsonPrimitive && key.isString) { "Cbor map key must be a text string" }
+                                put(key.content, element())
+                            }
+                        },
+                    )
+                }
+                TAG -> {
+                    require(argument == EMBEDDED_JSON) { "Unsupported cbor tag $argument" }
+                    val content = element()
+                    require(content is JsonPrimitive && content.isString) { "Embedded json must be a text string" }
+                    Json.parseToJsonElement(content.content)
+                }
+                else -> throw IllegalArgumentException("Unsupported cbor major type $major")
+            }
+        }
+
+        private fun simple(info: Int): JsonElement = when (info) {
+            FALSE and INFO_MASK -> JsonPrimitive(false)
+            TRUE and INFO_MASK -> JsonPrimitive(true)
+            NULL and INFO_MASK -> JsonNull
+            DOUBLE and INFO_MASK -> JsonPrimitive(Double.fromBits(long(Long.SIZE_BYTES)))
+            FLOAT and INFO_MASK -> JsonPrimitive(Float.fromBits(long(Int.SIZE_BYTES).toInt()))
+            else -> throw IllegalArgumentException("Unsupported cbor simple value $info")
+        }
+
+        private fun argument(info: Int): Long = when (info) {
+            in 0..<ONE_BYTE_ARGUMENT -> info.toLong()
+            ONE_BYTE_ARGUMENT -> long(Byte.SIZE_BYTES)
+            TWO_BYTES_ARGUMENT -> long(Short.SIZE_BYTES)
+            FOUR_BYTES_ARGUMENT -> long(Int.SIZE_BYTES)
+            EIGHT_BYTES_ARGUMENT -> long(Long.SIZE_BYTES).also {
+                require(it >= 0) { "Cbor argument exceeds ${Long.MAX_VALUE}" }
+            }
+            else -> throw IllegalArgumentException("Indefinite length cbor items are not supported")
+        }
+
+        private fun length(argument: Long): Int {
+            require(argument <= bytes.size - position) { "Cbor length $argument exceeds the remaining bytes" }
+            return argument.toInt()
+        }
+
+        private fun text(length: Long): String {
+            val size = length(length)
+            return bytes.decodeToString(position, position + size).also { position += size }
+        }
+
+        private fun long(count: Int): Long {
+            var value = 0L
+            repeat(count) { value = (value shl Byte.SIZE_BITS) or byte().toLong() }
+            return value
+        }
+
+        private fun byte(): Int {
+            require(position < bytes.size) { "Unexpected end of cbor" }
+            return bytes[position++].toInt() and BYTE_MASK
+        }
+    }
+
+    private const val UNSIGNED = 0
+    private const val NEGATIVE = 1
+    private const val TEXT = 3
+    private const val ARRAY = 4
+    private const val MAP = 5
+    private const val TAG = 6
+    private const val SIMPLE = 7
+
+    private const val MAJOR_SHIFT = 5
+    private const val INFO_MASK = 0x1f
+    private const val BYTE_MASK = 0xff
+    private const val ONE_BYTE_ARGUMENT = 24
+    private const val TWO_BYTES_ARGUMENT = 25
+    private const val FOUR_BYTES_ARGUMENT = 26
+    private const val EIGHT_BYTES_ARGUMENT = 27
+
+    private const val FALSE = 0xf4
+    private const val TRUE = 0xf5
+    private const val NULL = 0xf6
+    private const val FLOAT = 0xfa
+    private const val DOUBLE = 0xfb
+
+    // registered tag of json text embedded in cbor
+    private const val EMBEDDED_JSON = 262L
+}
@@ -0,0 +1,72 @@
+package com.razz.eva.serialization.cbor
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import kotlinx.serialization.json.Json
+import java.util.HexFormat
+
+class CborFormatSpec : BehaviorSpec({
+
+    Given("Json payload of every kind of element") {
+        val payload = Json.parseToJsonElement(
+            """
+            {
+              "name": "Fixed price ✓",
+              "count": 3,
+              "balance": -1337,
+              "max": 9223372036854775807,
+              "ratio": 0.25,
+              "price": 12.50,
+              "precise": 0.12345678901234567890123,
+              "huge": 123456789012345678901234567890,
+              "enabled": true,
+              "deleted": false,
+              "note": null,
+              "tags": ["a", 1, [], {}]
+            }
+            """.trimIndent(),
+        )
+
+        When("Principal encodes payload to cbor and decodes it back") {
+            val encoded = CborFormat.encode(payload)
+            val decoded = CborFormat.decode(encoded)
+
+            Then("Decoded payload has the same values") {
+                decoded shouldBe Json.parseToJsonElement(
+                    payload.toString()
+                        .replace("12.50", "12.5"),
+                )
+            }
+
+            Then("Cbor payload is smaller than json") {
+                encoded.size shouldBeLessThan payload.toString().encodeToByteArray().size
+            }
+        }
+    }
+
+    Given("Small json object") {
+        val payload = Json.parseToJsonElement("""{"a":1,"b":[-1,true]}""")
+
+        When("Principal encodes payload to cbor") {
+            val encoded = CborFormat.encode(payload)
+
+            Then("Cbor is the one of RFC 8949") {
+                HexFormat.of().formatHex(encoded) shouldBe "a261610161628220f5"
+            }
+        }
+    }
+
+    Given("Cbor with trailing bytes") {
+        val bytes = HexFormat.of().parseHex("0101")
+
+        When("Principal decodes it") {
+            val attempt = { CborFormat.decode(bytes) }
+
+            Then("Decoding fails") {
+                shouldThrow<IllegalArgumentException>(attempt).message shouldBe "Unexpected 1 trailing bytes of cbor"
+            }
+        }
+    }
+})
@@ -1,5 +1,6 @@
 package com.razz.eva.uow
 
+import com.razz.eva.domain.ModelId
 import com.razz.eva.domain.Principal
 import com.razz.eva.persistence.PersistenceException
 import com.razz.eva.uow.BaseUnitOfWork.Configuration.Companion.default
@@ -19,6 +20,12 @@ abstract class BaseUnitOfWork<PRINCIPAL, PARAMS, RESULT, C>(
 
     internal fun configuration(): Configuration = configuration
 
+    /**
+     * Models the unit of work is going to change, its attempts wait for other units of work changing them
+     * when the executor runs with [ExecutionLanes]. Typically the ids of its [ModelParam]s.
+     */
+    open fun lanes(params: PARAMS): Set<ModelId<out Comparable<*>>> = setOf()
+
     open suspend fun onFailure(params: PARAMS, ex: PersistenceException): RESULT = throw ex
 
     private val NO_CHANGES: Changes<Unit> = RealisedChanges(Unit, listOf(), listOf())
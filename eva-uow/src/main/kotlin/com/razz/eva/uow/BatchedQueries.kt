@@ -0,0 +1,95 @@
+package com.razz.eva.uow
+
+import com.razz.eva.domain.Model
+import com.razz.eva.domain.ModelId
+import com.razz.eva.domain.Queries
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.yield
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Queries coalescing lookups by id issued while a unit of work performs.
+ * Lookups of coroutines running concurrently within [BaseUnitOfWork.tryPerform] are resumed in the same
+ * dispatch turn and go as one [Queries.list] call, found models are memoised until the attempt ends,
+ * so a model is loaded once however many [ModelParam]s or lookups refer to it.
+ * Outside of performing units of work lookups are delegated as they are.
+ *
+ * [Queries.get] of a model which is not found is delegated as well, so it fails the way the queries do.
+ */
+fun <MID : ModelId<out Comparable<*>>, M : Model<MID, *>> Queries<MID, M>.batched(): Queries<MID, M> {
+    return object : Queries<MID, M> by this {
+        override suspend fun find(id: MID): M? {
+            val lookups = currentCoroutineContext()[ModelLookups] ?: return this@batched.find(id)
+            return lookups.loader(this@batched).find(id)
+        }
+
+        override suspend fun get(id: MID): M = find(id) ?: this@batched.get(id)
+
+        override suspend fun invoke(id: MID): M = get(id)
+    }
+}
+
+/**
+ * Loaders of the models looked up by an attempt to perform a unit of work, one per queries.
+ */
+internal class ModelLookups : AbstractCoroutineContextElement(ModelLookups) {
+
+    companion object Key : CoroutineContext.Key<ModelLookups>
+
+    private val loaders = ConcurrentHashMap<Queries<*, *>, Loader<*, *>>()
+
+    @Suppress("UNCHECKED_CAST")
+    fun <MID : ModelId<out Comparable<*>>, M : Model<MID, *>> loader(queries: Queries<MID, M>): Loader<MID, M> =
+        loaders.computeIfAbsent(queries) { Loader(queries) } as Loader<MID, M>
+
+    internal class Loader<MID : ModelId<out Comparable<*>>, M : Model<MID, *>>(
+        private val queries: Queries<MID, M>,
+    ) {
+        // models being loaded or loaded already, null when not found
+        private val loaded = HashMap<MID, Deferred<M?>>()
+        private var pending: MutableMap<MID, CompletableDeferred<M?>>? = null
+
+        suspend fun find(id: MID): M? {
+            var leads = false
+            val model = synchronized(this) {
+                loaded.getOrPut(id) {
+                    CompletableDeferred<M?>().also { model ->
+                        val batch = pending ?: mutableMapOf<MID, CompletableDeferred<M?>>().also {
+                            pending = it
+                            leads = true
+                        }
+                        batch[id] = model
+                    }
+                }
+            }
+            if (leads) load()
+            return model.await()
+        }
+
+        private suspend fun load() {
+            var batch: Map<MID, CompletableDeferred<M?>> = mapOf()
+            try {
+                // lookups of the coroutines resumed in the same turn join the batch meanwhile
+                yield()
+                batch = synchronized(this) { checkNotNull(pending).also { pending = null } }
+                val found = when (batch.size) {
+                    1 -> listOfNotNull(queries.find(batch.keys.single()))
+                    else -> queries.list(batch.keys)
+                }.associateBy(Model<MID, *>::id)
+                batch.forEach { (id, model) -> model.complete(found[id]) }
+            } catch (ex: Throwable) {
+                if (batch.isEmpty()) {
+                    batch = synchronized(this) { pending.orEmpty().also { pending = null } }
+                }
+                // failed lookups are not memoised, so they can be retried
+                synchronized(this) { batch.keys.forEach(loaded::remove) }
+                batch.values.forEach { model -> model.completeExceptionally(ex) }
+                throw ex
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.razz.eva.uow
+
+import com.razz.eva.domain.ModelId
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.withContext
+import java.util.concurrent.atomic.AtomicIntegerArray
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Opt-in execution lanes for [UnitOfWorkExecutor]: attempts of units of work declaring the same model
+ * in [BaseUnitOfWork.lanes] are performed and persisted one after another, in the order they arrived,
+ * while units of work on other models run in parallel. Hot models are then changed without the stale record
+ * failures and retries of concurrent attempts, at the cost of waiting for the lane.
+ *
+ * Models are hashed onto [stripes] lanes, so unrelated models sharing a lane are serialized as well.
+ * Lanes are held by one executor only, units of work changing the same models through other executors
+ * or instances still rely on the version check. Units of work of a lane held already by the executing
+ * coroutine, nested executions for instance, do not wait for it again.
+ *
+ * @param stripes number of lanes models are hashed onto
+ */
+data class ExecutionLanes(
+    val stripes: Int = 1024,
+) {
+    init {
+        require(stripes > 0) { "Execution lanes stripes must be positive" }
+    }
+}
+
+internal class LaneStripes(config: ExecutionLanes) {
+
+    private val locks = List(config.stripes) { Mutex() }
+    private val occupancy = AtomicIntegerArray(config.stripes)
+
+    private class HeldLanes(val stripes: Set<Int>) : AbstractCoroutineContextElement(HeldLanes) {
+        companion object Key : CoroutineContext.Key<HeldLanes>
+    }
+
+    /**
+     * Runs [block] holding the lanes of [modelIds], [queued] receives how many units of work were
+     * in those lanes ahead of this one and how long it waited for them.
+     */
+    suspend fun <T> withLanes(
+        modelIds: Set<ModelId<out Comparable<*>>>,
+        queued: (depth: Int, waitedNanos: Long) -> Unit,
+        block: suspend () -> T,
+    ): T {
+        val held = currentCoroutineContext()[HeldLanes]?.stripes.orEmpty()
+        // lanes are always taken in ascending order so units of work sharing several of them never deadlock
+        val stripes = modelIds.mapTo(sortedSetOf()) { Math.floorMod(it.id.hashCode(), locks.size) } - held
+        if (stripes.isEmpty()) return block()
+        val start = System.nanoTime()
+        val depth = stripes.maxOf { occupancy.getAndIncrement(it) }
+        val acquired = mutableListOf<Int>()
+        try {
+            for (stripe in stripes) {
+                locks[stripe].lock()
+                acquired += stripe
+            }
+            queued(depth, System.nanoTime() - start)
+            return withContext(HeldLanes(held + stripes)) { block() }
+        } finally {
+            acquired.forEach { locks[it].unlock() }
+            stripes.forEach(occupancy::decrementAndGet)
+        }
+    }
+}
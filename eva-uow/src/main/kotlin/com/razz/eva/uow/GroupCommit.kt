@@ -0,0 +1,259 @@
+package com.razz.eva.uow
+
+import com.razz.eva.IdempotencyKey
+import com.razz.eva.domain.Model
+import com.razz.eva.domain.ModelId
+import com.razz.eva.persistence.ConnectionMode.REQUIRE_NEW
+import com.razz.eva.persistence.PersistenceException.ModelAware
+import com.razz.eva.persistence.PersistenceException.StaleRecordException
+import com.razz.eva.persistence.ReadYourWrites
+import com.razz.eva.persistence.Savepoints
+import com.razz.eva.persistence.TransactionManager
+import com.razz.eva.repository.ModelRepos
+import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
+import io.opentelemetry.context.Context
+import io.opentelemetry.extension.kotlin.asContextElement
+import io.opentelemetry.extension.kotlin.getOpenTelemetryContext
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
+import java.time.Duration
+import java.time.Instant
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * Opt-in group commit for [Persisting]: flushes of independent units of work arriving within [window]
+ * share one write transaction, each in its own savepoint, so commit latency and pool acquisitions are
+ * paid once per group instead of once per unit of work.
+ *
+ * Units of work are independent when they change disjoint models and carry different idempotency keys,
+ * a conflicting one closes the open group and starts the next one. A failure, a stale record for instance,
+ * rolls back only the savepoint of the unit of work it belongs to. A failed commit fails every unit of work
+ * of the group.
+ *
+ * With [batchWrites] model inserts and updates of the whole group are merged per model class into
+ * multi-row statements, for units of work supporting out of order persisting only. Stale records of some
+ * units of work fail just them and the group is flushed again without them, any other failure of a merged
+ * statement falls back to flushing each unit of work on its own. Merged rows are stamped with
+ * the latest start time of the units of work in the group.
+ *
+ * Requires a [TransactionManager] with [TransactionManager.savepoints]. Units of work running with
+ * [WriteTxScope.FULL_UOW] already own their transaction and are never grouped.
+ *
+ * @param window how long the first unit of work of a group waits for others to join
+ * @param maxGroupSize group is flushed as soon as it reaches this many units of work
+ * @param batchWrites merge model inserts and updates of the group into multi-row statements
+ */
+data class GroupCommit(
+    val window: Duration = Duration.ofMillis(2),
+    val maxGroupSize: Int = 64,
+    val batchWrites: Boolean = false,
+) {
+    init {
+        require(!window.isNegative) { "Group commit window must not be negative" }
+        require(maxGroupSize > 0) { "Group commit max group size must be positive" }
+    }
+}
+
+internal class GroupCommitter(
+    private val transactionManager: TransactionManager<*>,
+    private val savepoints: Savepoints<*>,
+    private val modelRepos: ModelRepos,
+    private val config: GroupCommit,
+) {
+
+    val batchWrites get() = config.batchWrites
+
+    private class Member(
+        val modelIds: Set<ModelId<out Comparable<*>>>,
+        val idempotencyKey: IdempotencyKey?,
+        val startedAt: Instant,
+        val batches: List<ModelBatch>,
+        val otelContext: Context,
+        val readYourWrites: ReadYourWrites?,
+        val flush: suspend () -> List<Model<*, *>>,
+    ) {
+        val flushed = CompletableDeferred<List<Model<*, *>>>()
+    }
+
+    private class Group(first: Member) {
+        val members = mutableListOf(first)
+        val modelIds = first.modelIds.toMutableSet()
+        val idempotencyKeys = listOfNotNull(first.idempotencyKey).toMutableSet()
+        val full = CompletableDeferred<Unit>()
+
+        fun accepts(member: Member) =
+            member.modelIds.none(modelIds::contains) &&
+                (member.idempotencyKey == null || member.idempotencyKey !in idempotencyKeys)
+
+        fun add(member: Member) {
+            members += member
+            modelIds += member.modelIds
+            member.idempotencyKey?.let(idempotencyKeys::add)
+        }
+    }
+
+    /**
+     * Thrown out of the savepoint of merged writes to roll them back when some units of work failed.
+     */
+    private class MembersFailedException(val failures: Map<Member, Exception>) : RuntimeException()
+
+    private val lock = Mutex()
+    private var open: Group? = null
+
+    /**
+     * @param batches model batches to merge across the group, flushed along with [flush] otherwise
+     * @param flush flushes changes of the unit of work except the [batches]
+     */
+    suspend fun commit(
+        modelIds: Set<ModelId<out Comparable<*>>>,
+        idempotencyKey: IdempotencyKey?,
+        startedAt: Instant,
+        batches: List<ModelBatch>,
+        flush: suspend () -> List<Model<*, *>>,
+    ): List<Model<*, *>> {
+        val member = Member(
+            modelIds = modelIds,
+            idempotencyKey = idempotencyKey,
+            startedAt = startedAt,
+            batches = batches,
+            otelContext = currentCoroutineContext().getOpenTelemetryContext(),
+            readYourWrites = currentCoroutineContext()[ReadYourWrites],
+            flush = flush,
+        )
+        val ledGroup = lock.withLock {
+            val current = open
+            if (current != null && current.accepts(member)) {
+                current.add(member)
+                if (current.members.size >= config.maxGroupSize) {
+                    open = null
+                    current.full.complete(Unit)
+                }
+                null
+            } else {
+                // a conflicting unit of work closes the open group instead of waiting for its window
+                current?.full?.complete(Unit)
+                Group(member).also { if (config.maxGroupSize > 1) open = it else it.full.complete(Unit) }
+            }
+        }
+        if (ledGroup != null) {
+            // followers only await the leader, so the leader must flush the group even when cancelled
+            withContext(NonCancellable) {
+                withTimeoutOrNull(config.window.toMillis()) { ledGroup.full.await() }
+                lock.withLock { if (open === ledGroup) open = null }
+                flushGroup(ledGroup)
+            }
+        }
+        return member.flushed.await()
+    }
+
+    private suspend fun flushGroup(group: Group) {
+        // the commit position is read once for the group and recorded for every member reading its writes,
+        // not only for the leader running the transaction
+        val readsYourWrites = group.members.mapNotNull(Member::readYourWrites)
+        val groupWrites = if (readsYourWrites.isEmpty()) null else ReadYourWrites()
+        try {
+            withContext(groupWrites ?: EmptyCoroutineContext) {
+                transactionManager.inTransaction(REQUIRE_NEW) { _ ->
+                    if (config.batchWrites) {
+                        flushBatched(group.members)
+                    } else {
+                        group.members.associateWith { flushAlone(it) }
+                    }
+                }
+            }.also {
+                groupWrites?.lsn?.let { lsn -> readsYourWrites.forEach { it.committed(lsn) } }
+            }.forEach { (member, flushed) ->
+                flushed.fold(member.flushed::complete, member.flushed::completeExceptionally)
+            }
+        } catch (ex: Exception) {
+            group.members.forEach { it.flushed.completeExceptionally(ex) }
+        }
+    }
+
+    private suspend fun flushAlone(member: Member): Result<List<Model<*, *>>> = try {
+        Result.success(
+            savepoints.inSavepoint { _ ->
+                withContext(member.otelContext.asContextElement()) {
+                    val context = transactionalContext(member.startedAt)
+                    member.batches.flatMap { it.persist(context, modelRepos) } + member.flush()
+                }
+            },
+        )
+    } catch (ex: Exception) {
+        Result.failure(ex)
+    }
+
+    private suspend fun flushBatched(members: List<Member>): Map<Member, Result<List<Model<*, *>>>> {
+        val results = mutableMapOf<Member, Result<List<Model<*, *>>>>()
+        var pending = members
+        while (pending.isNotEmpty()) {
+            try {
+                savepoints.inSavepoint { _ -> flushMerged(pending) }.forEach { (member, flushed) ->
+                    results[member] = Result.success(flushed)
+                }
+                pending = listOf()
+            } catch (ex: MembersFailedException) {
+                ex.failures.forEach { (member, failure) -> results[member] = Result.failure(failure) }
+                pending = pending - ex.failures.keys
+            } catch (_: Exception) {
+                pending.forEach { member -> results[member] = flushAlone(member) }
+                pending = listOf()
+            }
+        }
+        return results
+    }
+
+    private suspend fun flushMerged(members: List<Member>): Map<Member, List<Model<*, *>>> {
+        val owners = members.flatMap { member ->
+            member.batches.flatMap { batch -> batch.models.map { it.id() to member } }
+        }.toMap()
+        val context = transactionalContext(members.maxOf(Member::startedAt))
+        val merged = members.flatMap(Member::batches)
+            .groupBy { batch -> batch::class to batch.models.first()::class }
+            .values
+            .map { batches -> batches.reduce(ModelBatch::plus) }
+            .sortedBy { it is ModelBatch.Add<*, *> }
+        val persisted = merged.flatMap { batch ->
+            try {
+                batch.persist(context, modelRepos)
+            } catch (ex: Exception) {
+                val failed = attributed(ex, batch, owners)?.modelIds?.mapNotNullTo(mutableSetOf(), owners::get)
+                if (failed.isNullOrEmpty()) throw ex
+                throw MembersFailedException(failed.associateWith { ex })
+            }
+        }.associateBy { it.id() }
+
+        val failures = mutableMapOf<Member, Exception>()
+        val flushed = members.associateWith { member ->
+            val rest = try {
+                savepoints.inSavepoint { _ ->
+                    withContext(member.otelContext.asContextElement()) { member.flush() }
+                }
+            } catch (ex: Exception) {
+                failures[member] = ex
+                listOf()
+            }
+            member.batches.flatMap { batch -> batch.models.map { persisted.getValue(it.id()) } } + rest
+        }
+        // merged writes of failed units of work can only be undone with the whole savepoint
+        if (failures.isNotEmpty()) throw MembersFailedException(failures)
+        return flushed
+    }
+
+    // a multi-row statement names only its first model on failure, so only stale records found row by row
+    // or failures of a batch owned by one unit of work tell which units of work failed
+    private fun attributed(
+        ex: Exception,
+        batch: ModelBatch,
+        owners: Map<ModelId<out Comparable<*>>, Member>,
+    ): ModelAware? = when {
+        ex is StaleRecordException -> ex
+        ex is ModelAware && batch.models.mapTo(mutableSetOf()) { owners[it.id()] }.size == 1 -> ex
+        else -> null
+    }
+}
@@ -6,12 +6,23 @@ import com.razz.eva.repository.ModelRepos
 import com.razz.eva.repository.TransactionalContext
 
 internal sealed interface ModelBatch {
+    val models: List<Model<*, *>>
+
     suspend fun persist(context: TransactionalContext, repos: ModelRepos): List<Model<*, *>>
 
     fun with(model: Model<*, *>): ModelBatch
 
-    class Add<MID : ModelId<out Comparable<*>>, M : Model<MID, *>>(model: M) : ModelBatch {
-        private val models = mutableListOf(model)
+    /**
+     * New batch of the same kind with models of both batches, neither of them is changed.
+     * Batches must persist the same model class.
+     */
+    operator fun plus(other: ModelBatch): ModelBatch
+
+    class Add<MID : ModelId<out Comparable<*>>, M : Model<MID, *>> private constructor(
+        override val models: MutableList<M>,
+    ) : ModelBatch {
+
+        constructor(model: M) : this(mutableListOf(model))
 
         override suspend fun persist(context: TransactionalContext, repos: ModelRepos): List<Model<*, *>> {
             return repos.repoFor(models.first()).add(context, models)
@@ -22,10 +33,19 @@ internal sealed interface ModelBatch {
             models.add(model as M)
             return this
         }
+
+        override fun plus(other: ModelBatch): Add<MID, M> {
+            require(other is Add<*, *>) { "Only inserts can be merged with inserts" }
+            @Suppress("UNCHECKED_CAST")
+            return Add((models + other.models as List<M>).toMutableList())
+        }
     }
 
-    class Update<MID : ModelId<out Comparable<*>>, M : Model<MID, *>>(model: M) : ModelBatch {
-        private val models = mutableListOf(model)
+    class Update<MID : ModelId<out Comparable<*>>, M : Model<MID, *>> private constructor(
+        override val models: MutableList<M>,
+    ) : ModelBatch {
+
+        constructor(model: M) : this(mutableListOf(model))
 
         override suspend fun persist(context: TransactionalContext, repos: ModelRepos): List<Model<*, *>> {
             return repos.repoFor(models.first()).update(context, models)
@@ -36,5 +56,11 @@ internal sealed interface ModelBatch {
             models.add(model as M)
             return this
         }
+
+        override fun plus(other: ModelBatch): Update<MID, M> {
+            require(other is Update<*, *>) { "Only updates can be merged with updates" }
+            @Suppress("UNCHECKED_CAST")
+            return Update((models + other.models as List<M>).toMutableList())
+        }
     }
 }
@@ -1,6 +1,7 @@
 package com.razz.eva.uow
 
 import com.razz.eva.domain.Model
+import com.razz.eva.domain.ModelId
 import com.razz.eva.domain.Principal
 import com.razz.eva.events.EventPublisher
 import com.razz.eva.events.UowEvent
@@ -10,9 +11,11 @@ import com.razz.eva.persistence.TransactionManager
 import com.razz.eva.repository.EntityRepos
 import com.razz.eva.repository.EventRepository
 import com.razz.eva.repository.ModelRepos
+import com.razz.eva.repository.PreparedUowEvent
 import com.razz.eva.repository.TransactionalContext
 import com.razz.eva.repository.TransactionalContext.Companion.transactionalContext
 import com.razz.eva.uow.PersistingAccumulator.Factory.newPersistingAccumulator
+import com.razz.eva.uow.PersistingAccumulator.FlushOperation
 import com.razz.eva.uow.PersistingMode.PARALLEL_OUT_OF_ORDER
 import com.razz.eva.uow.PersistingMode.SEQUENTIAL_FIFO
 import com.razz.eva.events.UowEvent.ModelEventId
@@ -20,9 +23,13 @@ import com.razz.eva.events.UowEvent.UowName
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.launch
 import java.time.Instant
 import java.util.UUID.randomUUID
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
 
 class Persisting(
     private val transactionManager: TransactionManager<*>,
@@ -31,6 +38,7 @@ class Persisting(
     private val eventRepository: EventRepository,
     private val eventPublisher: EventPublisher = NoopEventPublisher,
     private val paramsSerializer: ParamsSerializer,
+    groupCommit: GroupCommit? = null,
 ) {
 
     constructor(
@@ -51,6 +59,33 @@ class Persisting(
         override suspend fun publish(uowEvent: UowEvent) = Unit
     }
 
+    private val groupCommitter = groupCommit?.let { config ->
+        val savepoints = requireNotNull(transactionManager.savepoints) {
+            "Group commit requires savepoints, ${transactionManager::class.simpleName} does not support them"
+        }
+        GroupCommitter(transactionManager, savepoints, modelRepos, config)
+    }
+
+    /**
+     * Context in which flushes of units of work executed together share write transactions,
+     * up to [maxGroupSize] of them each, as with [GroupCommit]. Empty when group commit is configured already
+     * or the transaction manager does not support savepoints.
+     */
+    internal fun sharedFlushes(maxGroupSize: Int): CoroutineContext {
+        val savepoints = transactionManager.savepoints
+        return if (groupCommitter == null && savepoints != null) {
+            SharedFlushes(
+                GroupCommitter(transactionManager, savepoints, modelRepos, GroupCommit(maxGroupSize = maxGroupSize)),
+            )
+        } else {
+            EmptyCoroutineContext
+        }
+    }
+
+    private class SharedFlushes(val committer: GroupCommitter) : AbstractCoroutineContextElement(SharedFlushes) {
+        companion object Key : CoroutineContext.Key<SharedFlushes>
+    }
+
     internal suspend fun <PARAMS : UowParams<PARAMS>> persist(
         uowName: String,
         params: PARAMS,
@@ -61,7 +96,8 @@ class Persisting(
         uowSupportsOutOfOrderPersisting: Boolean,
         connectionMode: ConnectionMode,
     ): Pair<UowEvent, List<Model<*, *>>> {
-        val (uowEvent, flushed) = inTransaction(now, uowSupportsOutOfOrderPersisting, connectionMode) {
+        val modelIds = modelChanges.mapTo(mutableSetOf(), ModelChange::id)
+        val (uowEvent, flushed) = inTransaction(now, uowSupportsOutOfOrderPersisting, connectionMode, modelIds) {
                 persisting, startedAt ->
             val events = modelChanges.flatMap(ModelChange::modelEvents)
             modelChanges.forEach { change ->
@@ -83,13 +119,21 @@ class Persisting(
         return uowEvent to flushed
     }
 
+    /**
+     * Passes models persisted by a committed transaction to caching model repositories.
+     */
+    internal fun committed(persisted: List<Model<*, *>>) {
+        modelRepos.persisted(persisted)
+    }
+
     internal suspend fun publish(uowEvent: UowEvent) {
         eventPublisher.publish(uowEvent)
     }
 
     /**
      * Opens the write transaction the executor scopes a whole [WriteTxScope.FULL_UOW] attempt in;
-     * [persist] then joins it with [ConnectionMode.REQUIRE_EXISTING].
+     * [persist] then joins it with [ConnectionMode.REQUIRE_EXISTING] and the executor passes
+     * the persisted models to [committed] once it is committed.
      */
     internal suspend fun <R> transactionally(block: suspend () -> R): R {
         return transactionManager.inTransaction(REQUIRE_NEW) { _ ->
@@ -101,6 +145,7 @@ class Persisting(
         now: Instant,
         uowSupportsOutOfOrderPersisting: Boolean,
         connectionMode: ConnectionMode,
+        modelIds: Set<ModelId<out Comparable<*>>>,
         block: (PersistingAccumulator, Instant) -> UowEvent,
     ): Pair<UowEvent, List<Model<*, *>>> {
         val persistingMode = if (transactionManager.supportsPipelining() && uowSupportsOutOfOrderPersisting) {
@@ -110,30 +155,43 @@ class Persisting(
         }
         val persisting = newPersistingAccumulator(uowSupportsOutOfOrderPersisting, modelRepos, entityRepos)
         val uowEvent = block(persisting, now)
-        val flushed = transactionManager.inTransaction(connectionMode) { _ ->
-            flush(persisting, uowEvent, transactionalContext(now), persistingMode)
+        // payloads are rendered and validated before the connection is acquired
+        val preparedEvent = eventRepository.prepare(uowEvent)
+        val committer = currentCoroutineContext()[SharedFlushes]?.committer ?: groupCommitter
+        val flushed = if (committer != null && connectionMode == REQUIRE_NEW) {
+            val batches = if (committer.batchWrites) persisting.modelBatches() else listOf()
+            val operations = if (committer.batchWrites) persisting.remainder() else persisting.accumulated()
+            committer.commit(modelIds, uowEvent.idempotencyKey, now, batches) {
+                flush(operations, preparedEvent, transactionalContext(now), persistingMode)
+            }
+        } else {
+            transactionManager.inTransaction(connectionMode) { _ ->
+                flush(persisting.accumulated(), preparedEvent, transactionalContext(now), persistingMode)
+            }
         }
+        // a joined transaction is committed by its owner, see transactionally
+        if (connectionMode == REQUIRE_NEW) committed(flushed)
         return uowEvent to flushed
     }
 
     private suspend fun flush(
-        accumulator: PersistingAccumulator,
-        uowEvent: UowEvent,
+        operations: List<FlushOperation>,
+        preparedEvent: PreparedUowEvent,
         context: TransactionalContext,
         mode: PersistingMode,
     ): List<Model<*, *>> = when (mode) {
         PARALLEL_OUT_OF_ORDER -> coroutineScope {
-            val flushed = accumulator.accumulated().map { operation ->
+            val flushed = operations.map { operation ->
                 async { operation(context) }
             }
-            launch { eventRepository.add(uowEvent) }
+            launch { preparedEvent.add() }
             flushed.awaitAll().flatten()
         }
         SEQUENTIAL_FIFO -> {
-            val flushed = accumulator.accumulated().map { operation ->
+            val flushed = operations.map { operation ->
                 operation(context)
             }
-            eventRepository.add(uowEvent)
+            preparedEvent.add()
             flushed.flatten()
         }
     }
@@ -19,6 +19,17 @@ internal sealed interface PersistingAccumulator : ModelPersisting, EntityPersist
 
     fun accumulated(): List<FlushOperation>
 
+    /**
+     * Model inserts and updates batched per model class, empty when changes are not batched.
+     * [accumulated] flushes them along with the [remainder].
+     */
+    fun modelBatches(): List<ModelBatch>
+
+    /**
+     * Flush operations of [accumulated] except the [modelBatches].
+     */
+    fun remainder(): List<FlushOperation>
+
     class ChangesAccumulator(
         private val modelRepos: ModelRepos,
         private val entityRepos: EntityRepos,
@@ -62,6 +73,10 @@ internal sealed interface PersistingAccumulator : ModelPersisting, EntityPersist
         }
 
         override fun accumulated() = changes
+
+        override fun modelBatches() = listOf<ModelBatch>()
+
+        override fun remainder() = changes
     }
 
     class BatchesAccumulator(
@@ -113,10 +128,14 @@ internal sealed interface PersistingAccumulator : ModelPersisting, EntityPersist
         }
 
         override fun accumulated(): List<FlushOperation> {
-            val modelOps = listOf(updates.values, inserts.values).flatMap {
-                it.map { b -> FlushOperation { context -> b.persist(context, modelRepos) } }
-            }
-            val entityOps = listOf(
+            val modelOps = modelBatches().map { b -> FlushOperation { context -> b.persist(context, modelRepos) } }
+            return modelOps + remainder()
+        }
+
+        override fun modelBatches(): List<ModelBatch> = updates.values + inserts.values
+
+        override fun remainder(): List<FlushOperation> {
+            return listOf(
                 entityInserts.values,
                 entityUpdates.values,
                 entityDeletes.values,
@@ -129,7 +148,6 @@ internal sealed interface PersistingAccumulator : ModelPersisting, EntityPersist
                     }
                 }
             }
-            return modelOps + entityOps
         }
     }
 
@@ -1,6 +1,7 @@
 package com.razz.eva.uow
 
 import com.razz.eva.domain.Model
+import com.razz.eva.domain.ModelId
 import com.razz.eva.domain.Principal
 import com.razz.eva.events.UowEvent
 import com.razz.eva.persistence.ConnectionAcquisitionCounter
@@ -32,7 +33,15 @@ import io.opentelemetry.api.common.Attributes
 import io.opentelemetry.api.metrics.LongHistogram
 import io.opentelemetry.api.trace.Span
 import io.opentelemetry.extension.kotlin.asContextElement
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.withContext
 import mu.KotlinLogging
 import java.time.Instant
@@ -53,6 +62,7 @@ class UnitOfWorkExecutor(
     private val persisting: Persisting,
     private val clock: InstantSource,
     private val openTelemetry: OpenTelemetry,
+    executionLanes: ExecutionLanes? = null,
 ) {
     @ExecutionContextApi
     fun executionContext() = ExecutionContext(clock, openTelemetry)
@@ -66,6 +76,7 @@ class UnitOfWorkExecutor(
           RESULT : Any
 
     private val logger = KotlinLogging.logger {}
+    private val laneStripes = executionLanes?.let(::LaneStripes)
     private val classToFactory = factories.groupBy(ClassToUow<*, *, *, *>::uowClass).mapValues {
         it.value.singleOrNull()?.uowFactory
             ?: throw IllegalArgumentException("Attempted to register multiple factories for ${it.key.simpleName}")
@@ -113,7 +124,9 @@ class UnitOfWorkExecutor(
                     uowSpan.setAttribute(UOW_NAME, name)
                 }
                 val constructedParams = params(InstantiationContext.External(currentAttempt))
-                val attempted = attempt(uow, principal, constructedParams, now, name, uowSpan)
+                val attempted = inLanes({ uow.lanes(constructedParams) }, name) {
+                    attempt(uow, principal, constructedParams, now, name, uowSpan)
+                }
                 val committed = when (attempted) {
                     is Attempted.Conflict -> {
                         val ex = attempted.ex
@@ -174,6 +187,24 @@ class UnitOfWorkExecutor(
         class Conflict(val ex: PersistenceException) : Attempted<Nothing>
     }
 
+    // lanes are asked for only when the executor runs with them
+    private suspend fun <T> inLanes(
+        lanes: () -> Set<ModelId<out Comparable<*>>>,
+        name: String,
+        block: suspend () -> T,
+    ): T {
+        if (laneStripes == null) return block()
+        return laneStripes.withLanes(
+            modelIds = lanes(),
+            queued = { depth, waitedNanos ->
+                val attributes = Attributes.of(AttributeKey.stringKey(UOW_NAME), name)
+                laneDepthMetric.record(depth.toLong(), attributes)
+                laneWaitTimer.record(waitedNanos, attributes)
+            },
+            block = block,
+        )
+    }
+
     private suspend fun <PRINCIPAL, PARAMS, RESULT, UOW> attempt(
         uow: UOW,
         principal: PRINCIPAL,
@@ -230,7 +261,7 @@ class UnitOfWorkExecutor(
                         uowSpan = uowSpan,
                         connectionMode = REQUIRE_EXISTING,
                     )
-                }
+                }.also { committed -> persisting.committed(committed.persisted) }
             } catch (ex: PersistenceException) {
                 Attempted.Conflict(ex)
             }
@@ -248,7 +279,8 @@ class UnitOfWorkExecutor(
           RESULT : Any,
           UOW : BaseUnitOfWork<PRINCIPAL, PARAMS, RESULT, *> {
         val changes = instrumentedPerform(name) { acquisitions ->
-            withContext(PrimaryConnectionRequiredFlag + acquisitions + uowSpan.asContextElement()) {
+            // lookups of batched queries are memoised for the attempt only
+            withContext(PrimaryConnectionRequiredFlag + acquisitions + uowSpan.asContextElement() + ModelLookups()) {
                 performingSpan(name).use {
                     uow.tryPerform(principal, params)
                 }
@@ -368,6 +400,78 @@ class UnitOfWorkExecutor(
         )
     }
 
+    /**
+     * Result of one of the units of work executed by [executeAll]:
+     * what [execute] returned for [params] or the exception it failed with.
+     */
+    class Executed<PARAMS, RESULT>(
+        val params: PARAMS,
+        val result: Result<RESULT>,
+    )
+
+    /**
+     * Executes [target] once per element of [params], up to [concurrency] units of work at a time,
+     * and emits their results in the order of [params] as soon as they are done.
+     * Every unit of work is executed as by [execute], with its own retries and [BaseUnitOfWork.onFailure],
+     * and a failed one does not stop the others.
+     *
+     * Flushes of units of work executed together share write transactions, see [GroupCommit]:
+     * through the group commit of [Persisting] when it is configured, otherwise through one grouping up to
+     * [concurrency] flushes for this call, provided the transaction manager supports savepoints.
+     */
+    fun <PRINCIPAL, PARAMS, RESULT, UOW> executeAll(
+        target: KClass<UOW>,
+        principal: PRINCIPAL,
+        params: Flow<PARAMS>,
+        concurrency: Int,
+    ): Flow<Executed<PARAMS, RESULT>> where PRINCIPAL : Principal<*>,
+          PARAMS : UowParams<PARAMS>,
+          RESULT : Any,
+          UOW : BaseUnitOfWork<PRINCIPAL, PARAMS, RESULT, *> {
+        require(concurrency > 0) { "Concurrency must be positive" }
+        return channelFlow {
+            withContext(persisting.sharedFlushes(concurrency)) {
+                val permits = Semaphore(concurrency)
+                // executions are awaited in the order of params, while up to concurrency of them run
+                val executions = Channel<Deferred<Executed<PARAMS, RESULT>>>(concurrency)
+                launch {
+                    params.collect { uowParams ->
+                        permits.acquire()
+                        val execution = async {
+                            try {
+                                Executed(uowParams, tryExecute(target, principal, uowParams))
+                            } finally {
+                                permits.release()
+                            }
+                        }
+                        executions.send(execution)
+                    }
+                    executions.close()
+                }
+                for (execution in executions) {
+                    send(execution.await())
+                }
+            }
+        }
+    }
+
+    private suspend fun <PRINCIPAL, PARAMS, RESULT, UOW> tryExecute(
+        target: KClass<UOW>,
+        principal: PRINCIPAL,
+        params: PARAMS,
+    ): Result<RESULT> where PRINCIPAL : Principal<*>,
+          PARAMS : UowParams<PARAMS>,
+          RESULT : Any,
+          UOW : BaseUnitOfWork<PRINCIPAL, PARAMS, RESULT, *> {
+        return try {
+            Result.success(execute(target, principal) { params })
+        } catch (ex: CancellationException) {
+            throw ex
+        } catch (ex: Exception) {
+            Result.failure(ex)
+        }
+    }
+
     private suspend fun Retry?.shouldRetry(currentAttempt: Int, ex: PersistenceException): Boolean =
         this?.getNextDelay(currentAttempt, ex)?.let {
             delay(it.toMillis())
@@ -466,6 +570,16 @@ class UnitOfWorkExecutor(
         .setExplicitBucketBoundariesAdvice(ACQUISITION_BUCKET_BOUNDARIES)
         .build()
 
+    private val laneWaitTimer = createTimer("uow.lane.wait.timer", "Unit of work attempt wait time for its lanes")
+
+    private val laneDepthMetric = openTelemetry.getEvaMeter()
+        .histogramBuilder("uow.lane.queue_depth")
+        .setDescription("Units of work ahead in the lanes of a unit of work attempt")
+        .setUnit("{uow}")
+        .ofLongs()
+        .setExplicitBucketBoundariesAdvice(LANE_DEPTH_BUCKET_BOUNDARIES)
+        .build()
+
     private fun createTimer(name: String, description: String) = openTelemetry.getEvaMeter()
         .histogramBuilder(name)
         .setDescription(description)
@@ -524,5 +638,6 @@ class UnitOfWorkExecutor(
             60_000_000_000L, // 60s
         )
         private val ACQUISITION_BUCKET_BOUNDARIES = listOf(0L, 1L, 2L, 3L, 5L, 8L, 13L, 21L, 50L)
+        private val LANE_DEPTH_BUCKET_BOUNDARIES = listOf(0L, 1L, 2L, 3L, 5L, 8L, 13L, 21L, 50L, 100L)
     }
 }
@@ -0,0 +1,88 @@
+package com.razz.eva.uow
+
+import com.razz.eva.domain.Queries
+import com.razz.eva.domain.TestModel
+import com.razz.eva.domain.TestModel.Factory.existingCreatedTestModel
+import com.razz.eva.domain.TestModelId
+import com.razz.eva.domain.TestModelId.Companion.randomTestModelId
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.withContext
+
+class BatchedQueriesSpec : FunSpec({
+
+    class CountingQueries(models: List<TestModel>) : Queries<TestModelId, TestModel> {
+        private val models = models.associateBy { it.id() }
+        val lookups = mutableListOf<Set<TestModelId>>()
+
+        override suspend fun find(id: TestModelId): TestModel? {
+            lookups += setOf(id)
+            return models[id]
+        }
+
+        override suspend fun get(id: TestModelId): TestModel = find(id) ?: error("Model ${id.stringValue()} not found")
+
+        override suspend fun list(ids: Collection<TestModelId>): List<TestModel> {
+            lookups += ids.toSet()
+            return ids.mapNotNull(models::get)
+        }
+    }
+
+    val model1 = existingCreatedTestModel(param1 = "lel", param2 = 1)
+    val model2 = existingCreatedTestModel(param1 = "kek", param2 = 2)
+    val model3 = existingCreatedTestModel(param1 = "pek", param2 = 3)
+
+    test("Concurrent lookups are coalesced into one list call") {
+        val queries = CountingQueries(listOf(model1, model2, model3))
+        val batched = queries.batched()
+
+        val found = withContext(ModelLookups()) {
+            coroutineScope {
+                listOf(model1, model2, model3).map { model -> async { batched.get(model.id()) } }.awaitAll()
+            }
+        }
+
+        found shouldBe listOf(model1, model2, model3)
+        queries.lookups shouldBe listOf(setOf(model1.id(), model2.id(), model3.id()))
+    }
+
+    test("Models looked up once are memoised, missing ones included") {
+        val queries = CountingQueries(listOf(model1))
+        val batched = queries.batched()
+        val missingId = randomTestModelId()
+
+        withContext(ModelLookups()) {
+            batched.find(model1.id()) shouldBe model1
+            batched(model1.id()) shouldBe model1
+            batched.find(missingId) shouldBe null
+            batched.find(missingId) shouldBe null
+        }
+
+        queries.lookups shouldBe listOf(setOf(model1.id()), setOf(missingId))
+    }
+
+    test("Get of a missing model fails the way the queries do") {
+        val queries = CountingQueries(listOf())
+        val missingId = randomTestModelId()
+
+        val ex = shouldThrow<IllegalStateException> {
+            withContext(ModelLookups()) { queries.batched().get(missingId) }
+        }
+
+        ex.message shouldBe "Model ${missingId.stringValue()} not found"
+    }
+
+    test("Lookups outside of performing units of work are not memoised") {
+        val queries = CountingQueries(listOf(model1))
+        val batched = queries.batched()
+
+        batched.get(model1.id())
+        batched.get(model1.id())
+
+        queries.lookups shouldBe listOf(setOf(model1.id()), setOf(model1.id()))
+    }
+})
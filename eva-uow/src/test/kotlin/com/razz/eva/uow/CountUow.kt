@@ -0,0 +1,13 @@
+package com.razz.eva.uow
+
+import com.razz.eva.uow.params.kotlinx.UowParams
+import kotlinx.serialization.Serializable
+
+internal abstract class CountUow(
+    executionContext: ExecutionContext,
+) : UnitOfWork<TestPrincipal, CountUow.Params, Int>(executionContext) {
+    @Serializable
+    data class Params(val count: Int) : UowParams<Params> {
+        override fun serialization() = serializer()
+    }
+}
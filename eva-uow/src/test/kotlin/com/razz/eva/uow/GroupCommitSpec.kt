@@ -0,0 +1,416 @@
+package com.razz.eva.uow
+
+import com.razz.eva.IdempotencyKey.Companion.idempotencyKey
+import com.razz.eva.domain.DepartmentId.Companion.randomDepartmentId
+import com.razz.eva.domain.Model
+import com.razz.eva.domain.TestModel
+import com.razz.eva.domain.TestModel.Factory.createdTestModel
+import com.razz.eva.domain.TestModel.Factory.existingCreatedTestModel
+import com.razz.eva.domain.TestModelId
+import com.razz.eva.domain.Version.Companion.V1
+import com.razz.eva.persistence.ConnectionMode
+import com.razz.eva.persistence.ConnectionWrapper
+import com.razz.eva.persistence.DummyConnection
+import com.razz.eva.persistence.DummyConnectionProvider
+import com.razz.eva.persistence.Lsn
+import com.razz.eva.persistence.PersistenceException.StaleRecordException
+import com.razz.eva.persistence.PersistenceException.UniqueModelRecordViolationException
+import com.razz.eva.persistence.ReadYourWrites
+import com.razz.eva.persistence.ReplicaProbe
+import com.razz.eva.persistence.ReplicaRouting
+import com.razz.eva.persistence.ReplicaStatus
+import com.razz.eva.persistence.Savepoints
+import com.razz.eva.persistence.TransactionManager
+import com.razz.eva.persistence.WithCtxConnectionTransactionManager
+import com.razz.eva.repository.EntityRepos
+import com.razz.eva.repository.ModelRepos
+import com.razz.eva.repository.ModelRepository
+import com.razz.eva.repository.TransactionalContext
+import com.razz.eva.repository.hasRepo
+import com.razz.eva.uow.params.kotlinx.KotlinxParamsSerializer
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.IsolationMode.InstancePerLeaf
+import io.kotest.core.spec.style.BehaviorSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.opentelemetry.api.OpenTelemetry
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.withContext
+import java.time.Duration
+import java.time.Instant
+import java.util.UUID
+import java.util.concurrent.Executors
+import kotlin.coroutines.CoroutineContext
+
+class GroupCommitSpec : BehaviorSpec({
+
+    isolationMode = InstancePerLeaf
+
+    class CommitLsnProbe : ReplicaProbe<DummyConnection> {
+        var lsnReads = 0
+
+        override suspend fun replicaStatus(connection: DummyConnection) = ReplicaStatus(null, Duration.ZERO)
+
+        override suspend fun currentLsn(connection: DummyConnection): Lsn {
+            lsnReads++
+            return COMMIT_LSN
+        }
+    }
+
+    class SavepointTransactionManager(
+        private val failCommit: Boolean = false,
+        replicaProbe: ReplicaProbe<DummyConnection>? = null,
+    ) : TransactionManager<DummyConnection>(
+        DummyConnectionProvider(),
+        DummyConnectionProvider(),
+        replicaProbe?.let { ReplicaRouting() },
+        replicaProbe,
+    ) {
+        var transactions = 0
+        var openedSavepoints = 0
+        var rolledBackSavepoints = 0
+
+        override suspend fun <R> inTransaction(mode: ConnectionMode, block: suspend (DummyConnection) -> R): R {
+            transactions++
+            return super.inTransaction(mode, block)
+        }
+
+        override val savepoints = object : Savepoints<DummyConnection> {
+            override suspend fun <R> inSavepoint(block: suspend (DummyConnection) -> R): R {
+                openedSavepoints++
+                return try {
+                    block(DummyConnection)
+                } catch (ex: Exception) {
+                    rolledBackSavepoints++
+                    throw ex
+                }
+            }
+        }
+
+        override fun wrapConnection(newConn: DummyConnection) = object : ConnectionWrapper<DummyConnection> {
+            override suspend fun begin() = Unit
+            override suspend fun commit() {
+                if (failCommit) throw IllegalStateException("Commit failed")
+            }
+            override suspend fun rollback() = Unit
+            override val key = object : CoroutineContext.Key<ConnectionWrapper<DummyConnection>> {}
+        }
+
+        override suspend fun ctxConnection(): DummyConnection? = null
+
+        override fun supportsPipelining() = false
+    }
+
+    fun groupCommitter(txnManager: SavepointTransactionManager, modelRepos: ModelRepos, config: GroupCommit) =
+        GroupCommitter(txnManager, txnManager.savepoints, modelRepos, config)
+
+    class RecordingRepo(
+        private val staleIds: Set<TestModelId> = setOf(),
+        private val duplicateIds: Set<TestModelId> = setOf(),
+    ) : ModelRepository<TestModelId, TestModel> {
+        val added = mutableListOf<Int>()
+        val updated = mutableListOf<Int>()
+
+        override suspend fun find(id: TestModelId): TestModel? = TODO("Not used")
+
+        override suspend fun list(ids: Collection<TestModelId>): List<TestModel> = TODO("Not used")
+
+        override suspend fun <ME : TestModel> add(context: TransactionalContext, model: ME): ME =
+            add(context, listOf(model)).single()
+
+        override suspend fun <ME : TestModel> add(context: TransactionalContext, models: List<ME>): List<ME> {
+            added += models.size
+            // like a multi-row insert, the violation names the first model of the statement
+            if (models.any { it.id() in duplicateIds }) {
+                throw UniqueModelRecordViolationException(models.first().id(), "test_models", "test_models_pkey")
+            }
+            return models
+        }
+
+        override suspend fun <ME : TestModel> update(context: TransactionalContext, model: ME): ME =
+            update(context, listOf(model)).single()
+
+        override suspend fun <ME : TestModel> update(context: TransactionalContext, models: List<ME>): List<ME> {
+            updated += models.size
+            val stale = models.map { it.id() }.filterTo(mutableSetOf(), staleIds::contains)
+            if (stale.isNotEmpty()) throw StaleRecordException(stale, "test_models")
+            return models
+        }
+    }
+
+    val groupCommit = GroupCommit(window = Duration.ofMillis(100), maxGroupSize = 3)
+    val now = Instant.now()
+    val flushed = emptyList<Model<*, *>>()
+
+    Given("Transaction manager supporting savepoints") {
+        val txnManager = SavepointTransactionManager()
+        val committer = groupCommitter(txnManager, ModelRepos(), groupCommit)
+
+        When("Independent units of work fill the group") {
+            val results = coroutineScope {
+                List(3) { i ->
+                    async {
+                        runCatching {
+                            val key = idempotencyKey(UUID.randomUUID())
+                            committer.commit(setOf(randomDepartmentId()), key, now, listOf()) {
+                                if (i == 1) throw StaleRecordException(emptySet(), "departments")
+                                flushed
+                            }
+                        }
+                    }
+                }.awaitAll()
+            }
+
+            Then("They share one transaction with a savepoint each") {
+                txnManager.transactions shouldBe 1
+                txnManager.openedSavepoints shouldBe 3
+            }
+
+            And("Failure is delivered only to its unit of work") {
+                txnManager.rolledBackSavepoints shouldBe 1
+                results[0].getOrThrow() shouldBe flushed
+                results[1].exceptionOrNull().shouldBeInstanceOf<StaleRecordException>()
+                results[2].getOrThrow() shouldBe flushed
+            }
+        }
+
+        When("Independent units of work reading their writes fill the group") {
+            val probe = CommitLsnProbe()
+            val routedTxnManager = SavepointTransactionManager(replicaProbe = probe)
+            val routedCommitter = groupCommitter(routedTxnManager, ModelRepos(), groupCommit.copy(maxGroupSize = 2))
+            val readsYourWrites = List(2) { ReadYourWrites() }
+            coroutineScope {
+                readsYourWrites.map { readYourWrites ->
+                    async(readYourWrites) {
+                        routedCommitter.commit(setOf(randomDepartmentId()), null, now, listOf()) { flushed }
+                    }
+                }.awaitAll()
+            }
+
+            Then("Commit position is read once and recorded for each of them") {
+                routedTxnManager.transactions shouldBe 1
+                probe.lsnReads shouldBe 1
+                readsYourWrites.map { it.lsn } shouldBe listOf(COMMIT_LSN, COMMIT_LSN)
+            }
+        }
+
+        When("Units of work change the same model") {
+            val departmentId = randomDepartmentId()
+            coroutineScope {
+                List(3) {
+                    async { committer.commit(setOf(departmentId), null, now, listOf()) { flushed } }
+                }.awaitAll()
+            }
+
+            Then("Each of them is flushed in its own transaction") {
+                txnManager.transactions shouldBe 3
+                txnManager.openedSavepoints shouldBe 3
+            }
+        }
+
+        When("Units of work share the idempotency key") {
+            val key = idempotencyKey(UUID.randomUUID())
+            coroutineScope {
+                List(3) {
+                    async { committer.commit(setOf(randomDepartmentId()), key, now, listOf()) { flushed } }
+                }.awaitAll()
+            }
+
+            Then("Each of them is flushed in its own transaction") {
+                txnManager.transactions shouldBe 3
+            }
+        }
+    }
+
+    Given("Transaction manager failing to commit") {
+        val txnManager = SavepointTransactionManager(failCommit = true)
+        val committer = groupCommitter(txnManager, ModelRepos(), groupCommit)
+
+        When("Independent units of work fill the group") {
+            val results = coroutineScope {
+                List(3) {
+                    async {
+                        runCatching { committer.commit(setOf(randomDepartmentId()), null, now, listOf()) { flushed } }
+                    }
+                }.awaitAll()
+            }
+
+            Then("Every unit of work of the group fails") {
+                txnManager.transactions shouldBe 1
+                results.forEach { it.exceptionOrNull()?.message shouldBe "Commit failed" }
+            }
+        }
+    }
+
+    Given("Group commit merging writes") {
+        val updatedModels = List(3) { existingCreatedTestModel(param1 = "updated", param2 = 1, version = V1) }
+        val addedModels = List(3) { createdTestModel("added", 1) }
+        val batches = List(3) { i ->
+            listOf(ModelBatch.Update(updatedModels[i]), ModelBatch.Add(addedModels[i]))
+        }
+        val txnManager = SavepointTransactionManager()
+        val batchingGroupCommit = groupCommit.copy(batchWrites = true)
+
+        suspend fun commitAll(
+            committer: GroupCommitter,
+            flush: (Int) -> List<Model<*, *>> = { flushed },
+        ) = coroutineScope {
+            List(3) { i ->
+                async {
+                    runCatching {
+                        val modelIds = setOf(addedModels[i].id(), updatedModels[i].id())
+                        committer.commit(modelIds, null, now, batches[i]) { flush(i) }
+                    }
+                }
+            }.awaitAll()
+        }
+
+        When("Independent units of work fill the group") {
+            val repo = RecordingRepo()
+            val committer = groupCommitter(txnManager, ModelRepos(TestModel::class hasRepo repo), batchingGroupCommit)
+            val results = commitAll(committer)
+
+            Then("Models of all units of work are persisted with one statement per batch kind") {
+                txnManager.transactions shouldBe 1
+                repo.updated shouldBe listOf(3)
+                repo.added shouldBe listOf(3)
+            }
+
+            And("Each unit of work receives its own persisted models") {
+                results.forEachIndexed { i, result ->
+                    result.getOrThrow() shouldBe listOf(updatedModels[i], addedModels[i])
+                }
+            }
+        }
+
+        When("Merged update is stale for models of one unit of work") {
+            val repo = RecordingRepo(staleIds = setOf(updatedModels[1].id()))
+            val committer = groupCommitter(txnManager, ModelRepos(TestModel::class hasRepo repo), batchingGroupCommit)
+            val results = commitAll(committer)
+
+            Then("Group is flushed again without it") {
+                txnManager.transactions shouldBe 1
+                repo.updated shouldBe listOf(3, 2)
+                repo.added shouldBe listOf(2)
+            }
+
+            And("Stale record failure is delivered only to its unit of work") {
+                results[0].getOrThrow() shouldBe listOf(updatedModels[0], addedModels[0])
+                results[1].exceptionOrNull().shouldBeInstanceOf<StaleRecordException>()
+                results[2].getOrThrow() shouldBe listOf(updatedModels[2], addedModels[2])
+            }
+        }
+
+        When("Merged insert violates uniqueness for the model of the second unit of work") {
+            val repo = RecordingRepo(duplicateIds = setOf(addedModels[1].id()))
+            val committer = groupCommitter(txnManager, ModelRepos(TestModel::class hasRepo repo), batchingGroupCommit)
+            val results = commitAll(committer)
+
+            Then("Group falls back to flushing each unit of work on its own") {
+                txnManager.transactions shouldBe 1
+                repo.updated shouldBe listOf(3, 1, 1, 1)
+                repo.added shouldBe listOf(3, 1, 1, 1)
+            }
+
+            And("Only the unit of work owning the duplicate fails") {
+                results[0].getOrThrow() shouldBe listOf(updatedModels[0], addedModels[0])
+                val violation = results[1].exceptionOrNull().shouldBeInstanceOf<UniqueModelRecordViolationException>()
+                violation.modelId shouldBe addedModels[1].id()
+                results[2].getOrThrow() shouldBe listOf(updatedModels[2], addedModels[2])
+            }
+        }
+
+        When("Remaining changes of one unit of work fail") {
+            val repo = RecordingRepo()
+            val committer = groupCommitter(txnManager, ModelRepos(TestModel::class hasRepo repo), batchingGroupCommit)
+            val results = commitAll(committer) { i ->
+                if (i == 2) throw IllegalStateException("Entity failed")
+                flushed
+            }
+
+            Then("Merged writes are rolled back and flushed again without it") {
+                txnManager.transactions shouldBe 1
+                repo.updated shouldBe listOf(3, 2)
+                repo.added shouldBe listOf(3, 2)
+                results[0].isSuccess shouldBe true
+                results[1].isSuccess shouldBe true
+                results[2].exceptionOrNull()?.message shouldBe "Entity failed"
+            }
+        }
+    }
+
+    Given("Units of work executed in bulk") {
+        val txnManager = SavepointTransactionManager()
+        var performing = 0
+        val allPerforming = CompletableDeferred<Unit>()
+        val uowx = UnitOfWorkExecutor(
+            listOf(
+                CountUow::class withFactory {
+                    object : CountUow(it) {
+                        override suspend fun tryPerform(principal: TestPrincipal, params: Params): Changes<Int> {
+                            // every unit of work performs before any of them flushes
+                            if (++performing == 3) allPerforming.complete(Unit)
+                            allPerforming.await()
+                            return noChanges(params.count)
+                        }
+                    }
+                },
+            ),
+            Persisting(
+                transactionManager = txnManager,
+                modelRepos = ModelRepos(),
+                entityRepos = EntityRepos(),
+                eventRepository = DummyEventRepository(),
+                paramsSerializer = KotlinxParamsSerializer(),
+            ),
+            Clocks.fixedUTC(now),
+            OpenTelemetry.noop(),
+        )
+
+        When("Persisting has no group commit configured") {
+            val params = (1..3).map(CountUow::Params)
+            // on a single thread the leader can not give up waiting for the group while the others reach it
+            val executed = Executors.newSingleThreadExecutor().asCoroutineDispatcher().use { dispatcher ->
+                withContext(dispatcher) {
+                    uowx.executeAll(CountUow::class, TestPrincipal, params.asFlow(), concurrency = 3).toList()
+                }
+            }
+
+            Then("Their flushes share one transaction with a savepoint each") {
+                txnManager.transactions shouldBe 1
+                txnManager.openedSavepoints shouldBe 3
+                executed.map { it.result.getOrThrow() } shouldBe listOf(1, 2, 3)
+            }
+        }
+    }
+
+    Given("Transaction manager without savepoints") {
+        val txnManager = WithCtxConnectionTransactionManager()
+
+        When("Persisting is created with group commit") {
+            val ex = shouldThrow<IllegalArgumentException> {
+                Persisting(
+                    transactionManager = txnManager,
+                    modelRepos = ModelRepos(),
+                    entityRepos = EntityRepos(),
+                    eventRepository = DummyEventRepository(),
+                    paramsSerializer = KotlinxParamsSerializer(),
+                    groupCommit = groupCommit,
+                )
+            }
+
+            Then("Group commit is rejected") {
+                ex.message shouldBe "Group commit requires savepoints, " +
+                    "WithCtxConnectionTransactionManager does not support them"
+            }
+        }
+    }
+})
+
+private val COMMIT_LSN = Lsn.parse("16/B374D848")
@@ -46,6 +46,10 @@ import io.mockk.verify
 import io.opentelemetry.api.OpenTelemetry
 import io.opentelemetry.api.common.AttributeKey
 import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.toList
 import java.time.Duration.ofMillis
 import java.time.Instant.ofEpochMilli
 import java.util.*
@@ -1114,6 +1118,125 @@ class UnitOfWorkExecutorSpec : BehaviorSpec({
             }
         }
     }
+
+    Given("Factory of units of work counting how many of them perform at once") {
+        var performing = 0
+        var maxPerforming = 0
+        val factories = listOf(
+            CountUow::class withFactory {
+                object : CountUow(it) {
+                    override suspend fun tryPerform(principal: TestPrincipal, params: Params): Changes<Int> {
+                        performing++
+                        maxPerforming = maxOf(maxPerforming, performing)
+                        delay((10L - params.count) * 5)
+                        performing--
+                        check(params.count != 3) { "Three is not counted" }
+                        return noChanges(params.count * 2)
+                    }
+                }
+            },
+        )
+        val uowx = UnitOfWorkExecutor(
+            factories,
+            Persisting(
+                transactionManager = WithCtxConnectionTransactionManager(),
+                modelRepos = ModelRepos(),
+                entityRepos = EntityRepos(),
+                eventRepository = DummyEventRepository(),
+                paramsSerializer = KotlinxParamsSerializer(),
+            ),
+            clock,
+            OpenTelemetry.noop(),
+        )
+
+        When("Principal executes units of work for a flow of params") {
+            val params = (1..6).map(CountUow::Params)
+            val executed = uowx.executeAll(CountUow::class, TestPrincipal, params.asFlow(), concurrency = 2).toList()
+
+            Then("Results come in the order of params") {
+                executed.map { it.params } shouldBe params
+                executed.map { it.result.getOrNull() } shouldBe listOf(2, 4, null, 8, 10, 12)
+            }
+
+            And("Failure is delivered only to its unit of work") {
+                executed[2].result.exceptionOrNull()?.message shouldBe "Three is not counted"
+            }
+
+            And("No more units of work perform at once than requested") {
+                maxPerforming shouldBe 2
+            }
+        }
+
+        When("Principal executes units of work without concurrency") {
+            val ex = shouldThrow<IllegalArgumentException> {
+                uowx.executeAll(CountUow::class, TestPrincipal, flowOf(CountUow.Params(1)), concurrency = 0)
+            }
+
+            Then("Execution is rejected") {
+                ex.message shouldBe "Concurrency must be positive"
+            }
+        }
+    }
+
+    Given("Executor running units of work in execution lanes") {
+        val hotDepartments = List(2) { randomDepartmentId() }
+        val performing = mutableMapOf<DepartmentId, Int>()
+        var maxPerformingPerDepartment = 0
+        var maxPerforming = 0
+        val factories = listOf(
+            CountUow::class withFactory {
+                object : CountUow(it) {
+                    override fun name() = "CountUow"
+
+                    override fun lanes(params: Params) = setOf(hotDepartments[params.count % 2])
+
+                    override suspend fun tryPerform(principal: TestPrincipal, params: Params): Changes<Int> {
+                        val departmentId = hotDepartments[params.count % 2]
+                        val inDepartment = performing.getOrDefault(departmentId, 0) + 1
+                        performing[departmentId] = inDepartment
+                        maxPerformingPerDepartment = maxOf(maxPerformingPerDepartment, inDepartment)
+                        maxPerforming = maxOf(maxPerforming, performing.values.sum())
+                        delay(20)
+                        performing.merge(departmentId, -1, Int::plus)
+                        return noChanges(params.count)
+                    }
+                }
+            },
+        )
+        val metricReader = InMemoryMetricReader.create()
+        val uowx = UnitOfWorkExecutor(
+            factories,
+            Persisting(
+                transactionManager = WithCtxConnectionTransactionManager(),
+                modelRepos = ModelRepos(),
+                entityRepos = EntityRepos(),
+                eventRepository = DummyEventRepository(),
+                paramsSerializer = KotlinxParamsSerializer(),
+            ),
+            clock,
+            OpenTelemetryTestConfiguration.create(metricReader = metricReader),
+            ExecutionLanes(),
+        )
+
+        When("Principal executes units of work changing two departments concurrently") {
+            val params = (1..6).map(CountUow::Params)
+            val executed = uowx.executeAll(CountUow::class, TestPrincipal, params.asFlow(), concurrency = 6).toList()
+
+            Then("Units of work changing the same department perform one after another") {
+                executed.map { it.result.getOrThrow() } shouldBe (1..6).toList()
+                maxPerformingPerDepartment shouldBe 1
+            }
+
+            And("Units of work changing different departments perform in parallel") {
+                maxPerforming shouldBe 2
+            }
+
+            And("Lane wait time and queue depth are recorded per unit of work") {
+                metricReader.timerCount("uow.lane.wait.timer", "CountUow") shouldBe 6
+                metricReader.laneDepthMax() shouldBe 2.0
+            }
+        }
+    }
 })
 
 private fun uowEvent() = UowEvent(
@@ -1142,6 +1265,12 @@ private fun InMemoryMetricReader.acquisitionsSum(): Long =
         .sumOf { it.sum }
         .toLong()
 
+private fun InMemoryMetricReader.laneDepthMax(): Double =
+    collectAllMetrics()
+        .filter { it.name == "uow.lane.queue_depth" }
+        .flatMap { metric -> metric.histogramData.points }
+        .maxOf { it.max }
+
 private fun InMemoryMetricReader.timerBoundaries(timerName: String): List<Double> =
     collectAllMetrics()
         .filter { it.name == timerName }